@@ -35,6 +35,38 @@ public class Address
      */
     public Address(final String unitNumber, final int streetNumber, final String streetName,
                    final String postalCode, final String cityName)
+    {
+        this(unitNumber, streetNumber, streetName, postalCode, cityName, true);
+    }
+
+    private Address(final String unitNumber, final int streetNumber, final String streetName,
+                    final String postalCode, final String cityName, final boolean validate)
+    {
+        if(validate)
+        {
+            validate(unitNumber, streetNumber, streetName, postalCode, cityName);
+        }
+
+        this.unitNumber   = unitNumber;
+        this.streetNumber = streetNumber;
+        this.streetName   = streetName;
+        this.postalCode   = postalCode;
+        this.cityName     = cityName;
+    }
+
+    /**
+     * This method recreates an address from information that was validated when it was first constructed,
+     * without validating it again.
+     * @return The recreated address.
+     */
+    static Address restore(final String unitNumber, final int streetNumber, final String streetName,
+                           final String postalCode, final String cityName)
+    {
+        return new Address(unitNumber, streetNumber, streetName, postalCode, cityName, false);
+    }
+
+    private static void validate(final String unitNumber, final int streetNumber, final String streetName,
+                                 final String postalCode, final String cityName)
     {
         if(unitNumber != null)
         {
@@ -88,12 +120,6 @@ public class Address
         {
             throw new NullPointerException("Invalid city: null");
         }
-
-        this.unitNumber   = unitNumber;
-        this.streetNumber = streetNumber;
-        this.streetName   = streetName;
-        this.postalCode   = postalCode;
-        this.cityName     = cityName;
     }
 
     /**
@@ -136,6 +162,49 @@ public class Address
         return cityName;
     }
 
+    /**
+     * This method folds the case of a name the way String.equalsIgnoreCase compares it, character by character,
+     * so that two names are equal ignoring case exactly when their folded names are equal.
+     * @param name The name to be folded.
+     * @return The folded name, which can be used as a map key.
+     */
+    static String foldCase(final String name)
+    {
+        char[] folded;
+        int i;
+
+        folded = new char[name.length()];
+        for (i = 0; i < folded.length; i++)
+        {
+            folded[i] = Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        }
+        return new String(folded);
+    }
+
+    /**
+     * This method normalizes a postal code, or the start of one, so that "V7N 2M8", "v7n2m8" and "v7n-2m8"
+     * are the same, and so are "90210" and "90210 ".
+     * @param postalCode The postal code to be normalized.
+     * @return The postal code in folded case, without spaces or dashes.
+     */
+    static String normalizePostalCode(final String postalCode)
+    {
+        StringBuilder normalized;
+        char character;
+        int i;
+
+        normalized = new StringBuilder(postalCode.length());
+        for (i = 0; i < postalCode.length(); i++)
+        {
+            character = postalCode.charAt(i);
+            if (!Character.isWhitespace(character) && character != '-')
+            {
+                normalized.append(Character.toLowerCase(Character.toUpperCase(character)));
+            }
+        }
+        return normalized.toString();
+    }
+
     /**
      * @return The formatted String of the unit number.
      */
@@ -2,7 +2,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 
 /**
  * @author Tian Lan
@@ -25,57 +24,34 @@ public class AddressReader
 
     /**
      * This method reads the provided file and adds Address objects to an ArrayList<Address> and returns it.
+     * Street names, postal codes and cities repeated across lines share a single String.
      * @param file The provides file's name.
      * @return An ArrayList<Address> that are provided in the file.
      * @throws FileNotFoundException if the file name does not exist.
      */
     public static ArrayList<Address> readAddressData(final File file) throws FileNotFoundException
     {
-        String oneAddress;
-        String[] oneAddressData;
-        String unitNumber;
-        int streetNumber;
-        String streetName;
-        String postalCode;
-        String cityName;
-        Address newAddress;
-        boolean proceed;
         ArrayList<Address> addressData;
+        StringDictionary dictionary;
 
-        Scanner myScanner = new Scanner(file);
         addressData = new ArrayList<>();
-        proceed = true;
+        dictionary  = new StringDictionary();
 
-        do
-        {
-            if (myScanner.hasNext())
-            {
-                oneAddress = myScanner.nextLine();
-                oneAddressData = oneAddress.split("\\|");
-                unitNumber = oneAddressData[UNIT_NUMBER_POSITION];
-                streetName = oneAddressData[STREET_NAME_POSITION];
-                streetNumber = Integer.parseInt(oneAddressData[STREET_NUMBER_POSITION]);
-                postalCode = oneAddressData[POSTAL_CODE_POSITION];
-                cityName = oneAddressData[CITY_NAME_POSITION];
-
-                newAddress = new Address(unitNumber, streetNumber, streetName, postalCode, cityName);
-
-                if (newAddress != null)
-                {
-                    addressData.add(newAddress);
-                }
-                else
-                {
-                    throw new NullPointerException("Invalid address data!");
-                }
-            }
-            else
-            {
-                proceed = false;
-                myScanner.close();
-            }
-        }
-        while(proceed);
+        PipeTokenizer.forEachRecord(file, record -> addressData.add(readAddress(record, dictionary)));
         return addressData;
     }
+
+    /**
+     * This method creates the Address of one line of an address file.
+     * The street name, postal code and city are interned in the dictionary.
+     * @param record The tokenizer positioned on the line.
+     * @param dictionary The dictionary shared by the lines read together.
+     * @return The Address described by the line.
+     */
+    static Address readAddress(final PipeTokenizer record, final StringDictionary dictionary)
+    {
+        return new Address(record.getString(UNIT_NUMBER_POSITION), record.getInt(STREET_NUMBER_POSITION),
+                record.getString(STREET_NAME_POSITION, dictionary), record.getString(POSTAL_CODE_POSITION, dictionary),
+                record.getString(CITY_NAME_POSITION, dictionary));
+    }
 }
@@ -1,7 +1,20 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @author Tian Lan
@@ -10,407 +23,1835 @@ import java.util.Set;
  */
 public class Agency
 {
-    private final String                name;
-    private final Map<String, Property> Properties;
+    private final String              name;
+    private final StorageMode         storageMode;
+    private final PropertyTable       Properties;
+    private final PriceIndex          priceIndex;
+    private final PriceAggregate      totalPrices;
+    private final PriceHistogram      priceHistogram;
+    private final PriceChangeListener priceChangeListener;
+
+    private final Map<Amenity, RoaringBitmap>  amenityBitmaps;
+    private final Map<String, RoaringBitmap>   typeBitmaps;
+    private final Map<String, PriceAggregate>  typePrices;
+    private final Map<String, PriceHistogram>  typeHistograms;
+    private final Map<String, PriceHistogram>  cityHistograms;
+    private final Map<Integer, PriceHistogram> bedroomHistograms;
+    private final Map<String, RoaringBitmap>   streetBitmaps;
+    private final Map<String, RoaringBitmap>   postalBitmaps;
+    private final NameTrie                     streetNames;
+    private final NameTrie                     cityNames;
+
+    private final QueryCache                   queryCache;
+
+    private ForkJoinPool scanPool;
+    private boolean       batching;
+    private RoaringBitmap batchOrdinals;
+
     public static final int VALID_MIN_NAME_LENGTH = 1;
     public static final int VALID_MAX_NAME_LENGTH = 30;
     public static final int VALID_MIN_RETURN_SIZE = 0;
+    public static final int PARALLEL_SCAN_THRESHOLD = 1 << 16;
+    public static final int DEFAULT_QUERY_CACHE_CAPACITY = 256;
+    public static final int SEGMENTS_PER_THREAD = 4;
+    private static final int MIN_SEGMENT_SIZE = 1 << 14;
+    private static final String COPY_PREFIX = "agency";
+    private static final String COPY_SUFFIX = ".snapshot";
+
+    /**
+     * Constructor, valid all agency information before initialize the object.
+     * @param name The name of the agency, has length limit.
+     * @throws IllegalArgumentException If the length of the name exceed the limit.
+     */
+    public Agency(final String name)
+    {
+        this(name, StorageMode.HEAP);
+    }
+
+    /**
+     * Constructor, valid all agency information before initialize the object.
+     * @param name The name of the agency, has length limit.
+     * @param storageMode The way the agency lays out the properties it stores, cannot be null.
+     * A MAPPED agency is opened on its file with Agency.open instead.
+     * @throws IllegalArgumentException If the length of the name exceed the limit, or the storage mode is MAPPED.
+     */
+    public Agency(final String name, final StorageMode storageMode)
+    {
+        this(name, storageMode, null, null);
+    }
+
+    /**
+     * Constructor of a COLUMNAR agency whose views report their price changes to another listener
+     * than the agency itself, such as a ConcurrentAgency that applies every change to several agencies.
+     * @param name The name of the agency, has length limit.
+     * @param viewListener The listener to be notified when the price of a view changes.
+     * @throws IllegalArgumentException If the length of the name exceed the limit.
+     */
+    Agency(final String name, final PriceChangeListener viewListener)
+    {
+        this(name, StorageMode.COLUMNAR, null, viewListener);
+    }
+
+    /**
+     * Constructor, valid all agency information before initialize the object.
+     * @param name The name of the agency, has length limit.
+     * @param storageMode The way the agency lays out the properties it stores, cannot be null.
+     * @param table The table of a MAPPED agency, whose properties are indexed before the agency is used,
+     * or null for the other storage modes.
+     * @param viewListener The listener to be notified when the price of a view changes, or null for the agency.
+     * @throws IllegalArgumentException If the length of the name exceed the limit.
+     */
+    private Agency(final String name, final StorageMode storageMode, final MappedPropertyTable table,
+                   final PriceChangeListener viewListener)
+    {
+        int ordinal;
+
+        if (storageMode == null)
+        {
+            throw new NullPointerException("Invalid storage mode: null");
+        }
+
+        if (name.length() < VALID_MIN_NAME_LENGTH || name.length() > VALID_MAX_NAME_LENGTH)
+        {
+            throw new IllegalArgumentException("Invalid name: " + name);
+        }
+
+        if ((storageMode == StorageMode.MAPPED) != (table != null))
+        {
+            throw new IllegalArgumentException("Invalid storage mode: " + storageMode);
+        }
+        this.name        = name;
+        this.storageMode = storageMode;
+
+        priceChangeListener = this::priceChanged;
+        priceIndex          = new PriceIndex();
+        totalPrices         = new PriceAggregate(priceIndex);
+        priceHistogram      = new PriceHistogram();
+
+        if (storageMode == StorageMode.MAPPED)
+        {
+            table.setViewListener(viewListener == null ? priceChangeListener : viewListener);
+            Properties = table;
+        }
+        else if (storageMode == StorageMode.COLUMNAR)
+        {
+            Properties = new ColumnarPropertyTable(viewListener == null ? priceChangeListener : viewListener);
+        }
+        else
+        {
+            Properties = new HeapPropertyTable();
+        }
+
+        amenityBitmaps = new EnumMap<>(Amenity.class);
+        for (Amenity amenity : Amenity.values())
+        {
+            amenityBitmaps.put(amenity, new RoaringBitmap());
+        }
+
+        typeBitmaps       = new HashMap<>();
+        typePrices        = new HashMap<>();
+        typeHistograms    = new HashMap<>();
+        cityHistograms    = new HashMap<>();
+        bedroomHistograms = new HashMap<>();
+        streetBitmaps     = new HashMap<>();
+        postalBitmaps     = new HashMap<>();
+        streetNames       = new NameTrie();
+        cityNames         = new NameTrie();
+        queryCache        = new QueryCache(DEFAULT_QUERY_CACHE_CAPACITY);
+
+        for (ordinal = 0; ordinal < Properties.highWaterMark(); ordinal++)
+        {
+            if (Properties.isLive(ordinal))
+            {
+                index(ordinal);
+            }
+        }
+    }
+
+    /**
+     * This method opens a MAPPED agency on a file, creating the file if it does not exist yet. The properties
+     * already in the file are read from the mapped pages to rebuild the indexes, without parsing any text.
+     * @param name The name of the agency, has length limit.
+     * @param file The file the properties are kept in; the strings are kept in a second file next to it.
+     * @return The agency holding the properties of the file.
+     * @throws IOException If the file cannot be mapped, or is not a property file.
+     * @throws IllegalArgumentException If the length of the name exceed the limit.
+     */
+    public static Agency open(final String name, final File file) throws IOException
+    {
+        MappedPropertyTable table;
+
+        if (file == null)
+        {
+            throw new NullPointerException("Invalid file: null");
+        }
+
+        table = new MappedPropertyTable(file);
+        try
+        {
+            return new Agency(name, StorageMode.MAPPED, table, null);
+        }
+        catch (RuntimeException e)
+        {
+            table.close();
+            throw e;
+        }
+    }
+
+    /**
+     * This method restores an agency from a snapshot written by writeSnapshot. The properties are read
+     * front to back from the file and stored under the ordinals they had, without parsing or validating them
+     * again, and the indexes are read back as they were written rather than rebuilt.
+     * @param name The name of the agency, has length limit.
+     * @param storageMode The way the restored agency lays out its properties, cannot be null or MAPPED.
+     * @param file The snapshot to be read.
+     * @return The agency holding the properties of the snapshot.
+     * @throws IOException If the file cannot be read, or is not a valid snapshot.
+     * @throws IllegalArgumentException If the length of the name exceed the limit, or the storage mode is MAPPED.
+     */
+    public static Agency restore(final String name, final StorageMode storageMode, final File file)
+            throws IOException
+    {
+        Agency agency;
+
+        if (file == null)
+        {
+            throw new NullPointerException("Invalid file: null");
+        }
+
+        agency = new Agency(name, storageMode);
+        agency.restoreSnapshot(file);
+        return agency;
+    }
+
+    /**
+     * This method writes a snapshot of the agency to a file, replacing the file if it exists, see AgencySnapshot.
+     * The body of the snapshot is the Properties table, then the price statistics and histogram of all
+     * properties, the amenity, type, street and postal area bitmaps, the price statistics and histograms
+     * of every type, city and number of bedrooms, and the street and city names.
+     * The snapshot can be restored in any storage mode but MAPPED.
+     * @param file The file to be written.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeSnapshot(final File file) throws IOException
+    {
+        if (file == null)
+        {
+            throw new NullPointerException("Invalid file: null");
+        }
+
+        try (AgencySnapshot.Output out = new AgencySnapshot.Output(file))
+        {
+            AgencySnapshot.writeTable(out, Properties);
+            totalPrices.write(out);
+            priceHistogram.write(out);
+
+            for (Amenity amenity : Amenity.values())
+            {
+                amenityBitmaps.get(amenity).write(out);
+            }
+            writeBitmaps(out, typeBitmaps);
+            writeBitmaps(out, streetBitmaps);
+            writeBitmaps(out, postalBitmaps);
+
+            out.putInt(typePrices.size());
+            for (Map.Entry<String, PriceAggregate> entry : typePrices.entrySet())
+            {
+                out.putString(entry.getKey());
+                entry.getValue().write(out);
+            }
+            writeHistograms(out, typeHistograms);
+            writeHistograms(out, cityHistograms);
+
+            out.putInt(bedroomHistograms.size());
+            for (Map.Entry<Integer, PriceHistogram> entry : bedroomHistograms.entrySet())
+            {
+                out.putInt(entry.getKey());
+                entry.getValue().write(out);
+            }
+
+            streetNames.write(out);
+            cityNames.write(out);
+            out.finish();
+        }
+    }
+
+    /**
+     * This method reads a snapshot written by writeSnapshot into the agency, which must be empty.
+     * @param file The snapshot to be read.
+     * @throws IOException If the file cannot be read, or is not a valid snapshot.
+     */
+    void restoreSnapshot(final File file) throws IOException
+    {
+        PriceAggregate typeAggregate;
+        PriceHistogram bedroomHistogram;
+        int entries;
+        int ordinal;
+
+        if (Properties.highWaterMark() != 0)
+        {
+            throw new IllegalStateException("Cannot restore into a non-empty agency: " + name);
+        }
+
+        try (AgencySnapshot.Input in = new AgencySnapshot.Input(file))
+        {
+            AgencySnapshot.readTable(in, Properties);
+            totalPrices.read(in);
+            priceHistogram.read(in);
+
+            for (Amenity amenity : Amenity.values())
+            {
+                amenityBitmaps.get(amenity).read(in);
+            }
+            readBitmaps(in, typeBitmaps);
+            readBitmaps(in, streetBitmaps);
+            readBitmaps(in, postalBitmaps);
+
+            for (entries = in.getInt(); entries > 0; entries--)
+            {
+                typeAggregate = new PriceAggregate();
+                typePrices.put(in.getString(), typeAggregate);
+                typeAggregate.read(in);
+            }
+            readHistograms(in, typeHistograms);
+            readHistograms(in, cityHistograms);
+
+            for (entries = in.getInt(); entries > 0; entries--)
+            {
+                bedroomHistogram = new PriceHistogram();
+                bedroomHistograms.put(in.getInt(), bedroomHistogram);
+                bedroomHistogram.read(in);
+            }
+
+            streetNames.read(in);
+            cityNames.read(in);
+            in.finish();
+        }
+
+        if (Properties.storesPropertyObjects())
+        {
+            for (ordinal = 0; ordinal < Properties.highWaterMark(); ordinal++)
+            {
+                if (Properties.isLive(ordinal))
+                {
+                    Properties.get(ordinal).addPriceChangeListener(priceChangeListener);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method adds the non-null property to the Properties table, replacing any property with the same ID,
+     * and indexes it by price, by type, by street and by amenity.
+     * @param property The property to be added.
+     */
+    public void addProperty(final Property property)
+    {
+        int ordinal;
+
+        if (property != null)
+        {
+            ordinal = Properties.ordinalOf(property.getPropertyId());
+            if (ordinal != PropertyTable.NO_ORDINAL)
+            {
+                removeOrdinal(ordinal);
+            }
+
+            ordinal = Properties.insert(property);
+            index(ordinal);
+            queryCache.invalidate(Properties, ordinal, false);
+
+            if (Properties.storesPropertyObjects())
+            {
+                property.addPriceChangeListener(priceChangeListener);
+            }
+        }
+    }
+
+    /**
+     * This method adds the non-null properties, like addProperty for each of them in order, as one batch:
+     * room is made for all of them at once, and the prices of the batch are sorted and merged into the price
+     * indexes in a single pass, see PriceIndex.addAll. Of several properties with the same ID, the last one is
+     * added, in the place of the first one.
+     * @param properties The properties to be added.
+     */
+    public void addProperties(final Collection<? extends Property> properties)
+    {
+        LinkedHashMap<String, Property> batch;
+
+        if (properties == null)
+        {
+            throw new NullPointerException("Invalid properties: null");
+        }
+
+        batch = new LinkedHashMap<>();
+        for (Property property : properties)
+        {
+            if (property != null)
+            {
+                batch.put(property.getPropertyId(), property);
+            }
+        }
+
+        Properties.reserve(batch.size());
+        beginBatch();
+        try
+        {
+            for (Property property : batch.values())
+            {
+                addProperty(property);
+            }
+        }
+        finally
+        {
+            endBatch();
+        }
+    }
+
+    /**
+     * This method makes room for a number of properties about to be added, such as by a BulkLoader.
+     * @param additionalProperties The number of properties about to be added.
+     */
+    void reserve(final int additionalProperties)
+    {
+        Properties.reserve(additionalProperties);
+    }
+
+    /**
+     * This method removes the property whose ID matches the parameter, from the Properties table.
+     * @param propertyId The property ID to be removed.
+     */
+    public void removeProperty(final String propertyId)
+    {
+        int ordinal;
+        ordinal = Properties.ordinalOf(propertyId);
+
+        if (ordinal != PropertyTable.NO_ORDINAL)
+        {
+            removeOrdinal(ordinal);
+        }
+    }
+
+    /**
+     * This method removes the properties whose IDs match the parameter, like removeProperty for each of them,
+     * as one batch whose prices are merged out of the price indexes in a single pass.
+     * @param propertyIds The property IDs to be removed.
+     */
+    public void removeProperties(final Collection<String> propertyIds)
+    {
+        if (propertyIds == null)
+        {
+            throw new NullPointerException("Invalid property IDs: null");
+        }
+
+        beginBatch();
+        try
+        {
+            for (String propertyId : propertyIds)
+            {
+                removeProperty(propertyId);
+            }
+        }
+        finally
+        {
+            endBatch();
+        }
+    }
+
+    /**
+     * @param propertyId The property ID to be matched.
+     * @return The property whose ID matches the parameter from the Properties table,
+     * or null if there is no match.
+     */
+    public Property getProperty(final String propertyId)
+    {
+        int ordinal;
+        ordinal = Properties.ordinalOf(propertyId);
+
+        if (ordinal == PropertyTable.NO_ORDINAL)
+        {
+            return null;
+        }
+        return Properties.get(ordinal);
+    }
+
+    /**
+     * This method sets the price of the property whose ID matches the parameter, and updates the price index.
+     * It is equivalent to calling setPriceUsd on the property itself.
+     * @param propertyId The property ID to be matched.
+     * @param priceInUsd The given price to be set, in USD.
+     */
+    public void setPriceUsd(final String propertyId, final double priceInUsd)
+    {
+        int ordinal;
+        ordinal = Properties.ordinalOf(propertyId);
+
+        if (ordinal == PropertyTable.NO_ORDINAL)
+        {
+            return;
+        }
+
+        if (Properties.storesPropertyObjects())
+        {
+            Properties.get(ordinal).setPriceUsd(priceInUsd);
+        }
+        else
+        {
+            movePrice(ordinal, Properties.getPriceUsd(ordinal), priceInUsd);
+        }
+    }
+
+    /**
+     * This method sets the price of every property whose ID is a key of the map, like setPriceUsd for each of
+     * them, as one batch whose old and new prices are merged into the price indexes in a single pass.
+     * @param pricesInUsd The new prices, in USD, by property ID.
+     */
+    public void setPricesUsd(final Map<String, Double> pricesInUsd)
+    {
+        if (pricesInUsd == null)
+        {
+            throw new NullPointerException("Invalid prices: null");
+        }
+
+        beginBatch();
+        try
+        {
+            for (Map.Entry<String, Double> price : pricesInUsd.entrySet())
+            {
+                setPriceUsd(price.getKey(), price.getValue());
+            }
+        }
+        finally
+        {
+            endBatch();
+        }
+    }
+
+    /**
+     * This method makes a COLUMNAR copy of the agency, such as to replace an agency a change failed on halfway.
+     * The copy is restored from a snapshot written to a temporary file, so that it holds the same properties
+     * under the same ordinals; it also gets the same generations of the ordinals, see PropertyTable.isCurrentView,
+     * the same scan pool and the same query cache capacity.
+     * @param viewListener The listener to be notified when the price of a view of the copy changes.
+     * @return The copy of the agency.
+     * @throws IOException If the snapshot cannot be written or read.
+     */
+    Agency copy(final PriceChangeListener viewListener) throws IOException
+    {
+        File snapshot;
+        Agency copy;
+
+        snapshot = File.createTempFile(COPY_PREFIX, COPY_SUFFIX);
+        try
+        {
+            writeSnapshot(snapshot);
+            copy = new Agency(name, viewListener);
+            copy.restoreSnapshot(snapshot);
+        }
+        finally
+        {
+            Files.deleteIfExists(snapshot.toPath());
+        }
+
+        copy.Properties.copyGenerations(Properties);
+        copy.setScanPool(scanPool);
+        copy.setQueryCacheCapacity(queryCache.getStats().getCapacity());
+        return copy;
+    }
+
+    /**
+     * This method turns on parallel scans: a query that has to check at least PARALLEL_SCAN_THRESHOLD candidates,
+     * such as a search by bedrooms or square footage, splits the Properties table into segments of ordinals
+     * and checks them on the pool, and the matches are then collected in order, as a sequential scan would.
+     * Smaller queries, and queries driven by the price index or the amenity bitmaps, stay sequential.
+     * @param pool The pool the segments are checked on, or null to scan sequentially, which is the default.
+     */
+    public void setScanPool(final ForkJoinPool pool)
+    {
+        this.scanPool = pool;
+    }
+
+    /**
+     * This method sizes the cache of query results, which answers a repeated query, such as a popular street
+     * or a standard price band, without running it again until a property it could depend on changes.
+     * Every query but ordered, limited or paged ones goes through the cache, with the searches built on them.
+     * @param capacity The maximum number of cached results, DEFAULT_QUERY_CACHE_CAPACITY by default;
+     *                 zero turns the cache off.
+     * @throws IllegalArgumentException If the capacity is negative.
+     */
+    public void setQueryCacheCapacity(final int capacity)
+    {
+        if (capacity < 0)
+        {
+            throw new IllegalArgumentException("Invalid query cache capacity: " + capacity);
+        }
+        queryCache.setCapacity(capacity);
+    }
+
+    /**
+     * @return A snapshot of the hit, miss and invalidation counts of the query cache.
+     */
+    public QueryCacheStats getQueryCacheStats()
+    {
+        return queryCache.getStats();
+    }
+
+    /**
+     * @return The way the agency lays out the properties it stores.
+     */
+    public StorageMode getStorageMode()
+    {
+        return storageMode;
+    }
+
+    /**
+     * This method writes the properties of a MAPPED agency to its file; other agencies have nothing to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void flush() throws IOException
+    {
+        Properties.flush();
+    }
+
+    /**
+     * This method flushes a MAPPED agency and releases its file; the agency cannot be used afterwards.
+     * Other agencies have nothing to release.
+     * @throws IOException If the file cannot be written or released.
+     */
+    public void close() throws IOException
+    {
+        Properties.close();
+    }
+
+    /**
+     * @return The total amount in USD of all Properties.
+     */
+    public double getTotalPropertyValues()
+    {
+        return totalPrices.totalUsd();
+    }
+
+    /**
+     * @return The price statistics of all Properties, which are kept up to date as properties change.
+     */
+    public PriceStats getPriceStats()
+    {
+        return totalPrices.toStats();
+    }
+
+    /**
+     * @param propertyType The type of the properties (case-insensitive).
+     * @return The price statistics of the properties of the type, which are kept up to date as properties change.
+     */
+    public PriceStats getPriceStats(final String propertyType)
+    {
+        String canonicalType;
+        PriceAggregate prices;
+
+        canonicalType = propertyType == null ? null : Property.canonicalType(propertyType);
+        prices        = canonicalType == null ? null : typePrices.get(canonicalType);
+
+        if (prices == null)
+        {
+            return new PriceAggregate().toStats();
+        }
+        return prices.toStats();
+    }
+
+    /**
+     * @return The price distribution of all Properties, as of this call.
+     */
+    public PriceHistogram getPriceHistogram()
+    {
+        return priceHistogram.copy();
+    }
+
+    /**
+     * @param propertyType The type of the properties (case-insensitive).
+     * @return The price distribution of the properties of the type, as of this call.
+     */
+    public PriceHistogram getPriceHistogramOfType(final String propertyType)
+    {
+        String canonicalType;
+        canonicalType = propertyType == null ? null : Property.canonicalType(propertyType);
+
+        return copyOf(canonicalType == null ? null : typeHistograms.get(canonicalType));
+    }
+
+    /**
+     * @param cityName The city of the properties (case-insensitive).
+     * @return The price distribution of the properties in the city, as of this call.
+     */
+    public PriceHistogram getPriceHistogramInCity(final String cityName)
+    {
+        return copyOf(cityName == null ? null : cityHistograms.get(Address.foldCase(cityName)));
+    }
+
+    /**
+     * @param numberOfBedrooms The number of bedrooms of the Residence properties.
+     * @return The price distribution of the Residence properties with that many bedrooms, as of this call.
+     */
+    public PriceHistogram getPriceHistogramWithBedrooms(final int numberOfBedrooms)
+    {
+        return copyOf(bedroomHistograms.get(numberOfBedrooms));
+    }
+
+    /**
+     * @return An ArrayList of the Residence properties with the swimming pool, or null if there are none.
+     */
+    public ArrayList<Residence> getPropertiesWithPools()
+    {
+        return propertiesIn(amenityBitmaps.get(Amenity.SWIMMING_POOL), Residence.class);
+    }
+
+    /**
+     * @param minUsd The minimum price of the property, in USD.
+     * @param maxUsd The maximum price of the property, in USD.
+     * @return An array of properties whose price falls in the range specified by the parameters,
+     * or null if there are none.
+     */
+    public Property[] getPropertiesBetween(final double minUsd, final double maxUsd)
+    {
+        Property[] propertiesBetween;
+        int[] i;
+
+        propertiesBetween = new Property[priceIndex.countBetween(minUsd, maxUsd)];
+
+        if (propertiesBetween.length == VALID_MIN_RETURN_SIZE)
+        {
+            return null;
+        }
+
+        i = new int[1];
+        priceIndex.forEachBetween(minUsd, maxUsd, ordinal -> propertiesBetween[i[0]++] = Properties.get(ordinal));
+        return propertiesBetween;
+    }
+
+    /**
+     * @param streetName The street name to be matched.
+     * @return An ArrayList of addresses which are on the specified street name, or null if there are none.
+     */
+    public ArrayList<Address> getPropertiesOn(final String streetName)
+    {
+        ArrayList<Address> propertiesOnStreet;
+        propertiesOnStreet = new ArrayList<>();
+
+        if (streetName != null)
+        {
+            forEachMatchingOrdinal(new PropertyQuery().onStreet(streetName),
+                    ordinal -> propertiesOnStreet.add(Properties.getAddress(ordinal)));
+        }
+        return propertiesOnStreet;
+    }
+
+    /**
+     * @param postalPrefix The start of the postal codes to be matched, such as "V7N" or "902",
+     * ignoring case, spaces and dashes.
+     * @return An ArrayList of addresses whose postal code starts with the prefix, which is empty if there are none.
+     */
+    public ArrayList<Address> getPropertiesInPostalArea(final String postalPrefix)
+    {
+        ArrayList<Address> propertiesInArea;
+        propertiesInArea = new ArrayList<>();
+
+        if (postalPrefix != null)
+        {
+            forEachMatchingOrdinal(new PropertyQuery().inPostalArea(postalPrefix),
+                    ordinal -> propertiesInArea.add(Properties.getAddress(ordinal)));
+        }
+        return propertiesInArea;
+    }
+
+    /**
+     * @param minBedrooms The minimum number of bedrooms in the range.
+     * @param maxBedrooms The maximum number of bedrooms in the range.
+     * @return A HashMap of Residence properties (key is property id, value is the Property)
+     * whose number of bedrooms falls in the range specified by the parameters, or null if there are none.
+     * The matches are collected as ordinals first, so that the HashMap is created at its final size.
+     */
+    public HashMap<String, Residence> getPropertiesWithBedrooms(final int minBedrooms, final int maxBedrooms)
+    {
+        HashMap<String, Residence> propertiesWithBedrooms;
+        RoaringBitmap ordinals;
+
+        ordinals = new RoaringBitmap();
+        forEachMatchingOrdinal(new PropertyQuery().bedroomsBetween(minBedrooms, maxBedrooms), ordinals::add);
+
+        if (ordinals.cardinality() == VALID_MIN_RETURN_SIZE)
+        {
+            return null;
+        }
+
+        propertiesWithBedrooms = new HashMap<>(ordinals.cardinality() * 4 / 3 + 1);
+        ordinals.forEach(ordinal -> propertiesWithBedrooms.put(Properties.getPropertyId(ordinal),
+                (Residence) Properties.get(ordinal)));
+        return propertiesWithBedrooms;
+    }
+
+    /**
+     * @param propertyType The property type to be matched.
+     * @return An ArrayList of Property, with all of the information about every subtype property
+     * that matches the specified property type (case-insensitive), with certain format.
+     */
+    public ArrayList<Property> getPropertiesOfType(final String propertyType)
+    {
+        if (propertyType == null)
+        {
+            return new ArrayList<>();
+        }
+        return find(new PropertyQuery().ofType(propertyType));
+    }
+
+    /**
+     * @return An ArrayList<Commercial> that holds only Commercial properties that have a loading dock available.
+     */
+    public ArrayList<Commercial> getPropertiesWithLoadingDocks()
+    {
+        return propertiesIn(amenityBitmaps.get(Amenity.LOADING_DOCK), Commercial.class);
+    }
+
+    /**
+     * @return An ArrayList<Commercial> that holds only Commercial properties that have highway access.
+     */
+    public ArrayList<Commercial> getPropertiesWithHighwayAccess()
+    {
+        return propertiesIn(amenityBitmaps.get(Amenity.HIGHWAY_ACCESS), Commercial.class);
+    }
+
+    /**
+     * @param squareFootage The minimum square footage.
+     * @return An ArrayList<Retail> that holds properties where square footage is at least the parameter value.
+     */
+    public ArrayList<Retail> getPropertiesSquareFootage(final int squareFootage)
+    {
+        ArrayList<Retail> propertiesWithSquareFootage;
+        propertiesWithSquareFootage = new ArrayList<>();
+
+        forEachMatchingOrdinal(new PropertyQuery().minSquareFootage(squareFootage),
+                ordinal -> propertiesWithSquareFootage.add((Retail) Properties.get(ordinal)));
+
+        if (propertiesWithSquareFootage.size() == VALID_MIN_RETURN_SIZE)
+        {
+            return null;
+        }
+        return propertiesWithSquareFootage;
+    }
+
+    /**
+     * @return An ArrayList<Retail> that holds properties where customer parking is available.
+     */
+    public ArrayList<Retail> getPropertiesWithCustomerParking()
+    {
+        return propertiesIn(amenityBitmaps.get(Amenity.CUSTOMER_PARKING), Retail.class);
+    }
+
+    /**
+     * @return An ArrayList<Residence> that hold only the Residences that are in a strata.
+     */
+    public ArrayList<Residence> getPropertiesWithStrata()
+    {
+        return propertiesIn(amenityBitmaps.get(Amenity.STRATA), Residence.class);
+    }
+
+    /**
+     * This method combines the amenity bitmaps with bitwise operations, for example
+     * AmenityFilter.has(Amenity.SWIMMING_POOL).andNot(Amenity.STRATA).
+     * @param amenityFilter The combination of amenities to be matched.
+     * @return An ArrayList of the properties matched by the filter, or null if there are none.
+     */
+    public ArrayList<Property> getPropertiesWith(final AmenityFilter amenityFilter)
+    {
+        return propertiesIn(amenityFilter.evaluate(amenityBitmaps::get), Property.class);
+    }
+
+    /**
+     * This method answers a compound search in a single traversal, see PropertyQuery.
+     * @param query The predicates to be matched.
+     * @return An ArrayList of the properties matching every predicate of the query, which is empty if there are none.
+     */
+    public ArrayList<Property> find(final PropertyQuery query)
+    {
+        ArrayList<Property> matches;
+
+        if (query.isOrdered())
+        {
+            return findPage(query).getProperties();
+        }
+
+        matches = new ArrayList<>();
+        forEachMatchingOrdinal(query, ordinal -> matches.add(Properties.get(ordinal)));
+        return matches;
+    }
+
+    /**
+     * This method finds a page of the properties matching a query, in the order of the query, starting after
+     * the cursor of the query and holding at most its limit. Properties with the same sort value are in
+     * a fixed order, so every property matching the query is on exactly one page, unless it changes while
+     * the pages are read.
+     * When the results are ordered by price and the matches are common enough, the price index is walked in order
+     * until the page is full; otherwise the matches are kept in a heap bounded by the limit, so a page costs
+     * O(k log limit) for k candidates, without sorting every match.
+     * @param query The predicates to be matched, and the order, limit and cursor of the page.
+     * @return The page of the matching properties.
+     * @throws IllegalArgumentException If the cursor of the query belongs to another order.
+     */
+    public PropertyPage findPage(final PropertyQuery query)
+    {
+        QueryPlan plan;
+        PageCursor cursor;
+        int[] ordinals;
+        int pageSize;
+        ArrayList<Property> properties;
+        int i;
+
+        cursor = query.getCursor();
+        if (cursor != null && (cursor.getSortKey() != query.getSortKey() ||
+                cursor.isDescending() != query.isDescending()))
+        {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+
+        plan     = plan(query);
+        pageSize = query.getLimit() == PropertyQuery.NO_LIMIT ? PropertyQuery.NO_LIMIT : query.getLimit() + 1;
+
+        if (query.getSortKey() == SortKey.PRICE && plan.candidates > 0 && (plan.drivenByPrice ||
+                (long) pageSize * Properties.size() < (long) plan.candidates * plan.candidates))
+        {
+            ordinals = firstOrdinalsByPrice(query, pageSize);
+        }
+        else
+        {
+            ordinals = firstOrdinals(query, plan, pageSize);
+        }
+
+        properties = new ArrayList<>(Math.min(ordinals.length, query.getLimit()));
+        for (i = 0; i < ordinals.length && i < query.getLimit(); i++)
+        {
+            properties.add(Properties.get(ordinals[i]));
+        }
+
+        if (ordinals.length <= query.getLimit())
+        {
+            return new PropertyPage(properties, null);
+        }
+        return new PropertyPage(properties, new PageCursor(query.getSortKey(), query.isDescending(),
+                sortValueOf(query, ordinals[query.getLimit() - 1]), ordinals[query.getLimit() - 1]));
+    }
+
+    /**
+     * @param query The predicates to be matched.
+     * @return The number of properties matching every predicate of the query.
+     */
+    public int count(final PropertyQuery query)
+    {
+        int[] count;
+        count = new int[1];
+
+        forEachMatchingOrdinal(query, ordinal -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * This method autocompletes a street name, for example as it is being typed.
+     * @param prefix The start of the street name (case-insensitive).
+     * @param limit The maximum number of suggestions.
+     * @return An ArrayList of the street names starting with the prefix, with the number of properties on each,
+     * most common first; it is empty if there are none.
+     */
+    public ArrayList<Suggestion> suggestStreets(final String prefix, final int limit)
+    {
+        return suggestStreets(prefix, 0, limit);
+    }
+
+    /**
+     * This method autocompletes a street name that may be misspelled.
+     * @param prefix The start of the street name (case-insensitive).
+     * @param maxEdits The maximum number of characters of the prefix that can be inserted, deleted or replaced
+     *                 to match the start of a street name.
+     * @param limit The maximum number of suggestions.
+     * @return An ArrayList of the matching street names, with the number of properties on each,
+     * most common first; it is empty if there are none.
+     */
+    public ArrayList<Suggestion> suggestStreets(final String prefix, final int maxEdits, final int limit)
+    {
+        return suggest(streetNames, prefix, maxEdits, limit);
+    }
+
+    /**
+     * This method autocompletes a city, for example as it is being typed.
+     * @param prefix The start of the city (case-insensitive).
+     * @param limit The maximum number of suggestions.
+     * @return An ArrayList of the cities starting with the prefix, with the number of properties in each,
+     * most common first; it is empty if there are none.
+     */
+    public ArrayList<Suggestion> suggestCities(final String prefix, final int limit)
+    {
+        return suggestCities(prefix, 0, limit);
+    }
+
+    /**
+     * This method autocompletes a city that may be misspelled.
+     * @param prefix The start of the city (case-insensitive).
+     * @param maxEdits The maximum number of characters of the prefix that can be inserted, deleted or replaced
+     *                 to match the start of a city.
+     * @param limit The maximum number of suggestions.
+     * @return An ArrayList of the matching cities, with the number of properties in each,
+     * most common first; it is empty if there are none.
+     */
+    public ArrayList<Suggestion> suggestCities(final String prefix, final int maxEdits, final int limit)
+    {
+        return suggest(cityNames, prefix, maxEdits, limit);
+    }
+
+    private static ArrayList<Suggestion> suggest(final NameTrie names, final String prefix, final int maxEdits,
+                                                 final int limit)
+    {
+        if (prefix == null)
+        {
+            throw new NullPointerException("Invalid prefix: null");
+        }
+        if (maxEdits < 0)
+        {
+            throw new IllegalArgumentException("Invalid maximum number of edits: " + maxEdits);
+        }
+        if (limit < VALID_MIN_RETURN_SIZE)
+        {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+
+        if (maxEdits == 0)
+        {
+            return names.complete(prefix, limit);
+        }
+        return names.complete(prefix, maxEdits, limit);
+    }
+
+    /**
+     * This method answers a query from the query cache, or plans and runs it, see plan, and caches the result
+     * when it is small enough.
+     * @param query The predicates to be matched.
+     * @param action The action to be performed for the ordinal of each matching property.
+     */
+    private void forEachMatchingOrdinal(final PropertyQuery query, final IntConsumer action)
+    {
+        int[] cached;
+        int[][] matches;
+        int[] matchCount;
+
+        cached = queryCache.get(query);
+        if (cached != null)
+        {
+            for (int ordinal : cached)
+            {
+                action.accept(ordinal);
+            }
+            return;
+        }
+
+        matches    = new int[][] {new int[PropertyTable.INITIAL_CAPACITY]};
+        matchCount = new int[1];
+
+        forEachMatchingOrdinal(query, plan(query), ordinal ->
+        {
+            if (matchCount[0] < matches[0].length)
+            {
+                matches[0][matchCount[0]] = ordinal;
+            }
+            else if (matchCount[0] < QueryCache.MAX_CACHED_MATCHES)
+            {
+                matches[0] = Arrays.copyOf(matches[0], Math.min(matchCount[0] * 2, QueryCache.MAX_CACHED_MATCHES));
+                matches[0][matchCount[0]] = ordinal;
+            }
+            matchCount[0]++;
+            action.accept(ordinal);
+        });
+
+        if (matchCount[0] <= QueryCache.MAX_CACHED_MATCHES)
+        {
+            queryCache.put(query, Arrays.copyOf(matches[0], matchCount[0]));
+        }
+    }
+
+    /**
+     * This method runs a planned query: the driver of the plan yields the candidates, and each candidate is
+     * checked against every predicate of the query in the same pass.
+     * @param query The predicates to be matched.
+     * @param plan The plan of the query.
+     * @param action The action to be performed for the ordinal of each matching property.
+     */
+    private void forEachMatchingOrdinal(final PropertyQuery query, final QueryPlan plan, final IntConsumer action)
+    {
+        IntConsumer filtered;
+        int ordinal;
+
+        filtered = candidate ->
+        {
+            if (query.matches(Properties, candidate))
+            {
+                action.accept(candidate);
+            }
+        };
+
+        if (plan.candidates == 0)
+        {
+            return;
+        }
+
+        if (scanPool != null && plan.driverFilter == null && !plan.drivenByPrice &&
+                plan.candidates >= PARALLEL_SCAN_THRESHOLD)
+        {
+            forEachMatchingOrdinalInParallel(query, plan.driverBitmap, action);
+        }
+        else if (plan.driverFilter != null)
+        {
+            plan.driverFilter.evaluate(amenityBitmaps::get).forEach(filtered);
+        }
+        else if (plan.drivenByPrice)
+        {
+            priceIndex.forEachBetween(query.getMinPriceUsd(), query.getMaxPriceUsd(), filtered);
+        }
+        else if (plan.driverBitmap != null)
+        {
+            plan.driverBitmap.forEach(filtered);
+        }
+        else
+        {
+            for (ordinal = 0; ordinal < Properties.highWaterMark(); ordinal++)
+            {
+                filtered.accept(ordinal);
+            }
+        }
+    }
 
     /**
-     * Constructor, valid all agency information before initialize the object.
-     * @param name The name of the agency, has length limit.
-     * @throws IllegalArgumentException If the length of the name exceed the limit.
+     * This method streams the properties matching a query lazily: nothing is matched until the stream is consumed,
+     * and a short-circuiting operation such as findFirst or limit stops the traversal, so a broad query such as
+     * every residence costs only what is consumed. The stream is in ascending order of the positions of the
+     * properties in the agency, and splits into ordinal ranges for a parallel stream.
+     * An ordered, limited or paged query is answered by findPage and streams that page.
+     * The agency must not change while the stream is consumed; with a ConcurrentAgency, consume the stream
+     * inside ConcurrentAgency.read.
+     * @param query The predicates to be matched.
+     * @return A stream of the properties matching every predicate of the query.
      */
-    public Agency(final String name)
+    public Stream<Property> stream(final PropertyQuery query)
     {
-        if (name.length() < VALID_MIN_NAME_LENGTH || name.length() > VALID_MAX_NAME_LENGTH)
+        QueryPlan plan;
+        RoaringBitmap candidates;
+
+        if (query.isOrdered())
         {
-            throw new IllegalArgumentException("Invalid name: " + name);
+            return findPage(query).getProperties().stream();
+        }
+
+        plan = plan(query);
+        if (plan.candidates == 0)
+        {
+            return Stream.empty();
+        }
+
+        if (plan.driverFilter != null)
+        {
+            candidates = plan.driverFilter.evaluate(amenityBitmaps::get);
+        }
+        else if (plan.drivenByPrice)
+        {
+            candidates = new RoaringBitmap();
+            priceIndex.forEachBetween(query.getMinPriceUsd(), query.getMaxPriceUsd(), candidates::add);
+        }
+        else
+        {
+            candidates = plan.driverBitmap;
         }
-        this.name  = name;
 
-        Properties = new HashMap<>();
+        return StreamSupport.stream(new PropertySpliterator(Properties, query, candidates, 0,
+                Properties.highWaterMark()), false);
     }
 
     /**
-     * This method adds the non-null property to the HashMap Properties.
-     * @param property The property to be added.
+     * This method walks the price index in the order of the query, from its cursor or from the end of its price
+     * range, and stops once enough properties match, or at the other end of the range. The walk visits about
+     * count / s properties for a query matching a share s of all properties, which is fewer than the plan
+     * yields when the matches are common.
+     * @param query The predicates to be matched, ordered by price.
+     * @param count The number of matching properties to be found.
+     * @return The ordinals of the first matching properties after the cursor, in the order of the query.
      */
-    public void addProperty(final Property property)
+    private int[] firstOrdinalsByPrice(final PropertyQuery query, final int count)
     {
-        if (property != null)
+        int[] ordinals;
+        int[] found;
+        double startPrice;
+        int startOrdinal;
+
+        ordinals = new int[Math.min(count, Properties.size())];
+        found    = new int[1];
+
+        if (query.getCursor() != null)
         {
-            Properties.put(property.getPropertyId(), property);
+            startPrice   = query.getCursor().getValue();
+            startOrdinal = query.getCursor().getOrdinal();
         }
+        else if (query.isDescending())
+        {
+            startPrice   = query.getMaxPriceUsd();
+            startOrdinal = Integer.MAX_VALUE;
+        }
+        else
+        {
+            startPrice   = query.getMinPriceUsd();
+            startOrdinal = Integer.MIN_VALUE;
+        }
+
+        priceIndex.forEachAfter(startPrice, startOrdinal, query.isDescending(), ordinal ->
+        {
+            double price;
+            price = Properties.getPriceUsd(ordinal);
+
+            if (query.isDescending() ? price < query.getMinPriceUsd() : price > query.getMaxPriceUsd())
+            {
+                return false;
+            }
+            if (query.matches(Properties, ordinal))
+            {
+                ordinals[found[0]] = ordinal;
+                found[0]++;
+            }
+            return found[0] < ordinals.length;
+        });
+        return Arrays.copyOf(ordinals, found[0]);
     }
 
     /**
-     * This method removes the property whose ID matches the parameter, from the HashMap Properties.
-     * @param propertyId The property ID to be removed.
+     * This method runs the plan of a query and keeps the first matching properties after its cursor in a heap
+     * bounded by the count, whose head is the last of them in the order of the query.
+     * @param query The predicates to be matched.
+     * @param plan The plan of the query.
+     * @param count The number of matching properties to be found.
+     * @return The ordinals of the first matching properties after the cursor, in the order of the query.
      */
-    public void removeProperty(final String propertyId)
+    private int[] firstOrdinals(final PropertyQuery query, final QueryPlan plan, final int count)
     {
-        Properties.remove(propertyId);
+        PriorityQueue<Integer> heap;
+        int[] ordinals;
+        int i;
+
+        heap = new PriorityQueue<>((ordinal1, ordinal2) -> compareInOrder(query, ordinal2, ordinal1));
+
+        forEachMatchingOrdinal(query, plan, ordinal ->
+        {
+            if (query.getCursor() != null && compareInOrder(query, ordinal, query.getCursor().getValue(),
+                    query.getCursor().getOrdinal()) <= 0)
+            {
+                return;
+            }
+            if (heap.size() < count)
+            {
+                heap.add(ordinal);
+            }
+            else if (compareInOrder(query, ordinal, heap.peek()) < 0)
+            {
+                heap.poll();
+                heap.add(ordinal);
+            }
+        });
+
+        ordinals = new int[heap.size()];
+        for (i = ordinals.length - 1; i >= 0; i--)
+        {
+            ordinals[i] = heap.poll();
+        }
+        return ordinals;
     }
 
     /**
-     * @param propertyId The property ID to be matched.
-     * @return The property whose ID matches the parameter from the HashMap, or null if there is no match.
+     * @return The value the property stored under the ordinal is ordered by, which is zero when the query
+     * is in the order of the agency.
      */
-    public Property getProperty(final String propertyId)
+    private double sortValueOf(final PropertyQuery query, final int ordinal)
     {
-        return Properties.get(propertyId);
+        return query.getSortKey() == null ? 0 : query.getSortKey().valueOf(Properties, ordinal);
+    }
+
+    private int compareInOrder(final PropertyQuery query, final int ordinal1, final int ordinal2)
+    {
+        return compareInOrder(query, ordinal1, sortValueOf(query, ordinal2), ordinal2);
     }
 
     /**
-     * @return The total amount in USD of all Properties.
+     * @return A negative number, zero or a positive number as the property stored under ordinal1 comes before,
+     * at or after the position of the value and ordinal2 in the order of the query: by value, then by ordinal,
+     * both reversed when the order is descending.
      */
-    public double getTotalPropertyValues()
+    private int compareInOrder(final PropertyQuery query, final int ordinal1, final double value2, final int ordinal2)
     {
-        double totalPropertyValues;
-        Set<String> propertyIds;
-
-        totalPropertyValues = 0;
-        propertyIds = Properties.keySet();
+        int result;
+        result = Double.compare(sortValueOf(query, ordinal1) + 0.0, value2 + 0.0);
 
-        for (String propertyId : propertyIds)
+        if (result == 0)
         {
-            totalPropertyValues += Properties.get(propertyId).getPriceUsd();
+            result = Integer.compare(ordinal1, ordinal2);
         }
-        return totalPropertyValues;
+        return query.isDescending() ? -result : result;
     }
 
     /**
-     * @return An ArrayList of the Residence properties with the swimming pool, or null if there are none.
+     * This method checks the candidates of a query segment by segment on the scan pool, and performs the action
+     * for the matching ordinals of every segment in turn, so that the action runs on this thread in ascending
+     * ordinal order.
+     * @param query The predicates to be matched.
+     * @param candidates The ordinals that may match, or null to check every ordinal.
+     * @param action The action to be performed for the ordinal of each matching property.
      */
-    public ArrayList<Residence> getPropertiesWithPools()
+    private void forEachMatchingOrdinalInParallel(final PropertyQuery query, final RoaringBitmap candidates,
+                                                  final IntConsumer action)
     {
-        ArrayList<Residence> propertiesWithPools;
-        Set<String> propertyIds;
-        Property oneProperty;
+        List<ForkJoinTask<int[]>> segments;
+        int highWaterMark;
+        int segmentSize;
+        int start;
 
-        propertiesWithPools = new ArrayList<>();
-        propertyIds = Properties.keySet();
+        segments      = new ArrayList<>();
+        highWaterMark = Properties.highWaterMark();
+        segmentSize   = Math.max(MIN_SEGMENT_SIZE,
+                highWaterMark / (scanPool.getParallelism() * SEGMENTS_PER_THREAD) + 1);
 
-        for(String propertyId : propertyIds)
+        for (start = 0; start < highWaterMark; start += segmentSize)
         {
-            oneProperty = Properties.get(propertyId);
+            segments.add(scanPool.submit(matchingOrdinals(query, candidates, start,
+                    Math.min(highWaterMark, start + segmentSize))));
+        }
 
-            if(oneProperty instanceof Residence)
+        for (ForkJoinTask<int[]> segment : segments)
+        {
+            for (int ordinal : segment.join())
             {
-                Residence oneResidence = (Residence) oneProperty;
-                if(oneResidence.hasSwimmingPool())
-                {
-                    propertiesWithPools.add(oneResidence);
-                }
+                action.accept(ordinal);
             }
         }
+    }
 
-        if (propertiesWithPools.size() == VALID_MIN_RETURN_SIZE)
+    /**
+     * @param query The predicates to be matched.
+     * @param candidates The ordinals that may match, or null to check every ordinal of the segment.
+     * @param start The first ordinal of the segment.
+     * @param end The ordinal after the last one of the segment.
+     * @return A task finding the matching ordinals of the segment, in ascending order.
+     */
+    private ForkJoinTask<int[]> matchingOrdinals(final PropertyQuery query, final RoaringBitmap candidates,
+                                                 final int start, final int end)
+    {
+        return ForkJoinTask.adapt(() ->
         {
-            return null;
-        }
-        return propertiesWithPools;
+            int[] matches;
+            int matchCount;
+            int ordinal;
+
+            matches    = new int[MIN_SEGMENT_SIZE];
+            matchCount = 0;
+            ordinal    = candidates == null ? start : candidates.nextOrdinal(start);
+
+            while (ordinal != RoaringBitmap.NO_ORDINAL && ordinal < end)
+            {
+                if (query.matches(Properties, ordinal))
+                {
+                    if (matchCount == matches.length)
+                    {
+                        matches = Arrays.copyOf(matches, matchCount * 2);
+                    }
+                    matches[matchCount] = ordinal;
+                    matchCount++;
+                }
+                ordinal = candidates == null ? ordinal + 1 : candidates.nextOrdinal(ordinal + 1);
+            }
+            return Arrays.copyOf(matches, matchCount);
+        });
     }
 
     /**
-     * @param minUsd The minimum price of the property, in USD.
-     * @param maxUsd The maximum price of the property, in USD.
-     * @return An array of properties whose price falls in the range specified by the parameters,
-     * or null if there are none.
+     * This method plans a query. Of the indexes the query can use, the price index, the type bitmaps,
+     * the street bitmaps, the postal bitmaps and the amenity bitmaps, it picks the one yielding the fewest
+     * candidates to drive the traversal, falling back to a scan of the Properties table.
+     * @param query The predicates to be matched.
+     * @return The plan of the query, with no candidates if an index shows that nothing can match.
      */
-    public Property[] getPropertiesBetween(final double minUsd, final double maxUsd)
+    private QueryPlan plan(final PropertyQuery query)
     {
-        Property[] propertiesBetween;
-        Set<String> propertyIds;
-        int i;
-        int counter;
+        QueryPlan plan;
+        int candidates;
+        RoaringBitmap typeOrdinals;
+        RoaringBitmap streetOrdinals;
+        RoaringBitmap postalOrdinals;
+        String canonicalType;
 
-        i = 0;
-        counter = 0;
-        propertyIds = Properties.keySet();
+        plan            = new QueryPlan();
+        plan.candidates = Properties.size();
 
-        for (String propertyId : propertyIds)
+        if (query.getPropertyType() != null)
         {
-            double propertyPriceInUsd;
-            propertyPriceInUsd = Properties.get(propertyId).getPriceUsd();
+            canonicalType = Property.canonicalType(query.getPropertyType());
+            typeOrdinals  = canonicalType == null ? null : typeBitmaps.get(canonicalType);
+            if (typeOrdinals == null)
+            {
+                return QueryPlan.EMPTY;
+            }
 
-            if (propertyPriceInUsd >= minUsd && propertyPriceInUsd <= maxUsd)
+            if (typeOrdinals.cardinality() < plan.candidates)
             {
-                counter++;
+                plan.candidates   = typeOrdinals.cardinality();
+                plan.driverBitmap = typeOrdinals;
             }
         }
 
-        propertiesBetween = new Property[counter];
+        if (query.getStreetName() != null)
+        {
+            streetOrdinals = streetBitmaps.get(Address.foldCase(query.getStreetName()));
+            if (streetOrdinals == null)
+            {
+                return QueryPlan.EMPTY;
+            }
+
+            if (streetOrdinals.cardinality() < plan.candidates)
+            {
+                plan.candidates   = streetOrdinals.cardinality();
+                plan.driverBitmap = streetOrdinals;
+            }
+        }
 
-        for (String propertyId : propertyIds)
+        if (query.getPostalPrefix() != null && !query.getPostalPrefix().isEmpty())
         {
-            double propertyPriceInUsd;
-            propertyPriceInUsd = Properties.get(propertyId).getPriceUsd();
+            postalOrdinals = postalBitmaps.get(query.getPostalPrefix());
+            if (postalOrdinals == null)
+            {
+                return QueryPlan.EMPTY;
+            }
 
-            if (propertyPriceInUsd >= minUsd && propertyPriceInUsd <= maxUsd)
+            if (postalOrdinals.cardinality() < plan.candidates)
             {
-                propertiesBetween[i] = Properties.get(propertyId);
-                i++;
+                plan.candidates   = postalOrdinals.cardinality();
+                plan.driverBitmap = postalOrdinals;
             }
         }
 
-        if (propertiesBetween.length == VALID_MIN_RETURN_SIZE)
+        if (query.hasPriceRange())
         {
-            return null;
+            candidates = priceIndex.countBetween(query.getMinPriceUsd(), query.getMaxPriceUsd());
+            if (candidates < plan.candidates)
+            {
+                plan.candidates    = candidates;
+                plan.driverBitmap  = null;
+                plan.drivenByPrice = true;
+            }
         }
-        return propertiesBetween;
+
+        if (query.getAmenityFilter() != null)
+        {
+            candidates = query.getAmenityFilter().estimateCardinality(amenityBitmaps::get);
+            if (candidates < plan.candidates)
+            {
+                plan.candidates    = candidates;
+                plan.driverBitmap  = null;
+                plan.drivenByPrice = false;
+                plan.driverFilter  = query.getAmenityFilter();
+            }
+        }
+        return plan;
     }
 
     /**
-     * @param streetName The street name to be matched.
-     * @return An ArrayList of addresses which are on the specified street name, or null if there are none.
+     * @param ordinals The ordinals of the properties to be returned.
+     * @param type The subtype every one of the properties belongs to.
+     * @return An ArrayList of the properties in ascending ordinal order, or null if there are none.
      */
-    public ArrayList<Address> getPropertiesOn(final String streetName)
+    private <T extends Property> ArrayList<T> propertiesIn(final RoaringBitmap ordinals, final Class<T> type)
     {
-        ArrayList<Address> propertiesOnStreet;
-        Set<String> propertyIds;
-        String propertyStreetName;
-        propertiesOnStreet = new ArrayList<>();
-        propertyIds = Properties.keySet();
+        ArrayList<T> properties;
 
-        for(String propertyId : propertyIds)
+        if (ordinals.cardinality() == VALID_MIN_RETURN_SIZE)
         {
-            propertyStreetName = Properties.get(propertyId).getAddress().getStreetName();
-            if (propertyStreetName.equalsIgnoreCase(streetName))
-            {
-                propertiesOnStreet.add(Properties.get(propertyId).getAddress());
-            }
+            return null;
         }
-        return propertiesOnStreet;
+
+        properties = new ArrayList<>(ordinals.cardinality());
+        ordinals.forEach(ordinal -> properties.add(type.cast(Properties.get(ordinal))));
+        return properties;
     }
 
     /**
-     * @param minBedrooms The minimum number of bedrooms in the range.
-     * @param maxBedrooms The maximum number of bedrooms in the range.
-     * @return A HashMap of Residence properties (key is property id, value is the Property)
-     * whose number of bedrooms falls in the range specified by the parameters, or null if there are none.
+     * This method indexes the property stored under the ordinal by price, counts it in the price statistics
+     * of all properties and of its type, and indexes it by type, by street, by postal area
+     * and by amenity, and counts its street name and city for autocomplete.
+     * Street names are indexed by their folded case, see Address.foldCase. A postal code is indexed under
+     * every prefix of its normalized form, see Address.normalizePostalCode, so that an area search is a single
+     * lookup, like a search by street; a postal code has at most six characters.
+     * @param ordinal The ordinal of the property to be indexed.
      */
-    public HashMap<String, Residence> getPropertiesWithBedrooms(final int minBedrooms, final int maxBedrooms)
+    private void index(final int ordinal)
     {
-        HashMap<String, Residence> propertiesWithBedrooms;
-        Set<String> propertyIds;
-        int numOfBedrooms;
-        Property oneProperty;
+        String postalKey;
+        int length;
 
-        propertiesWithBedrooms = new HashMap<>();
-        propertyIds = Properties.keySet();
+        addPrice(ordinal, Properties.getPriceUsd(ordinal));
+        typeBitmaps.computeIfAbsent(Property.canonicalType(Properties.getType(ordinal)), type -> new RoaringBitmap())
+                .add(ordinal);
 
-        for (String propertyId : propertyIds)
+        for (Amenity amenity : Amenity.values())
         {
-            oneProperty = Properties.get(propertyId);
-
-            if (oneProperty instanceof Residence)
+            if (Properties.offers(ordinal, amenity))
             {
-                Residence oneResidence = (Residence) oneProperty;
-                numOfBedrooms = oneResidence.getNumberOfBedrooms();
-                if (numOfBedrooms >= minBedrooms && numOfBedrooms <= maxBedrooms)
-                {
-                    propertiesWithBedrooms.put(propertyId, oneResidence);
-                }
+                amenityBitmaps.get(amenity).add(ordinal);
             }
         }
 
-        if (propertiesWithBedrooms.size() == VALID_MIN_RETURN_SIZE)
+        postalKey = Address.normalizePostalCode(Properties.getPostalCode(ordinal));
+        for (length = 1; length <= postalKey.length(); length++)
         {
-            return null;
+            postalBitmaps.computeIfAbsent(postalKey.substring(0, length), prefix -> new RoaringBitmap()).add(ordinal);
         }
-        return propertiesWithBedrooms;
+
+        if (batching)
+        {
+            batchOrdinals.add(ordinal);
+            return;
+        }
+
+        streetBitmaps.computeIfAbsent(Address.foldCase(Properties.getStreetName(ordinal)),
+                street -> new RoaringBitmap()).add(ordinal);
+        streetNames.add(Properties.getStreetName(ordinal));
+        cityNames.add(Properties.getCity(ordinal));
     }
 
     /**
-     * @param propertyType The property type to be matched.
-     * @return An ArrayList of Property, with all of the information about every subtype property
-     * that matches the specified property type (case-insensitive), with certain format.
+     * This method indexes the properties added in a batch by street, and counts their street names and cities
+     * for autocomplete, see index. The properties are first grouped by street name and by city, in the order
+     * of their ordinals, so that a name is folded and looked up once per batch instead of once per property.
+     * @param ordinals The ordinals of the properties added in the batch.
      */
-    public ArrayList<Property> getPropertiesOfType(final String propertyType)
+    private void indexNames(final RoaringBitmap ordinals)
     {
-        ArrayList<Property> propertiesOfType;
-        Set<String> propertyIds;
-        Property oneProperty;
+        Map<String, RoaringBitmap> streets;
+        Map<String, Integer> cities;
+        RoaringBitmap streetOrdinals;
 
-        propertiesOfType = new ArrayList<>();
-        propertyIds = Properties.keySet();
+        streets = new LinkedHashMap<>();
+        cities  = new LinkedHashMap<>();
 
-        for(String propertyId : propertyIds)
+        ordinals.forEach(ordinal ->
         {
-            oneProperty = Properties.get(propertyId);
+            streets.computeIfAbsent(Properties.getStreetName(ordinal), street -> new RoaringBitmap()).add(ordinal);
+            cities.merge(Properties.getCity(ordinal), 1, Integer::sum);
+        });
 
-            if(oneProperty.getType().equalsIgnoreCase(propertyType))
-            {
-                propertiesOfType.add(oneProperty);
-            }
+        for (Map.Entry<String, RoaringBitmap> street : streets.entrySet())
+        {
+            streetOrdinals = streetBitmaps.computeIfAbsent(Address.foldCase(street.getKey()),
+                    key -> new RoaringBitmap());
+            street.getValue().forEach(streetOrdinals::add);
+            streetNames.add(street.getKey(), street.getValue().cardinality());
+        }
+        for (Map.Entry<String, Integer> city : cities.entrySet())
+        {
+            cityNames.add(city.getKey(), city.getValue());
         }
-        return propertiesOfType;
     }
 
     /**
-     * @return An ArrayList<Commercial> that holds only Commercial properties that have a loading dock available.
+     * This method removes the property stored under the ordinal from the Properties table and every index.
+     * A property added in the batch in progress is not fully indexed yet, so the batch is ended, merging
+     * what it kept aside into the indexes, and a new one is started before the property is removed.
+     * @param ordinal The ordinal of the property to be removed.
      */
-    public ArrayList<Commercial> getPropertiesWithLoadingDocks()
+    private void removeOrdinal(final int ordinal)
     {
-        ArrayList<Commercial> propertiesWithLoadingDock;
-        Set<String> propertyIds;
-        Property oneProperty;
+        Property removed;
+        String streetKey;
+        RoaringBitmap streetOrdinals;
+        String postalKey;
+        RoaringBitmap postalOrdinals;
+        int length;
 
-        propertiesWithLoadingDock = new ArrayList<>();
-        propertyIds = Properties.keySet();
+        if (batching && batchOrdinals.contains(ordinal))
+        {
+            endBatch();
+            beginBatch();
+        }
 
-        for (String propertyId : propertyIds)
+        queryCache.invalidate(Properties, ordinal, false);
+        removePrice(ordinal, Properties.getPriceUsd(ordinal));
+        typeBitmaps.get(Property.canonicalType(Properties.getType(ordinal))).remove(ordinal);
+
+        streetKey      = Address.foldCase(Properties.getStreetName(ordinal));
+        streetOrdinals = streetBitmaps.get(streetKey);
+        streetOrdinals.remove(ordinal);
+        if (streetOrdinals.cardinality() == 0)
         {
-            oneProperty = Properties.get(propertyId);
+            streetBitmaps.remove(streetKey);
+        }
 
-            if (oneProperty instanceof Commercial)
+        postalKey = Address.normalizePostalCode(Properties.getPostalCode(ordinal));
+        for (length = 1; length <= postalKey.length(); length++)
+        {
+            postalOrdinals = postalBitmaps.get(postalKey.substring(0, length));
+            postalOrdinals.remove(ordinal);
+            if (postalOrdinals.cardinality() == 0)
             {
-                Commercial oneCommercial = (Commercial) oneProperty;
-                if (oneCommercial.hasLoadingDock())
-                {
-                    propertiesWithLoadingDock.add(oneCommercial);
-                }
+                postalBitmaps.remove(postalKey.substring(0, length));
             }
         }
+        streetNames.remove(Properties.getStreetName(ordinal));
+        cityNames.remove(Properties.getCity(ordinal));
 
-        if (propertiesWithLoadingDock.size() == VALID_MIN_RETURN_SIZE)
+        for (RoaringBitmap amenityBitmap : amenityBitmaps.values())
         {
-            return null;
+            amenityBitmap.remove(ordinal);
+        }
+
+        removed = Properties.remove(ordinal);
+        if (removed != null)
+        {
+            removed.removePriceChangeListener(priceChangeListener);
         }
-        return propertiesWithLoadingDock;
     }
 
     /**
-     * @return An ArrayList<Commercial> that holds only Commercial properties that have highway access.
+     * This method is notified when the price of a stored property, or of a view of one, changes.
+     * @param property The property whose price changed.
+     * @param oldPriceInUsd The price of the property before the change, in USD.
      */
-    public ArrayList<Commercial> getPropertiesWithHighwayAccess()
+    private void priceChanged(final Property property, final double oldPriceInUsd)
     {
-        ArrayList<Commercial> propertiesWithHighwayAccess;
-        Set<String> propertyIds;
-        Property oneProperty;
-
-        propertiesWithHighwayAccess = new ArrayList<>();
-        propertyIds = Properties.keySet();
+        int ordinal;
 
-        for (String propertyId : propertyIds)
+        if (!Properties.storesPropertyObjects())
         {
-            oneProperty = Properties.get(propertyId);
-
-            if (oneProperty instanceof Commercial)
-            {
-                Commercial oneCommercial = (Commercial) oneProperty;
-                if (oneCommercial.hasHighwayAccess())
-                {
-                    propertiesWithHighwayAccess.add(oneCommercial);
-                }
-            }
+            setViewPriceUsd(property);
+            return;
         }
 
-        if (propertiesWithHighwayAccess.size() == VALID_MIN_RETURN_SIZE)
+        ordinal = Properties.ordinalOf(property.getPropertyId());
+        if (ordinal != PropertyTable.NO_ORDINAL && Properties.get(ordinal) == property)
         {
-            return null;
+            movePrice(ordinal, oldPriceInUsd, property.getPriceUsd());
         }
-        return propertiesWithHighwayAccess;
     }
 
     /**
-     * @param squareFootage The minimum square footage.
-     * @return An ArrayList<Retail> that holds properties where square footage is at least the parameter value.
+     * This method writes the price of a view back to the property it was created from. A view whose property
+     * was removed since is ignored, even if a property with the same ID was added again, like a Property object
+     * that was removed from a HEAP agency.
+     * @param view A view returned by a search.
      */
-    public ArrayList<Retail> getPropertiesSquareFootage(final int squareFootage)
+    void setViewPriceUsd(final Property view)
     {
-        ArrayList<Retail> propertiesWithSquareFootage;
-        Set<String> propertyIds;
-        Property oneProperty;
+        int ordinal;
 
-        propertiesWithSquareFootage = new ArrayList<>();
-        propertyIds = Properties.keySet();
-
-        for(String propertyId : propertyIds)
+        if (Properties.isCurrentView(view))
         {
-            oneProperty = Properties.get(propertyId);
-            if (oneProperty instanceof Retail)
-            {
-                Retail oneRetail = (Retail) oneProperty;
-                if (oneRetail.getSquareFootage() >= squareFootage)
-                {
-                    propertiesWithSquareFootage.add(oneRetail);
-                }
-            }
+            ordinal = view.getViewOrdinal();
+            movePrice(ordinal, Properties.getPriceUsd(ordinal), view.getPriceUsd());
         }
+    }
 
-        if (propertiesWithSquareFootage.size() == VALID_MIN_RETURN_SIZE)
+    /**
+     * @param view A property returned by a search.
+     * @return True if the property is a view whose property is still stored, see setViewPriceUsd.
+     */
+    boolean isCurrentView(final Property view)
+    {
+        return Properties.isCurrentView(view);
+    }
+
+    /**
+     * This method moves a property to its new position in the price index, updates the price statistics
+     * and histograms, drops the cached results that depend on its price, and writes the new price to the
+     * Properties table.
+     * @param ordinal The ordinal of the property.
+     * @param oldPriceInUsd The price the property is currently indexed with, in USD.
+     * @param newPriceInUsd The new price of the property, in USD.
+     */
+    private void movePrice(final int ordinal, final double oldPriceInUsd, final double newPriceInUsd)
+    {
+        queryCache.invalidate(Properties, ordinal, true);
+        removePrice(ordinal, oldPriceInUsd);
+        addPrice(ordinal, newPriceInUsd);
+        Properties.setPriceUsd(ordinal, newPriceInUsd);
+    }
+
+    /**
+     * This method counts the price of the property stored under the ordinal in the price index, in the price
+     * statistics of all properties and of its type, and in the histograms of its type, city and bedrooms.
+     * @param ordinal The ordinal of the property.
+     * @param priceInUsd The price of the property, in USD.
+     */
+    private void addPrice(final int ordinal, final double priceInUsd)
+    {
+        String type;
+        type = Property.canonicalType(Properties.getType(ordinal));
+
+        totalPrices.add(priceInUsd, ordinal);
+        typePrices.computeIfAbsent(type, key -> newPriceAggregate()).add(priceInUsd, ordinal);
+
+        priceHistogram.add(priceInUsd);
+        typeHistograms.computeIfAbsent(type, key -> new PriceHistogram()).add(priceInUsd);
+        cityHistograms.computeIfAbsent(Address.foldCase(Properties.getCity(ordinal)), key -> new PriceHistogram())
+                .add(priceInUsd);
+
+        if (Properties.getKind(ordinal) == PropertyTable.RESIDENCE)
         {
-            return null;
+            bedroomHistograms.computeIfAbsent(Properties.getNumberOfBedrooms(ordinal), key -> new PriceHistogram())
+                    .add(priceInUsd);
         }
-        return propertiesWithSquareFootage;
     }
 
     /**
-     * @return An ArrayList<Retail> that holds properties where customer parking is available.
+     * This method uncounts the price of the property stored under the ordinal, see addPrice.
+     * The histogram of a city is dropped along with the last property in it.
+     * @param ordinal The ordinal of the property.
+     * @param priceInUsd The price the property was counted with, in USD.
      */
-    public ArrayList<Retail> getPropertiesWithCustomerParking()
+    private void removePrice(final int ordinal, final double priceInUsd)
     {
-        ArrayList<Retail> propertiesWithCustomerParking;
-        Set<String> propertyIds;
-        Property oneProperty;
+        String type;
+        String cityKey;
+        PriceHistogram cityHistogram;
 
-        propertiesWithCustomerParking = new ArrayList<>();
-        propertyIds = Properties.keySet();
+        type    = Property.canonicalType(Properties.getType(ordinal));
+        cityKey = Address.foldCase(Properties.getCity(ordinal));
 
-        for (String propertyId : propertyIds)
+        totalPrices.remove(priceInUsd, ordinal);
+        typePrices.get(type).remove(priceInUsd, ordinal);
+
+        priceHistogram.remove(priceInUsd);
+        typeHistograms.get(type).remove(priceInUsd);
+
+        cityHistogram = cityHistograms.get(cityKey);
+        cityHistogram.remove(priceInUsd);
+        if (cityHistogram.getCount() == 0)
         {
-            oneProperty = Properties.get(propertyId);
+            cityHistograms.remove(cityKey);
+        }
 
-            if (oneProperty instanceof Retail)
-            {
-                Retail oneRetail = (Retail) oneProperty;
-                if (oneRetail.hasCustomerParking())
-                {
-                    propertiesWithCustomerParking.add(oneRetail);
-                }
-            }
+        if (Properties.getKind(ordinal) == PropertyTable.RESIDENCE)
+        {
+            bedroomHistograms.get(Properties.getNumberOfBedrooms(ordinal)).remove(priceInUsd);
         }
+    }
 
-        if (propertiesWithCustomerParking.size() == VALID_MIN_RETURN_SIZE)
+    /**
+     * This method starts a batch of changes, during which the prices added to and removed from the price
+     * aggregates, and the properties to be indexed by name, are kept aside, to be merged into their indexes
+     * by endBatch.
+     */
+    private void beginBatch()
+    {
+        batching      = true;
+        batchOrdinals = new RoaringBitmap();
+        totalPrices.beginBatch();
+        for (PriceAggregate typeAggregate : typePrices.values())
         {
-            return null;
+            typeAggregate.beginBatch();
         }
-        return propertiesWithCustomerParking;
     }
 
     /**
-     * @return An ArrayList<Residence> that hold only the Residences that are in a strata.
+     * This method ends a batch of changes, merging the properties and the prices kept aside into the indexes.
      */
-    public ArrayList<Residence> getPropertiesWithStrata()
+    private void endBatch()
+    {
+        batching = false;
+        indexNames(batchOrdinals);
+        batchOrdinals = null;
+
+        totalPrices.endBatch();
+        for (PriceAggregate typeAggregate : typePrices.values())
+        {
+            typeAggregate.endBatch();
+        }
+    }
+
+    /**
+     * @return A price aggregate for a type seen for the first time, which joins the batch in progress, if any.
+     */
+    private PriceAggregate newPriceAggregate()
+    {
+        PriceAggregate typeAggregate;
+        typeAggregate = new PriceAggregate();
+
+        if (batching)
+        {
+            typeAggregate.beginBatch();
+        }
+        return typeAggregate;
+    }
+
+    private static void writeBitmaps(final AgencySnapshot.Output out, final Map<String, RoaringBitmap> bitmaps)
+            throws IOException
     {
-        ArrayList<Residence> propertiesWithStrata;
-        Set<String> propertyIds;
-        Property oneProperty;
+        out.putInt(bitmaps.size());
+        for (Map.Entry<String, RoaringBitmap> entry : bitmaps.entrySet())
+        {
+            out.putString(entry.getKey());
+            entry.getValue().write(out);
+        }
+    }
 
-        propertiesWithStrata = new ArrayList<>();
-        propertyIds = Properties.keySet();
+    private static void readBitmaps(final AgencySnapshot.Input in, final Map<String, RoaringBitmap> bitmaps)
+            throws IOException
+    {
+        RoaringBitmap bitmap;
+        int entries;
 
-        for (String propertyId : propertyIds)
+        for (entries = in.getInt(); entries > 0; entries--)
         {
-            oneProperty = Properties.get(propertyId);
+            bitmap = new RoaringBitmap();
+            bitmaps.put(in.getString(), bitmap);
+            bitmap.read(in);
+        }
+    }
 
-            if (oneProperty instanceof Residence)
-            {
-                Residence oneResidence = (Residence) oneProperty;
-                if (oneResidence.isPartOfStrata())
-                {
-                    propertiesWithStrata.add(oneResidence);
-                }
-            }
+    private static void writeHistograms(final AgencySnapshot.Output out, final Map<String, PriceHistogram> histograms)
+            throws IOException
+    {
+        out.putInt(histograms.size());
+        for (Map.Entry<String, PriceHistogram> entry : histograms.entrySet())
+        {
+            out.putString(entry.getKey());
+            entry.getValue().write(out);
         }
+    }
+
+    private static void readHistograms(final AgencySnapshot.Input in, final Map<String, PriceHistogram> histograms)
+            throws IOException
+    {
+        PriceHistogram histogram;
+        int entries;
 
-        if (propertiesWithStrata.size() == VALID_MIN_RETURN_SIZE)
+        for (entries = in.getInt(); entries > 0; entries--)
         {
-            return null;
+            histogram = new PriceHistogram();
+            histograms.put(in.getString(), histogram);
+            histogram.read(in);
         }
-        return propertiesWithStrata;
+    }
+
+    /**
+     * @return A copy of the histogram, or an empty histogram if it is null.
+     */
+    private static PriceHistogram copyOf(final PriceHistogram histogram)
+    {
+        return histogram == null ? new PriceHistogram() : histogram.copy();
+    }
+
+    /**
+     * The plan of a query: the index that drives its traversal, and the number of candidates that index yields.
+     */
+    private static final class QueryPlan
+    {
+        private static final QueryPlan EMPTY = new QueryPlan();
+
+        private RoaringBitmap driverBitmap;
+        private AmenityFilter driverFilter;
+        private boolean       drivenByPrice;
+        private int           candidates;
     }
 }
@@ -0,0 +1,538 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models the binary snapshot of an agency: its property table and its indexes, written to one file
+ * so that the agency comes back without parsing the data files, without validating properties that were
+ * validated when they were added, and without rebuilding its indexes property by property.
+ * A snapshot is written and read front to back through an Output and an Input, each of which streams
+ * the file through a single buffer; every index writes and reads its own section.
+ * <pre>
+ *     header:  magic | version | body length | CRC-32C of the body
+ *     body:    table | indexes, see Agency.writeSnapshot
+ *     table:   high water mark | string count | strings | one record per ordinal below the high water mark
+ *     record:  kind | type | amenities | bedrooms | square footage | street number | price | property ID |
+ *              unit number | street name | postal code | city
+ *     string:  length | UTF-8 bytes, or a length of -1 for null
+ * </pre>
+ * The records are written by ordinal, so that a restored table keeps the ordinals its indexes refer to;
+ * the record of a free ordinal is its FREE kind alone. The strings of the records are written once each,
+ * and a record refers to them by code; a property ID is kept packed when PropertyIds can pack it,
+ * and as a string code otherwise. The body is checked against its CRC before it is read, and a snapshot
+ * of another version is rejected rather than converted.
+ */
+final class AgencySnapshot
+{
+    private static final int MAGIC = 0x534e4150;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int NULL_LENGTH = -1;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_BODY_LENGTH = 8;
+    private static final int HEADER_CHECKSUM = 16;
+
+    private AgencySnapshot()
+    {
+    }
+
+    /**
+     * This method writes the records of the table, and the strings they refer to.
+     * @param out The snapshot being written.
+     * @param table The table to be written.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    static void writeTable(final Output out, final PropertyTable table) throws IOException
+    {
+        StringDictionary strings;
+        Address address;
+        long packedId;
+        int amenities;
+        int code;
+        int ordinal;
+
+        strings = internStrings(table);
+        out.putInt(table.highWaterMark());
+        out.putInt(strings.size());
+
+        for (code = 0; code < strings.size(); code++)
+        {
+            out.putString(strings.get(code));
+        }
+
+        for (ordinal = 0; ordinal < table.highWaterMark(); ordinal++)
+        {
+            out.putByte(table.getKind(ordinal));
+            if (!table.isLive(ordinal))
+            {
+                continue;
+            }
+
+            address  = table.getAddress(ordinal);
+            packedId = PropertyIds.pack(table.getPropertyId(ordinal));
+
+            if (packedId == PropertyIds.NOT_PACKABLE)
+            {
+                packedId = -(strings.codeOf(table.getPropertyId(ordinal)) + 1L);
+            }
+
+            amenities = 0;
+            for (Amenity amenity : Amenity.values())
+            {
+                if (table.offers(ordinal, amenity))
+                {
+                    amenities |= 1 << amenity.ordinal();
+                }
+            }
+
+            out.putByte((byte) Property.typeCode(table.getType(ordinal)));
+            out.putByte((byte) amenities);
+            out.putInt(table.getKind(ordinal) == PropertyTable.RESIDENCE ? table.getNumberOfBedrooms(ordinal) : 0);
+            out.putInt(table.getKind(ordinal) == PropertyTable.RETAIL ? table.getSquareFootage(ordinal) : 0);
+            out.putInt(address.getStreetNumber());
+            out.putDouble(table.getPriceUsd(ordinal));
+            out.putLong(packedId);
+            out.putInt(address.getUnitNumber() == null ?
+                    StringDictionary.NO_CODE : strings.codeOf(address.getUnitNumber()));
+            out.putInt(strings.codeOf(address.getStreetName()));
+            out.putInt(strings.codeOf(address.getPostalCode()));
+            out.putInt(strings.codeOf(address.getCity()));
+        }
+    }
+
+    /**
+     * This method reads the records written by writeTable into an empty table, storing every property
+     * under the ordinal it had, without validating it again.
+     * @param in The snapshot being read.
+     * @param table The empty table to be filled.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    static void readTable(final Input in, final PropertyTable table) throws IOException
+    {
+        String[] strings;
+        int highWaterMark;
+        int code;
+        int ordinal;
+
+        highWaterMark = in.getInt();
+        strings       = new String[in.getInt()];
+
+        for (code = 0; code < strings.length; code++)
+        {
+            strings[code] = in.getString();
+        }
+
+        table.ensureCapacity(highWaterMark);
+        for (ordinal = 0; ordinal < highWaterMark; ordinal++)
+        {
+            readRecord(in, table, ordinal, strings);
+        }
+        table.recover(highWaterMark);
+    }
+
+    /**
+     * @return A dictionary of every string of the live properties of the table that is not packed.
+     */
+    private static StringDictionary internStrings(final PropertyTable table)
+    {
+        StringDictionary strings;
+        Address address;
+        int ordinal;
+
+        strings = new StringDictionary();
+        for (ordinal = 0; ordinal < table.highWaterMark(); ordinal++)
+        {
+            if (table.isLive(ordinal))
+            {
+                address = table.getAddress(ordinal);
+                if (PropertyIds.pack(table.getPropertyId(ordinal)) == PropertyIds.NOT_PACKABLE)
+                {
+                    strings.intern(table.getPropertyId(ordinal));
+                }
+                if (address.getUnitNumber() != null)
+                {
+                    strings.intern(address.getUnitNumber());
+                }
+                strings.intern(address.getStreetName());
+                strings.intern(address.getPostalCode());
+                strings.intern(address.getCity());
+            }
+        }
+        return strings;
+    }
+
+    /**
+     * This method reads one record, and stores the property it holds under the ordinal unless it is free.
+     */
+    private static void readRecord(final Input in, final PropertyTable table, final int ordinal,
+                                   final String[] strings) throws IOException
+    {
+        byte kind;
+        String type;
+        int amenities;
+        int bedrooms;
+        int squareFootage;
+        int streetNumber;
+        double price;
+        long packedId;
+        String propertyId;
+        int unitNumber;
+        Address address;
+
+        kind = in.getByte();
+        if (kind == PropertyTable.FREE)
+        {
+            return;
+        }
+
+        type          = Property.typeName(in.getByte());
+        amenities     = in.getByte() & 0xFF;
+        bedrooms      = in.getInt();
+        squareFootage = in.getInt();
+        streetNumber  = in.getInt();
+        price         = in.getDouble();
+        packedId      = in.getLong();
+        propertyId    = packedId < 0 ? strings[(int) (-packedId - 1)] : PropertyIds.unpack(packedId);
+        unitNumber    = in.getInt();
+
+        address = Address.restore(unitNumber == StringDictionary.NO_CODE ? null : strings[unitNumber], streetNumber,
+                strings[in.getInt()], strings[in.getInt()], strings[in.getInt()]);
+
+        switch (kind)
+        {
+            case PropertyTable.RESIDENCE:
+                table.store(ordinal, Residence.restore(price, address, bedrooms,
+                        offered(amenities, Amenity.SWIMMING_POOL), type, propertyId,
+                        offered(amenities, Amenity.STRATA)));
+                break;
+            case PropertyTable.COMMERCIAL:
+                table.store(ordinal, Commercial.restore(price, address, type, propertyId,
+                        offered(amenities, Amenity.LOADING_DOCK), offered(amenities, Amenity.HIGHWAY_ACCESS)));
+                break;
+            default:
+                table.store(ordinal, Retail.restore(price, address, type, propertyId, squareFootage,
+                        offered(amenities, Amenity.CUSTOMER_PARKING)));
+                break;
+        }
+    }
+
+    private static boolean offered(final int amenities, final Amenity amenity)
+    {
+        return (amenities & (1 << amenity.ordinal())) != 0;
+    }
+
+    /**
+     * A snapshot being written. The header is written by finish, once the body is complete, so that
+     * a snapshot whose writing failed is never taken for a valid one.
+     */
+    static final class Output implements Closeable
+    {
+        private final FileChannel channel;
+        private final ByteBuffer  buffer;
+        private final CRC32C      checksum;
+
+        /**
+         * Constructor, which creates the file, or empties it if it exists.
+         * @param file The file to be written.
+         * @throws IOException If the file cannot be opened.
+         */
+        Output(final File file) throws IOException
+        {
+            channel  = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer   = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            checksum = new CRC32C();
+
+            channel.position(HEADER_SIZE);
+        }
+
+        void putByte(final byte value) throws IOException
+        {
+            require(Byte.BYTES).put(value);
+        }
+
+        void putChar(final char value) throws IOException
+        {
+            require(Character.BYTES).putChar(value);
+        }
+
+        void putInt(final int value) throws IOException
+        {
+            require(Integer.BYTES).putInt(value);
+        }
+
+        void putLong(final long value) throws IOException
+        {
+            require(Long.BYTES).putLong(value);
+        }
+
+        void putDouble(final double value) throws IOException
+        {
+            require(Double.BYTES).putDouble(value);
+        }
+
+        /**
+         * @param value The string to be written, or null.
+         */
+        void putString(final String value) throws IOException
+        {
+            byte[] bytes;
+            int offset;
+            int chunk;
+
+            if (value == null)
+            {
+                putInt(NULL_LENGTH);
+                return;
+            }
+
+            bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+
+            for (offset = 0; offset < bytes.length; offset += chunk)
+            {
+                chunk = Math.min(bytes.length - offset, require(1).remaining());
+                buffer.put(bytes, offset, chunk);
+            }
+        }
+
+        /**
+         * This method writes the rest of the body and then the header, and forces the file to the storage device.
+         * @throws IOException If the file cannot be written.
+         */
+        void finish() throws IOException
+        {
+            long bodyLength;
+
+            drain();
+            bodyLength = channel.position() - HEADER_SIZE;
+
+            buffer.putInt(HEADER_MAGIC, MAGIC);
+            buffer.putInt(HEADER_VERSION, VERSION);
+            buffer.putLong(HEADER_BODY_LENGTH, bodyLength);
+            buffer.putInt(HEADER_CHECKSUM, (int) checksum.getValue());
+            buffer.limit(HEADER_SIZE);
+
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer, buffer.position());
+            }
+            channel.force(false);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+
+        /**
+         * @return The buffer, once it has room for the number of bytes.
+         */
+        private ByteBuffer require(final int bytes) throws IOException
+        {
+            if (buffer.remaining() < bytes)
+            {
+                drain();
+            }
+            return buffer;
+        }
+
+        private void drain() throws IOException
+        {
+            buffer.flip();
+            checksum.update(buffer.array(), 0, buffer.limit());
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * A snapshot being read. The header and the CRC of the body are checked when the snapshot is opened,
+     * so that the body is only read once it is known to be intact.
+     */
+    static final class Input implements Closeable
+    {
+        private final File        file;
+        private final FileChannel channel;
+        private final ByteBuffer  buffer;
+
+        /**
+         * Constructor, which checks the header and the body of the file.
+         * @param file The snapshot to be read.
+         * @throws IOException If the file cannot be read, is not a snapshot of this version, or is corrupted.
+         */
+        Input(final File file) throws IOException
+        {
+            this.file = file;
+
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            buffer  = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            try
+            {
+                check();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                channel.close();
+                throw e;
+            }
+        }
+
+        byte getByte() throws IOException
+        {
+            return require(Byte.BYTES).get();
+        }
+
+        char getChar() throws IOException
+        {
+            return require(Character.BYTES).getChar();
+        }
+
+        int getInt() throws IOException
+        {
+            return require(Integer.BYTES).getInt();
+        }
+
+        long getLong() throws IOException
+        {
+            return require(Long.BYTES).getLong();
+        }
+
+        double getDouble() throws IOException
+        {
+            return require(Double.BYTES).getDouble();
+        }
+
+        /**
+         * @return The string, or null.
+         */
+        String getString() throws IOException
+        {
+            byte[] bytes;
+            int length;
+            int offset;
+            int chunk;
+
+            length = getInt();
+            if (length == NULL_LENGTH)
+            {
+                return null;
+            }
+            if (length < 0)
+            {
+                throw new IOException("Invalid snapshot: " + file);
+            }
+
+            bytes = new byte[length];
+            for (offset = 0; offset < length; offset += chunk)
+            {
+                chunk = Math.min(length - offset, require(1).remaining());
+                buffer.get(bytes, offset, chunk);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * This method checks that the whole body was read.
+         * @throws IOException If some of the body was not read.
+         */
+        void finish() throws IOException
+        {
+            if (buffer.hasRemaining() || channel.position() != channel.size())
+            {
+                throw new IOException("Invalid snapshot: " + file);
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+
+        /**
+         * This method checks the header, reads the body once to check its CRC, and leaves the channel
+         * at the start of the body.
+         */
+        private void check() throws IOException
+        {
+            CRC32C checksum;
+            long bodyLength;
+            int expectedChecksum;
+
+            buffer.limit(HEADER_SIZE);
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer) < 0)
+                {
+                    throw new IOException("Invalid snapshot: " + file);
+                }
+            }
+
+            bodyLength       = buffer.getLong(HEADER_BODY_LENGTH);
+            expectedChecksum = buffer.getInt(HEADER_CHECKSUM);
+
+            if (buffer.getInt(HEADER_MAGIC) != MAGIC || buffer.getInt(HEADER_VERSION) != VERSION ||
+                    bodyLength != channel.size() - HEADER_SIZE)
+            {
+                throw new IOException("Invalid snapshot: " + file);
+            }
+
+            checksum = new CRC32C();
+            buffer.clear();
+            while (channel.read(buffer) >= 0)
+            {
+                buffer.flip();
+                checksum.update(buffer);
+                buffer.clear();
+            }
+
+            if ((int) checksum.getValue() != expectedChecksum)
+            {
+                throw new IOException("Invalid snapshot: " + file);
+            }
+
+            channel.position(HEADER_SIZE);
+            buffer.flip();
+        }
+
+        /**
+         * @return The buffer, once it holds at least the number of bytes.
+         * @throws IOException If the body ends before the bytes.
+         */
+        private ByteBuffer require(final int bytes) throws IOException
+        {
+            if (buffer.remaining() >= bytes)
+            {
+                return buffer;
+            }
+
+            buffer.compact();
+            while (buffer.position() < bytes)
+            {
+                if (channel.read(buffer) < 0)
+                {
+                    throw new IOException("Invalid snapshot: " + file);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This enum models the boolean amenities a property can offer, each of which belongs to one property subtype.
+ */
+public enum Amenity
+{
+    SWIMMING_POOL,
+    STRATA,
+    LOADING_DOCK,
+    HIGHWAY_ACCESS,
+    CUSTOMER_PARKING;
+
+    /**
+     * @param property The property to be checked.
+     * @return True if the property is of the subtype the amenity belongs to and offers it, false otherwise.
+     */
+    public boolean isOfferedBy(final Property property)
+    {
+        switch (this)
+        {
+            case SWIMMING_POOL:
+                return property instanceof Residence && ((Residence) property).hasSwimmingPool();
+            case STRATA:
+                return property instanceof Residence && ((Residence) property).isPartOfStrata();
+            case LOADING_DOCK:
+                return property instanceof Commercial && ((Commercial) property).hasLoadingDock();
+            case HIGHWAY_ACCESS:
+                return property instanceof Commercial && ((Commercial) property).hasHighwayAccess();
+            default:
+                return property instanceof Retail && ((Retail) property).hasCustomerParking();
+        }
+    }
+}
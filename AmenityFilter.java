@@ -0,0 +1,244 @@
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a combination of amenities, such as "swimming pool and not strata",
+ * that the agency answers with bitwise operations over its amenity bitmaps.
+ * Filters are immutable; every combining method returns a new filter.
+ */
+public final class AmenityFilter
+{
+    private final Amenity       amenity;
+    private final Operator      operator;
+    private final AmenityFilter left;
+    private final AmenityFilter right;
+
+    private AmenityFilter(final Amenity amenity, final Operator operator, final AmenityFilter left,
+                          final AmenityFilter right)
+    {
+        this.amenity  = amenity;
+        this.operator = operator;
+        this.left     = left;
+        this.right    = right;
+    }
+
+    /**
+     * @param amenity The amenity to be matched, cannot be null.
+     * @return A filter matching the properties offering the amenity.
+     * @throws NullPointerException If the amenity is null.
+     */
+    public static AmenityFilter has(final Amenity amenity)
+    {
+        if (amenity == null)
+        {
+            throw new NullPointerException("Invalid amenity: null");
+        }
+        return new AmenityFilter(amenity, Operator.HAS, null, null);
+    }
+
+    /**
+     * @param other The filter to be combined with.
+     * @return A filter matching the properties matched by both this filter and the other filter.
+     */
+    public AmenityFilter and(final AmenityFilter other)
+    {
+        return combine(Operator.AND, other);
+    }
+
+    /**
+     * @param other The amenity to be combined with.
+     * @return A filter matching the properties matched by this filter that also offer the amenity.
+     */
+    public AmenityFilter and(final Amenity other)
+    {
+        return combine(Operator.AND, has(other));
+    }
+
+    /**
+     * @param other The filter to be combined with.
+     * @return A filter matching the properties matched by either this filter or the other filter.
+     */
+    public AmenityFilter or(final AmenityFilter other)
+    {
+        return combine(Operator.OR, other);
+    }
+
+    /**
+     * @param other The amenity to be combined with.
+     * @return A filter matching the properties matched by this filter or offering the amenity.
+     */
+    public AmenityFilter or(final Amenity other)
+    {
+        return combine(Operator.OR, has(other));
+    }
+
+    /**
+     * @param other The filter to be excluded.
+     * @return A filter matching the properties matched by this filter but not by the other filter.
+     */
+    public AmenityFilter andNot(final AmenityFilter other)
+    {
+        return combine(Operator.AND_NOT, other);
+    }
+
+    /**
+     * @param other The amenity to be excluded.
+     * @return A filter matching the properties matched by this filter that do not offer the amenity.
+     */
+    public AmenityFilter andNot(final Amenity other)
+    {
+        return combine(Operator.AND_NOT, has(other));
+    }
+
+    /**
+     * @param property The property to be checked.
+     * @return True if the property is matched by this filter, false otherwise.
+     */
+    public boolean matches(final Property property)
+    {
+        switch (operator)
+        {
+            case AND:
+                return left.matches(property) && right.matches(property);
+            case OR:
+                return left.matches(property) || right.matches(property);
+            case AND_NOT:
+                return left.matches(property) && !right.matches(property);
+            default:
+                return amenity.isOfferedBy(property);
+        }
+    }
+
+    /**
+     * @param table The table holding the property.
+     * @param ordinal The ordinal of a live property in the table.
+     * @return True if the property is matched by this filter, false otherwise.
+     */
+    boolean matches(final PropertyTable table, final int ordinal)
+    {
+        switch (operator)
+        {
+            case AND:
+                return left.matches(table, ordinal) && right.matches(table, ordinal);
+            case OR:
+                return left.matches(table, ordinal) || right.matches(table, ordinal);
+            case AND_NOT:
+                return left.matches(table, ordinal) && !right.matches(table, ordinal);
+            default:
+                return table.offers(ordinal, amenity);
+        }
+    }
+
+    /**
+     * This method evaluates the filter with bitwise operations over the amenity bitmaps.
+     * @param bitmaps The bitmap of the ordinals offering each amenity.
+     * @return A bitmap of the matching ordinals; for a single amenity this is the amenity bitmap itself,
+     * which must not be modified.
+     */
+    RoaringBitmap evaluate(final Function<Amenity, RoaringBitmap> bitmaps)
+    {
+        switch (operator)
+        {
+            case AND:
+                return RoaringBitmap.and(left.evaluate(bitmaps), right.evaluate(bitmaps));
+            case OR:
+                return RoaringBitmap.or(left.evaluate(bitmaps), right.evaluate(bitmaps));
+            case AND_NOT:
+                return RoaringBitmap.andNot(left.evaluate(bitmaps), right.evaluate(bitmaps));
+            default:
+                return bitmaps.apply(amenity);
+        }
+    }
+
+    /**
+     * This method bounds the number of matching ordinals without combining any bitmaps.
+     * @param bitmaps The bitmap of the ordinals offering each amenity.
+     * @return An upper bound of the number of ordinals the filter matches.
+     */
+    int estimateCardinality(final Function<Amenity, RoaringBitmap> bitmaps)
+    {
+        switch (operator)
+        {
+            case AND:
+                return Math.min(left.estimateCardinality(bitmaps), right.estimateCardinality(bitmaps));
+            case OR:
+                return left.estimateCardinality(bitmaps) + right.estimateCardinality(bitmaps);
+            case AND_NOT:
+                return left.estimateCardinality(bitmaps);
+            default:
+                return bitmaps.apply(amenity).cardinality();
+        }
+    }
+
+    private AmenityFilter combine(final Operator combiningOperator, final AmenityFilter other)
+    {
+        if (other == null)
+        {
+            throw new NullPointerException("Invalid amenity filter: null");
+        }
+        return new AmenityFilter(null, combiningOperator, this, other);
+    }
+
+    /**
+     * @return The AmenityFilter class is represented by a String, displaying the combination of amenities.
+     */
+    @Override
+    public String toString()
+    {
+        if (operator == Operator.HAS)
+        {
+            return amenity.toString();
+        }
+        return "(" + left + " " + operator.symbol + " " + right + ")";
+    }
+
+    /**
+     * @param object The object to be compared with.
+     * @return True if the object is a filter combining the same amenities in the same way, false otherwise.
+     */
+    @Override
+    public boolean equals(final Object object)
+    {
+        AmenityFilter other;
+
+        if (this == object)
+        {
+            return true;
+        }
+        if (!(object instanceof AmenityFilter))
+        {
+            return false;
+        }
+
+        other = (AmenityFilter) object;
+        return amenity == other.amenity && operator == other.operator && Objects.equals(left, other.left) &&
+                Objects.equals(right, other.right);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(amenity, operator, left, right);
+    }
+
+    /**
+     * This enum models the ways a filter combines the filters it is made of; a filter made of none matches
+     * a single amenity.
+     */
+    private enum Operator
+    {
+        HAS("HAS"),
+        AND("AND"),
+        OR("OR"),
+        AND_NOT("AND NOT");
+
+        private final String symbol;
+
+        Operator(final String symbol)
+        {
+            this.symbol = symbol;
+        }
+    }
+}
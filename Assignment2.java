@@ -21,82 +21,28 @@ public class Assignment2
     }
 
     /**
-     * This method gets the ArrayList from AddressReader and PropertyReader,
-     * and uses them to create subtype Objects and adds them to the Agency.HashMap.
+     * This method loads the address file and the property file with a BulkLoader, which adds the subtype
+     * property of every property line, with the address of the same line, to the Agency.
      * @throws FileNotFoundException if the file name does not exist.
      */
     public void init() throws FileNotFoundException
     {
-        ArrayList<Address> addressesDataReadFromFile;
-        ArrayList<String> propertiesDataReadFromFile;
-
-        String[] onePropertyRawData;
-        double priceInUsd;
-        Address address;
-        String propertyType;
-        String propertyId;
-        int numberOfBedrooms;
-        int squareFootage;
-        int addressIndex;
-        boolean hasSwimmingPool;
-        boolean isPartOfStrata;
-        boolean hasCustomerParking;
-        boolean hasLoadingDock;
-        boolean hasHighwayAccess;
-        Residence newResidence;
-        Commercial newCommercial;
-        Retail newRetail;
-
         File addressDataFile = new File(ADDRESS_READER_FILE);
         File propertyDataFile = new File(PROPERTY_READER_FILE);
 
-        addressesDataReadFromFile = AddressReader.readAddressData(addressDataFile);
-        propertiesDataReadFromFile = PropertyReader.readPropertyData(propertyDataFile);
-
-        addressIndex = 0;
-        for(String onePropertyData: propertiesDataReadFromFile)
-        {
-            onePropertyRawData = onePropertyData.split("\\|");
+        new BulkLoader().load(agency, addressDataFile, propertyDataFile);
+    }
 
-            if(onePropertyRawData[3].equalsIgnoreCase("residence"))
-            {
-                priceInUsd = Double.parseDouble(onePropertyRawData[0]);
-                address = addressesDataReadFromFile.get(addressIndex);
-                numberOfBedrooms = Integer.parseInt(onePropertyRawData[1]);
-                hasSwimmingPool = Boolean.parseBoolean(onePropertyRawData[2]);
-                propertyType = onePropertyRawData[3];
-                propertyId = onePropertyRawData[4];
-                isPartOfStrata = Boolean.parseBoolean(onePropertyRawData[5]);
-
-                newResidence = new Residence(priceInUsd, address, numberOfBedrooms, hasSwimmingPool, propertyType, propertyId, isPartOfStrata);
-                agency.addProperty(newResidence);
-            }
-            else if(onePropertyRawData[1].equalsIgnoreCase("commercial"))
-            {
-                priceInUsd = Double.parseDouble(onePropertyRawData[0]);
-                address = addressesDataReadFromFile.get(addressIndex);
-                propertyType = onePropertyRawData[1];
-                propertyId = onePropertyRawData[2];
-                hasLoadingDock = Boolean.parseBoolean(onePropertyRawData[3]);
-                hasHighwayAccess = Boolean.parseBoolean(onePropertyRawData[4]);
-
-                newCommercial = new Commercial(priceInUsd, address, propertyType, propertyId, hasLoadingDock, hasHighwayAccess);
-                agency.addProperty(newCommercial);
-            }
-            else
-            {
-                priceInUsd = Double.parseDouble(onePropertyRawData[0]);
-                address = addressesDataReadFromFile.get(addressIndex);
-                propertyType = onePropertyRawData[1];
-                propertyId = onePropertyRawData[2];
-                squareFootage = Integer.parseInt(onePropertyRawData[3]);
-                hasCustomerParking = Boolean.parseBoolean(onePropertyRawData[4]);
-
-                newRetail = new Retail(priceInUsd, address, propertyType, propertyId, squareFootage, hasCustomerParking);
-                agency.addProperty(newRetail);
-            }
-            addressIndex++;
-        }
+    /**
+     * This method applies a delta file, holding the changes made to the catalog since it was loaded by init,
+     * with a DeltaLoader, instead of loading the whole catalog again.
+     * @param deltaFile The delta file, in the format described by DeltaLoader.
+     * @return The number of changes applied.
+     * @throws FileNotFoundException if the file name does not exist.
+     */
+    public int refresh(final File deltaFile) throws FileNotFoundException
+    {
+        return new DeltaLoader().load(agency, deltaFile);
     }
 
     /**
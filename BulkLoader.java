@@ -0,0 +1,271 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a parallel loader of an address file and a property file into an agency.
+ * Both files are split into chunks that start and end on line boundaries, and the chunks are parsed
+ * on a ForkJoinPool:
+ * <ol>
+ *     <li>the address chunks are parsed while the lines of the property chunks are counted;</li>
+ *     <li>the counts give the line number each property chunk starts at, so that every property chunk
+ *     can be parsed on its own with the address of the same line;</li>
+ *     <li>the parsed chunks are added to the agency in file order, each as one batch of Agency.addProperties
+ *     as soon as it is ready, while the later chunks are still being parsed.</li>
+ * </ol>
+ * The result is the same as reading both files line by line, including which of two properties with the
+ * same ID is kept. Every address chunk interns its strings in a dictionary of its own, so that a street name
+ * or city is stored at most once per chunk.
+ */
+public final class BulkLoader
+{
+    private final ForkJoinPool pool;
+
+    public static final int MIN_CHUNK_SIZE = 1 << 20;
+    public static final int CHUNKS_PER_THREAD = 4;
+
+    private static final int BOUNDARY_SCAN_SIZE = 1 << 12;
+
+    /**
+     * Constructor, which parses on the common ForkJoinPool.
+     */
+    public BulkLoader()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor.
+     * @param pool The pool the chunks are parsed on, cannot be null.
+     */
+    public BulkLoader(final ForkJoinPool pool)
+    {
+        if (pool == null)
+        {
+            throw new NullPointerException("Invalid pool: null");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * This method adds the property of every line of the property file, with the address of the same line
+     * of the address file, to the agency.
+     * @param agency The agency the properties are added to.
+     * @param addressFile The address file, in the format of address_data.txt.
+     * @param propertyFile The property file, in the format of property_data.txt.
+     * @throws FileNotFoundException If one of the files does not exist.
+     * @throws UncheckedIOException If one of the files cannot be read.
+     * @throws IndexOutOfBoundsException If the address file has fewer lines than the property file.
+     */
+    public void load(final Agency agency, final File addressFile, final File propertyFile)
+            throws FileNotFoundException
+    {
+        try (FileChannel addressChannel = new FileInputStream(addressFile).getChannel();
+             FileChannel propertyChannel = new FileInputStream(propertyFile).getChannel())
+        {
+            load(agency, addressChannel, propertyChannel);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void load(final Agency agency, final FileChannel addressChannel, final FileChannel propertyChannel)
+            throws IOException
+    {
+        long[] addressBoundaries;
+        long[] propertyBoundaries;
+        List<ForkJoinTask<ArrayList<Address>>> addressTasks;
+        List<ForkJoinTask<Integer>> countTasks;
+        List<ForkJoinTask<Property[]>> propertyTasks;
+        List<ArrayList<Address>> addressChunks;
+        ArrayList<Address> addresses;
+        int addressCount;
+        int firstLine;
+        int chunk;
+
+        addressBoundaries  = boundaries(addressChannel);
+        propertyBoundaries = boundaries(propertyChannel);
+        addressTasks       = new ArrayList<>();
+        countTasks         = new ArrayList<>();
+        propertyTasks      = new ArrayList<>();
+
+        for (chunk = 0; chunk + 1 < addressBoundaries.length; chunk++)
+        {
+            addressTasks.add(pool.submit(readAddresses(addressChannel,
+                    addressBoundaries[chunk], addressBoundaries[chunk + 1])));
+        }
+        for (chunk = 0; chunk + 1 < propertyBoundaries.length; chunk++)
+        {
+            countTasks.add(pool.submit(countLines(propertyChannel,
+                    propertyBoundaries[chunk], propertyBoundaries[chunk + 1])));
+        }
+
+        addressChunks = new ArrayList<>();
+        addressCount  = 0;
+        for (ForkJoinTask<ArrayList<Address>> addressTask : addressTasks)
+        {
+            addressChunks.add(addressTask.join());
+            addressCount += addressChunks.get(addressChunks.size() - 1).size();
+        }
+
+        addresses = new ArrayList<>(addressCount);
+        for (ArrayList<Address> addressChunk : addressChunks)
+        {
+            addresses.addAll(addressChunk);
+        }
+
+        firstLine = 0;
+        for (chunk = 0; chunk < countTasks.size(); chunk++)
+        {
+            propertyTasks.add(pool.submit(readProperties(propertyChannel,
+                    propertyBoundaries[chunk], propertyBoundaries[chunk + 1], firstLine, addresses)));
+            firstLine += countTasks.get(chunk).join();
+        }
+
+        agency.reserve(firstLine);
+        for (ForkJoinTask<Property[]> propertyTask : propertyTasks)
+        {
+            agency.addProperties(Arrays.asList(propertyTask.join()));
+        }
+    }
+
+    /**
+     * This method splits the channel into chunks of at least MIN_CHUNK_SIZE bytes, about CHUNKS_PER_THREAD
+     * for every thread of the pool, moving every boundary past the end of the line it falls in.
+     * @param channel The channel to be split.
+     * @return The positions the chunks start at, followed by the size of the channel.
+     */
+    private long[] boundaries(final FileChannel channel) throws IOException
+    {
+        long size;
+        int chunks;
+        long[] boundaries;
+        int chunk;
+
+        size       = channel.size();
+        chunks     = (int) Math.max(1, Math.min((long) pool.getParallelism() * CHUNKS_PER_THREAD,
+                size / MIN_CHUNK_SIZE));
+        boundaries = new long[chunks + 1];
+
+        for (chunk = 1; chunk < chunks; chunk++)
+        {
+            boundaries[chunk] = Math.max(boundaries[chunk - 1], lineStartAfter(channel, size * chunk / chunks));
+        }
+        boundaries[chunks] = size;
+        return boundaries;
+    }
+
+    /**
+     * @param channel The channel to be read.
+     * @param position A position in the channel.
+     * @return The position of the first line starting at or after the position.
+     */
+    private static long lineStartAfter(final FileChannel channel, final long position) throws IOException
+    {
+        ByteBuffer buffer;
+        long scanned;
+        int read;
+        int i;
+
+        buffer  = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+        scanned = position - 1;
+
+        while (true)
+        {
+            buffer.clear();
+            read = channel.read(buffer, scanned);
+            if (read <= 0)
+            {
+                return channel.size();
+            }
+
+            for (i = 0; i < read; i++)
+            {
+                if (buffer.get(i) == '\n')
+                {
+                    return scanned + i + 1;
+                }
+            }
+            scanned += read;
+        }
+    }
+
+    private static ForkJoinTask<ArrayList<Address>> readAddresses(final FileChannel channel, final long start,
+                                                                   final long end)
+    {
+        return ForkJoinTask.adapt(() ->
+        {
+            ArrayList<Address> addresses;
+            StringDictionary dictionary;
+            PipeTokenizer records;
+
+            addresses  = new ArrayList<>();
+            dictionary = new StringDictionary();
+            records    = new PipeTokenizer(channel, start, end);
+
+            while (records.next())
+            {
+                addresses.add(AddressReader.readAddress(records, dictionary));
+            }
+            return addresses;
+        });
+    }
+
+    private static ForkJoinTask<Integer> countLines(final FileChannel channel, final long start, final long end)
+    {
+        return ForkJoinTask.adapt(() ->
+        {
+            PipeTokenizer records;
+            int lines;
+
+            records = new PipeTokenizer(channel, start, end);
+            lines   = 0;
+
+            while (records.next())
+            {
+                lines++;
+            }
+            return lines;
+        });
+    }
+
+    private static ForkJoinTask<Property[]> readProperties(final FileChannel channel, final long start,
+                                                            final long end, final int firstLine,
+                                                            final List<Address> addresses)
+    {
+        return ForkJoinTask.adapt(() ->
+        {
+            ArrayList<Property> properties;
+            PipeTokenizer records;
+            int line;
+
+            properties = new ArrayList<>();
+            records    = new PipeTokenizer(channel, start, end);
+            line       = firstLine;
+
+            while (records.next())
+            {
+                properties.add(PropertyReader.readProperty(records, addresses.get(line)));
+                line++;
+            }
+            return properties.toArray(new Property[0]);
+        });
+    }
+}
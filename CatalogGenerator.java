@@ -0,0 +1,348 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a generator of synthetic catalogs: a matched pair of an address file and a property file,
+ * in the format of address_data.txt and property_data.txt, of any number of lines.
+ * <ul>
+ *     <li>The same seed always generates the same catalog.</li>
+ *     <li>Streets and cities are drawn from Zipf distributions, so that a few of them hold most properties,
+ *     and the postal codes of a city share their first three characters.</li>
+ *     <li>Prices and square footages are drawn from log-normal distributions.</li>
+ *     <li>Every line passes the validation of Address, Residence, Commercial and Retail,
+ *     and every property ID is unique.</li>
+ *     <li>The lines are written as they are generated, so memory use does not depend on the number of lines.</li>
+ * </ul>
+ * <pre>
+ *     java CatalogGenerator 100000000 /data/catalog 42
+ * </pre>
+ */
+public final class CatalogGenerator
+{
+    private final Random       random;
+    private final double[]     streetDistribution;
+    private final double[]     cityDistribution;
+    private final String[]     postalPrefixes;
+    private final StringBuilder line;
+
+    public static final int DEFAULT_STREET_COUNT = 20000;
+    public static final int DEFAULT_CITY_COUNT = 500;
+    public static final double STREET_EXPONENT = 1.07;
+    public static final double CITY_EXPONENT = 1.0;
+    public static final long MAX_LINES = 2176782336L;
+
+    private static final String[] SYLLABLES = {"al", "ber", "cal", "dor", "el", "fin", "gar", "hol", "in", "jar",
+        "kel", "lor", "mar", "nor", "os", "pem", "quin", "ros", "sel", "tor", "ul", "ver", "wil", "yor"};
+    private static final String[] STREET_SUFFIXES = {"street", "avenue", "road", "drive", "way", "lane", "place",
+        "court"};
+    private static final String[] CITY_SUFFIXES = {"", " heights", " valley", " harbour", " springs", " falls"};
+    private static final int MAX_SYLLABLES = 3;
+    private static final int NAMES_PER_SUFFIX = SYLLABLES.length * SYLLABLES.length * SYLLABLES.length;
+
+    private static final long ID_SPACE = MAX_LINES;
+    private static final long ID_MULTIPLIER = 1234567891L;
+    private static final long ID_OFFSET = 777767777L;
+
+    private static final double MEDIAN_PRICE_IN_USD = 650000;
+    private static final double PRICE_SIGMA = 0.6;
+    private static final int PRICE_STEP_IN_USD = 1000;
+    private static final double MEDIAN_SQUARE_FOOTAGE = 1800;
+    private static final double SQUARE_FOOTAGE_SIGMA = 0.7;
+    private static final int MAX_SQUARE_FOOTAGE = 10000;
+    private static final int MAX_BEDROOMS = 20;
+    private static final int MAX_STREET_NUMBER = 20000;
+    private static final int MAX_UNIT_NUMBER = 3000;
+
+    private static final double RESIDENCE_SHARE = 0.6;
+    private static final double COMMERCIAL_SHARE = 0.15;
+    private static final double UNIT_SHARE = 0.4;
+    private static final double POOL_SHARE = 0.2;
+    private static final double STRATA_SHARE = 0.45;
+    private static final double LOADING_DOCK_SHARE = 0.3;
+    private static final double HIGHWAY_ACCESS_SHARE = 0.4;
+    private static final double CUSTOMER_PARKING_SHARE = 0.6;
+
+    /**
+     * Constructor, with DEFAULT_STREET_COUNT streets and DEFAULT_CITY_COUNT cities.
+     * @param seed The seed of the catalog.
+     */
+    public CatalogGenerator(final long seed)
+    {
+        this(seed, DEFAULT_STREET_COUNT, DEFAULT_CITY_COUNT);
+    }
+
+    /**
+     * Constructor.
+     * @param seed The seed of the catalog.
+     * @param streetCount The number of distinct street names, at least one.
+     * @param cityCount The number of distinct cities, at least one.
+     * @throws IllegalArgumentException If there are too few or too many streets or cities.
+     */
+    public CatalogGenerator(final long seed, final int streetCount, final int cityCount)
+    {
+        int city;
+
+        if (streetCount < 1 || streetCount > NAMES_PER_SUFFIX * STREET_SUFFIXES.length)
+        {
+            throw new IllegalArgumentException("Invalid street count: " + streetCount);
+        }
+        if (cityCount < 1 || cityCount > NAMES_PER_SUFFIX * CITY_SUFFIXES.length)
+        {
+            throw new IllegalArgumentException("Invalid city count: " + cityCount);
+        }
+
+        random             = new Random(seed);
+        streetDistribution = zipfDistribution(streetCount, STREET_EXPONENT);
+        cityDistribution   = zipfDistribution(cityCount, CITY_EXPONENT);
+        postalPrefixes     = new String[cityCount];
+        line               = new StringBuilder();
+
+        for (city = 0; city < cityCount; city++)
+        {
+            postalPrefixes[city] = "" + (char) ('a' + random.nextInt(26)) + random.nextInt(10) +
+                    (char) ('a' + random.nextInt(26));
+        }
+    }
+
+    /**
+     * This method generates a catalog in a directory.
+     * @param args The number of lines, then optionally the directory (the current one by default)
+     *             and the seed (0 by default).
+     * @throws IOException If the files cannot be written.
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        long count;
+        File directory;
+        long seed;
+
+        if (args.length == 0)
+        {
+            System.out.println("Usage: java CatalogGenerator <lines> [directory] [seed]");
+            return;
+        }
+
+        count     = Long.parseLong(args[0]);
+        directory = new File(args.length > 1 ? args[1] : ".");
+        seed      = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+        new CatalogGenerator(seed).write(count, new File(directory, Assignment2.ADDRESS_READER_FILE),
+                new File(directory, Assignment2.PROPERTY_READER_FILE));
+    }
+
+    /**
+     * This method writes a catalog to a pair of files, replacing them if they exist.
+     * @param count The number of lines of each file.
+     * @param addressFile The address file to be written.
+     * @param propertyFile The property file to be written.
+     * @throws IOException If the files cannot be written.
+     */
+    public void write(final long count, final File addressFile, final File propertyFile) throws IOException
+    {
+        try (BufferedWriter addresses = Files.newBufferedWriter(addressFile.toPath(), StandardCharsets.UTF_8);
+             BufferedWriter properties = Files.newBufferedWriter(propertyFile.toPath(), StandardCharsets.UTF_8))
+        {
+            write(count, addresses, properties);
+        }
+    }
+
+    /**
+     * This method writes a catalog line by line. Line n of the property file holds the property with
+     * the ID propertyId(n).
+     * @param count The number of lines of each file, at most MAX_LINES.
+     * @param addresses The writer of the address lines.
+     * @param properties The writer of the property lines.
+     * @throws IOException If the lines cannot be written.
+     * @throws IllegalArgumentException If the number of lines is invalid.
+     */
+    public void write(final long count, final Writer addresses, final Writer properties) throws IOException
+    {
+        long lineNumber;
+
+        if (count < 0 || count > MAX_LINES)
+        {
+            throw new IllegalArgumentException("Invalid line count: " + count);
+        }
+
+        for (lineNumber = 0; lineNumber < count; lineNumber++)
+        {
+            addresses.append(nextAddressLine()).append('\n');
+            properties.append(nextPropertyLine(propertyId(lineNumber))).append('\n');
+        }
+    }
+
+    /**
+     * @param lineNumber The number of a line, from zero.
+     * @return The property ID on that line of every generated property file. IDs are a permutation
+     * of the line numbers in base 36, so that they are unique, at most six characters long and look random.
+     */
+    public static String propertyId(final long lineNumber)
+    {
+        return Long.toString(Math.floorMod(lineNumber * ID_MULTIPLIER + ID_OFFSET, ID_SPACE), Character.MAX_RADIX);
+    }
+
+    /**
+     * @param rank The rank of a street, from zero for the most frequent one.
+     * @return The name of the street, which has two words.
+     */
+    public static String streetName(final int rank)
+    {
+        return name(rank % NAMES_PER_SUFFIX) + " " + STREET_SUFFIXES[rank / NAMES_PER_SUFFIX];
+    }
+
+    /**
+     * @param rank The rank of a city, from zero for the most frequent one.
+     * @return The name of the city, which has one or two words.
+     */
+    public static String cityName(final int rank)
+    {
+        return name(rank % NAMES_PER_SUFFIX) + CITY_SUFFIXES[rank / NAMES_PER_SUFFIX];
+    }
+
+    private CharSequence nextAddressLine()
+    {
+        int city;
+
+        city = sample(cityDistribution);
+        line.setLength(0);
+
+        if (random.nextDouble() < UNIT_SHARE)
+        {
+            line.append(1 + random.nextInt(MAX_UNIT_NUMBER));
+        }
+        else
+        {
+            line.append(' ');
+        }
+
+        line.append('|').append(1 + random.nextInt(MAX_STREET_NUMBER))
+                .append('|').append(streetName(sample(streetDistribution)))
+                .append('|').append(postalCode(city))
+                .append('|').append(cityName(city));
+        return line;
+    }
+
+    private CharSequence nextPropertyLine(final String propertyId)
+    {
+        double kind;
+        long priceInUsd;
+
+        kind       = random.nextDouble();
+        priceInUsd = Math.max(PRICE_STEP_IN_USD, Math.round(logNormal(MEDIAN_PRICE_IN_USD, PRICE_SIGMA) /
+                PRICE_STEP_IN_USD) * PRICE_STEP_IN_USD);
+        line.setLength(0);
+        line.append(priceInUsd).append(".0|");
+
+        if (kind < RESIDENCE_SHARE)
+        {
+            line.append(bedrooms())
+                    .append('|').append(random.nextDouble() < POOL_SHARE)
+                    .append("|residence|").append(propertyId)
+                    .append('|').append(random.nextDouble() < STRATA_SHARE);
+        }
+        else if (kind < RESIDENCE_SHARE + COMMERCIAL_SHARE)
+        {
+            line.append("commercial|").append(propertyId)
+                    .append('|').append(random.nextDouble() < LOADING_DOCK_SHARE)
+                    .append('|').append(random.nextDouble() < HIGHWAY_ACCESS_SHARE);
+        }
+        else
+        {
+            line.append("retail|").append(propertyId)
+                    .append('|').append(Math.min(MAX_SQUARE_FOOTAGE,
+                            Math.round(logNormal(MEDIAN_SQUARE_FOOTAGE, SQUARE_FOOTAGE_SIGMA))))
+                    .append('|').append(random.nextDouble() < CUSTOMER_PARKING_SHARE);
+        }
+        return line;
+    }
+
+    /**
+     * @return A number of bedrooms between one and MAX_BEDROOMS, most often three.
+     */
+    private int bedrooms()
+    {
+        return (int) Math.max(1, Math.min(MAX_BEDROOMS, Math.round(3 + random.nextGaussian() * 1.2)));
+    }
+
+    /**
+     * @param city The rank of the city.
+     * @return A postal code in the Canadian format, whose first three characters depend only on the city.
+     */
+    private String postalCode(final int city)
+    {
+        return postalPrefixes[city] + random.nextInt(10) + (char) ('a' + random.nextInt(26)) + random.nextInt(10);
+    }
+
+    private double logNormal(final double median, final double sigma)
+    {
+        return median * Math.exp(sigma * random.nextGaussian());
+    }
+
+    /**
+     * @param distribution A cumulative distribution, as returned by zipfDistribution.
+     * @return A rank drawn from the distribution.
+     */
+    private int sample(final double[] distribution)
+    {
+        int rank;
+        rank = Arrays.binarySearch(distribution, random.nextDouble());
+
+        return Math.min(distribution.length - 1, rank < 0 ? -rank - 1 : rank);
+    }
+
+    /**
+     * @param count The number of ranks.
+     * @param exponent The exponent of the distribution; the probability of rank r is proportional to
+     *                 1 / (r + 1) ^ exponent.
+     * @return The cumulative probabilities of the ranks.
+     */
+    private static double[] zipfDistribution(final int count, final double exponent)
+    {
+        double[] distribution;
+        double total;
+        int rank;
+
+        distribution = new double[count];
+        total        = 0;
+
+        for (rank = 0; rank < count; rank++)
+        {
+            total += 1 / Math.pow(rank + 1, exponent);
+            distribution[rank] = total;
+        }
+        for (rank = 0; rank < count; rank++)
+        {
+            distribution[rank] /= total;
+        }
+        return distribution;
+    }
+
+    /**
+     * @param index An index below NAMES_PER_SUFFIX.
+     * @return A distinct lower case word of MAX_SYLLABLES syllables.
+     */
+    private static String name(final int index)
+    {
+        StringBuilder name;
+        int remaining;
+        int syllables;
+
+        name      = new StringBuilder();
+        remaining = index;
+
+        for (syllables = 0; syllables < MAX_SYLLABLES; syllables++)
+        {
+            name.append(SYLLABLES[remaining % SYLLABLES.length]);
+            remaining /= SYLLABLES.length;
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,207 @@
+import java.util.Arrays;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a struct-of-arrays property table: each field of every property lives in its own
+ * primitive array indexed by ordinal, and the amenities are packed into one bitset per amenity.
+ * The table keeps no Property objects; it creates a view for each property a query returns,
+ * and a price change on a view is written back to the table through the agency.
+ * Free ordinals hold a price of zero, so that full-catalog sums are a single branch-free loop.
+ */
+class ColumnarPropertyTable extends PropertyTable
+{
+    private double[]  prices;
+    private int[]     bedrooms;
+    private int[]     squareFootages;
+    private long[][]  amenityBits;
+    private byte[]    kinds;
+    private byte[]    typeCodes;
+    private String[]  propertyIds;
+    private Address[] addresses;
+
+    private final PriceChangeListener viewListener;
+
+    /**
+     * Constructor.
+     * @param viewListener The listener to be notified when the price of a view changes.
+     */
+    ColumnarPropertyTable(final PriceChangeListener viewListener)
+    {
+        this.viewListener = viewListener;
+
+        prices         = new double[INITIAL_CAPACITY];
+        bedrooms       = new int[INITIAL_CAPACITY];
+        squareFootages = new int[INITIAL_CAPACITY];
+        amenityBits    = new long[Amenity.values().length][wordsFor(INITIAL_CAPACITY)];
+        kinds          = new byte[INITIAL_CAPACITY];
+        typeCodes      = new byte[INITIAL_CAPACITY];
+        propertyIds    = new String[INITIAL_CAPACITY];
+        addresses      = new Address[INITIAL_CAPACITY];
+    }
+
+    @Override
+    void ensureCapacity(final int capacity)
+    {
+        int newCapacity;
+        int amenity;
+
+        if (capacity > prices.length)
+        {
+            newCapacity    = Math.max(capacity, prices.length * 2);
+            prices         = Arrays.copyOf(prices, newCapacity);
+            bedrooms       = Arrays.copyOf(bedrooms, newCapacity);
+            squareFootages = Arrays.copyOf(squareFootages, newCapacity);
+            kinds          = Arrays.copyOf(kinds, newCapacity);
+            typeCodes      = Arrays.copyOf(typeCodes, newCapacity);
+            propertyIds    = Arrays.copyOf(propertyIds, newCapacity);
+            addresses      = Arrays.copyOf(addresses, newCapacity);
+
+            for (amenity = 0; amenity < amenityBits.length; amenity++)
+            {
+                amenityBits[amenity] = Arrays.copyOf(amenityBits[amenity], wordsFor(newCapacity));
+            }
+        }
+    }
+
+    @Override
+    void store(final int ordinal, final Property property)
+    {
+        prices[ordinal]      = property.getPriceUsd();
+        kinds[ordinal]       = kindOf(property);
+        typeCodes[ordinal]   = (byte) Property.typeCode(property.getType());
+        propertyIds[ordinal] = property.getPropertyId();
+        addresses[ordinal]   = property.getAddress();
+
+        if (property instanceof Residence)
+        {
+            bedrooms[ordinal] = ((Residence) property).getNumberOfBedrooms();
+        }
+        else if (property instanceof Retail)
+        {
+            squareFootages[ordinal] = ((Retail) property).getSquareFootage();
+        }
+
+        for (Amenity amenity : Amenity.values())
+        {
+            if (amenity.isOfferedBy(property))
+            {
+                amenityBits[amenity.ordinal()][ordinal >>> 6] |= 1L << ordinal;
+            }
+        }
+    }
+
+    @Override
+    Property clear(final int ordinal)
+    {
+        int amenity;
+
+        prices[ordinal]         = 0;
+        bedrooms[ordinal]       = 0;
+        squareFootages[ordinal] = 0;
+        kinds[ordinal]          = FREE;
+        typeCodes[ordinal]      = 0;
+        propertyIds[ordinal]    = null;
+        addresses[ordinal]      = null;
+
+        for (amenity = 0; amenity < amenityBits.length; amenity++)
+        {
+            amenityBits[amenity][ordinal >>> 6] &= ~(1L << ordinal);
+        }
+        return null;
+    }
+
+    @Override
+    boolean storesPropertyObjects()
+    {
+        return false;
+    }
+
+    @Override
+    Property get(final int ordinal)
+    {
+        Property view;
+
+        switch (kinds[ordinal])
+        {
+            case RESIDENCE:
+                view = Residence.restore(prices[ordinal], addresses[ordinal], bedrooms[ordinal],
+                        offers(ordinal, Amenity.SWIMMING_POOL), getType(ordinal), propertyIds[ordinal],
+                        offers(ordinal, Amenity.STRATA));
+                break;
+            case COMMERCIAL:
+                view = Commercial.restore(prices[ordinal], addresses[ordinal], getType(ordinal), propertyIds[ordinal],
+                        offers(ordinal, Amenity.LOADING_DOCK), offers(ordinal, Amenity.HIGHWAY_ACCESS));
+                break;
+            case RETAIL:
+                view = Retail.restore(prices[ordinal], addresses[ordinal], getType(ordinal), propertyIds[ordinal],
+                        squareFootages[ordinal], offers(ordinal, Amenity.CUSTOMER_PARKING));
+                break;
+            default:
+                return null;
+        }
+
+        bindView(view, ordinal);
+        view.addPriceChangeListener(viewListener);
+        return view;
+    }
+
+    @Override
+    byte getKind(final int ordinal)
+    {
+        return kinds[ordinal];
+    }
+
+    @Override
+    double getPriceUsd(final int ordinal)
+    {
+        return prices[ordinal];
+    }
+
+    @Override
+    void setPriceUsd(final int ordinal, final double priceInUsd)
+    {
+        prices[ordinal] = priceInUsd;
+    }
+
+    @Override
+    String getPropertyId(final int ordinal)
+    {
+        return propertyIds[ordinal];
+    }
+
+    @Override
+    String getType(final int ordinal)
+    {
+        return Property.typeName(typeCodes[ordinal]);
+    }
+
+    @Override
+    Address getAddress(final int ordinal)
+    {
+        return addresses[ordinal];
+    }
+
+    @Override
+    int getNumberOfBedrooms(final int ordinal)
+    {
+        return bedrooms[ordinal];
+    }
+
+    @Override
+    int getSquareFootage(final int ordinal)
+    {
+        return squareFootages[ordinal];
+    }
+
+    @Override
+    boolean offers(final int ordinal, final Amenity amenity)
+    {
+        return (amenityBits[amenity.ordinal()][ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    private static int wordsFor(final int capacity)
+    {
+        return (capacity + 63) >>> 6;
+    }
+}
@@ -24,11 +24,37 @@ public class Commercial extends Property
                       final boolean hasLoadingDock,
                       final boolean hasHighwayAccess)
     {
-        super(priceInUsd, address, propertyType, propertyId);
+        this(priceInUsd, address, propertyType, propertyId, hasLoadingDock, hasHighwayAccess, true);
+    }
+
+    private Commercial(final double priceInUsd,
+                       final Address address,
+                       final String propertyType,
+                       final String propertyId,
+                       final boolean hasLoadingDock,
+                       final boolean hasHighwayAccess,
+                       final boolean validate)
+    {
+        super(priceInUsd, address, propertyType, propertyId, validate);
         this.hasLoadingDock   = hasLoadingDock;
         this.hasHighwayAccess = hasHighwayAccess;
     }
 
+    /**
+     * This method recreates a commercial property from information that was validated when it was first
+     * constructed, without validating it again.
+     * @return The recreated commercial property.
+     */
+    static Commercial restore(final double priceInUsd,
+                              final Address address,
+                              final String propertyType,
+                              final String propertyId,
+                              final boolean hasLoadingDock,
+                              final boolean hasHighwayAccess)
+    {
+        return new Commercial(priceInUsd, address, propertyType, propertyId, hasLoadingDock, hasHighwayAccess, false);
+    }
+
     /**
      * @return True if the property has a loading dock, false otherwise.
      */
@@ -0,0 +1,399 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models an agency that can be searched by many threads while other threads change it.
+ * It keeps two COLUMNAR agencies holding the same properties, and follows the Left-Right technique:
+ * searches run on one of them without any lock, while a change is made to the other one; the searches
+ * are then switched over to the changed agency, and once the last search still running on the first agency
+ * finishes, the same change is made to it.
+ * <ul>
+ *     <li>A search never waits for a change, and never blocks another search.</li>
+ *     <li>A search sees the agency as it was after some change and before the next one, however long it runs.</li>
+ *     <li>Changes are made one at a time; a change waits for the searches that started before it.</li>
+ *     <li>A change that fails halfway on one agency leaves the two agencies holding the same properties:
+ *     the agency is replaced by a copy of the other one.</li>
+ * </ul>
+ * A search must not change the agency it is given, and must not change this agency either:
+ * a change made from inside a search would wait for that very search to finish.
+ */
+public final class ConcurrentAgency
+{
+    private final Agency[]            agencies;
+    private final LongAdder[]         arrivals;
+    private final LongAdder[]         departures;
+    private final Object              writeLock;
+    private final PriceChangeListener viewListener;
+
+    private Throwable copyFailure;
+
+    private volatile int readIndex;
+    private volatile int versionIndex;
+
+    /**
+     * Constructor, valid all agency information before initialize the object.
+     * @param name The name of the agency, has length limit.
+     * @throws IllegalArgumentException If the length of the name exceed the limit.
+     */
+    public ConcurrentAgency(final String name)
+    {
+        this(name, null);
+    }
+
+    /**
+     * Constructor of an agency whose views report their price changes to another listener than the agency
+     * itself, such as a DurableAgency that logs every change before it makes it.
+     * @param name The name of the agency, has length limit.
+     * @param viewListener The listener to be notified when the price of a view changes, or null for the agency.
+     * @throws IllegalArgumentException If the length of the name exceed the limit.
+     */
+    ConcurrentAgency(final String name, final PriceChangeListener viewListener)
+    {
+        this.viewListener = viewListener != null ? viewListener :
+                (property, oldPriceInUsd) -> write(agency -> agency.setViewPriceUsd(property));
+
+        agencies   = new Agency[] {new Agency(name, this.viewListener), new Agency(name, this.viewListener)};
+        arrivals   = new LongAdder[] {new LongAdder(), new LongAdder()};
+        departures = new LongAdder[] {new LongAdder(), new LongAdder()};
+        writeLock  = new Object();
+    }
+
+    /**
+     * This method restores an agency from a snapshot written by writeSnapshot, or by Agency.writeSnapshot.
+     * Each of the two agencies reads the snapshot on its own.
+     * @param name The name of the agency, has length limit.
+     * @param file The snapshot to be read.
+     * @return The agency holding the properties of the snapshot.
+     * @throws IOException If the file cannot be read, or is not a valid snapshot.
+     * @throws IllegalArgumentException If the length of the name exceed the limit.
+     */
+    public static ConcurrentAgency restore(final String name, final File file) throws IOException
+    {
+        ConcurrentAgency restored;
+
+        if (file == null)
+        {
+            throw new NullPointerException("Invalid file: null");
+        }
+
+        restored = new ConcurrentAgency(name);
+        restored.restoreSnapshot(file);
+        return restored;
+    }
+
+    /**
+     * This method reads a snapshot into both agencies, which must be empty, before any search or change.
+     * @param file The snapshot to be read.
+     * @throws IOException If the file cannot be read, or is not a valid snapshot.
+     */
+    void restoreSnapshot(final File file) throws IOException
+    {
+        for (Agency agency : agencies)
+        {
+            agency.restoreSnapshot(file);
+        }
+    }
+
+    /**
+     * This method writes a snapshot of the agency to a file, see Agency.writeSnapshot. Searches keep running
+     * while it is written; changes wait until it is written.
+     * @param file The file to be written.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeSnapshot(final File file) throws IOException
+    {
+        synchronized (writeLock)
+        {
+            agencies[readIndex].writeSnapshot(file);
+        }
+    }
+
+    /**
+     * This method runs a search on a point-in-time view of the agency, without waiting for any change.
+     * The properties the search returns are views: a price change made on one of them, after the search,
+     * is applied to this agency, unless the property was removed from it since.
+     * @param search The search to be run, which must only query the agency it is given.
+     * @return The result of the search.
+     */
+    public <R> R read(final Function<Agency, R> search)
+    {
+        int version;
+        version = versionIndex;
+
+        arrivals[version].increment();
+        try
+        {
+            return search.apply(agencies[readIndex]);
+        }
+        finally
+        {
+            departures[version].increment();
+        }
+    }
+
+    /**
+     * This method adds the non-null property, replacing any property with the same ID.
+     * Changes made to the property object afterwards are not seen by the agency.
+     * @param property The property to be added.
+     */
+    public void addProperty(final Property property)
+    {
+        if (property != null)
+        {
+            write(agency -> agency.addProperty(property));
+        }
+    }
+
+    /**
+     * This method removes the property whose ID matches the parameter.
+     * @param propertyId The property ID to be removed.
+     */
+    public void removeProperty(final String propertyId)
+    {
+        write(agency -> agency.removeProperty(propertyId));
+    }
+
+    /**
+     * This method sets the price of the property whose ID matches the parameter.
+     * @param propertyId The property ID to be matched.
+     * @param priceInUsd The given price to be set, in USD.
+     */
+    public void setPriceUsd(final String propertyId, final double priceInUsd)
+    {
+        write(agency -> agency.setPriceUsd(propertyId, priceInUsd));
+    }
+
+    /**
+     * This method adds the non-null properties as one change, see Agency.addProperties: the batch is made to each
+     * of the two agencies once, and searches see all of it or none of it.
+     * @param properties The properties to be added.
+     */
+    public void addProperties(final Collection<? extends Property> properties)
+    {
+        ArrayList<Property> batch;
+
+        if (properties == null)
+        {
+            throw new NullPointerException("Invalid properties: null");
+        }
+
+        batch = new ArrayList<>(properties);
+        write(agency -> agency.addProperties(batch));
+    }
+
+    /**
+     * This method removes the properties whose IDs match the parameter as one change, see Agency.removeProperties.
+     * @param propertyIds The property IDs to be removed.
+     */
+    public void removeProperties(final Collection<String> propertyIds)
+    {
+        ArrayList<String> batch;
+
+        if (propertyIds == null)
+        {
+            throw new NullPointerException("Invalid property IDs: null");
+        }
+
+        batch = new ArrayList<>(propertyIds);
+        write(agency -> agency.removeProperties(batch));
+    }
+
+    /**
+     * This method sets the prices of the properties whose IDs are keys of the map as one change,
+     * see Agency.setPricesUsd.
+     * @param pricesInUsd The new prices, in USD, by property ID.
+     */
+    public void setPricesUsd(final Map<String, Double> pricesInUsd)
+    {
+        HashMap<String, Double> batch;
+
+        if (pricesInUsd == null)
+        {
+            throw new NullPointerException("Invalid prices: null");
+        }
+
+        batch = new HashMap<>(pricesInUsd);
+        write(agency -> agency.setPricesUsd(batch));
+    }
+
+    /**
+     * This method turns parallel scans on or off for both agencies, see Agency.setScanPool.
+     * @param pool The pool the scans are run on, or null to scan sequentially.
+     */
+    public void setScanPool(final ForkJoinPool pool)
+    {
+        write(agency -> agency.setScanPool(pool));
+    }
+
+    /**
+     * This method sizes the query cache of both agencies, see Agency.setQueryCacheCapacity.
+     * @param capacity The maximum number of cached results; zero turns the cache off.
+     * @throws IllegalArgumentException If the capacity is negative.
+     */
+    public void setQueryCacheCapacity(final int capacity)
+    {
+        if (capacity < 0)
+        {
+            throw new IllegalArgumentException("Invalid query cache capacity: " + capacity);
+        }
+        write(agency -> agency.setQueryCacheCapacity(capacity));
+    }
+
+    /**
+     * @return A snapshot of the statistics of the query cache of the agency the searches currently run on.
+     */
+    public QueryCacheStats getQueryCacheStats()
+    {
+        return read(Agency::getQueryCacheStats);
+    }
+
+    /**
+     * @param propertyId The property ID to be matched.
+     * @return A view of the property whose ID matches the parameter, or null if there is no match.
+     */
+    public Property getProperty(final String propertyId)
+    {
+        return read(agency -> agency.getProperty(propertyId));
+    }
+
+    /**
+     * @param query The predicates to be matched.
+     * @return An ArrayList of views of the properties matching every predicate of the query,
+     * which is empty if there are none.
+     */
+    public ArrayList<Property> find(final PropertyQuery query)
+    {
+        return read(agency -> agency.find(query));
+    }
+
+    /**
+     * Every page is read from a point-in-time view of the agency; the cursor of a page carries on in the view
+     * of the next page, see PageCursor.
+     * @param query The predicates to be matched, and the order, limit and cursor of the page.
+     * @return The page of views of the matching properties.
+     */
+    public PropertyPage findPage(final PropertyQuery query)
+    {
+        return read(agency -> agency.findPage(query));
+    }
+
+    /**
+     * @param query The predicates to be matched.
+     * @return The number of properties matching every predicate of the query.
+     */
+    public int count(final PropertyQuery query)
+    {
+        return read(agency -> agency.count(query));
+    }
+
+    /**
+     * @return The total amount in USD of all properties.
+     */
+    public double getTotalPropertyValues()
+    {
+        return read(Agency::getTotalPropertyValues);
+    }
+
+    /**
+     * @return The price statistics of all properties.
+     */
+    public PriceStats getPriceStats()
+    {
+        return read(Agency::getPriceStats);
+    }
+
+    /**
+     * @param propertyType The type of the properties (case-insensitive).
+     * @return The price statistics of the properties of the type.
+     */
+    public PriceStats getPriceStats(final String propertyType)
+    {
+        return read(agency -> agency.getPriceStats(propertyType));
+    }
+
+    /**
+     * This method makes a change to the agency no search is running on, switches the searches over to it,
+     * waits for the searches still running on the other agency, and makes the same change to that one.
+     * A batch of changes, such as one of a DeltaLoader, can be made as one change, which is published once.
+     * A change that throws on the first agency is undone and never seen by searches; one that throws on the
+     * second agency, after it was published, is kept, see apply. Either way the failure is rethrown.
+     * @param change The change to be made to both agencies, which must make the same change to either of them.
+     * @throws IllegalStateException If a failed change could not be undone before, so that the agencies differ.
+     */
+    void write(final Consumer<Agency> change)
+    {
+        int previousVersion;
+        int nextVersion;
+
+        synchronized (writeLock)
+        {
+            if (copyFailure != null)
+            {
+                throw new IllegalStateException("Agencies differ after a failed change", copyFailure);
+            }
+
+            apply(change, 1 - readIndex);
+            readIndex = 1 - readIndex;
+
+            previousVersion = versionIndex;
+            nextVersion     = 1 - previousVersion;
+
+            awaitDepartures(nextVersion);
+            versionIndex = nextVersion;
+            awaitDepartures(previousVersion);
+
+            apply(change, 1 - readIndex);
+        }
+    }
+
+    /**
+     * This method makes a change to the agency no search is running on. If the change throws, the agency may
+     * hold part of it, so it is replaced by a copy of the other agency, see Agency.copy, and the failure is
+     * rethrown. If the copy cannot be made either, no further change is made to this agency.
+     * @param change The change to be made.
+     * @param index The index of the agency to be changed.
+     */
+    private void apply(final Consumer<Agency> change, final int index)
+    {
+        try
+        {
+            change.accept(agencies[index]);
+        }
+        catch (RuntimeException | Error e)
+        {
+            try
+            {
+                agencies[index] = agencies[1 - index].copy(viewListener);
+            }
+            catch (IOException | RuntimeException | Error copyError)
+            {
+                copyFailure = copyError;
+                e.addSuppressed(copyError);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * This method waits until every search that arrived with the version has departed. The departures are
+     * counted before the arrivals, so that equal counts mean no search of the version was running between them.
+     * @param version The version whose searches are waited for.
+     */
+    private void awaitDepartures(final int version)
+    {
+        while (departures[version].sum() != arrivals[version].sum())
+        {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.function.Consumer;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a loader of a delta feed: a file of the changes made to a catalog since it was last loaded,
+ * which are applied to a live agency instead of loading the whole catalog again. Every line is one change,
+ * keyed by the property ID:
+ * <pre>
+ *     U|unit number|street number|street name|postal code|city|property fields
+ *     D|property ID
+ *     P|property ID|price
+ * </pre>
+ * An upsert (U) carries the fields of a line of address_data.txt followed by those of the matching line of
+ * property_data.txt, and adds the property, replacing any property with the same ID. A delete (D) removes the
+ * property, and a price change (P) sets its price; either is ignored if there is no such property.
+ * <p>
+ * The changes are read a batch at a time and applied in file order, each to the property it names, so that
+ * the indexes of the agency are updated incrementally and a refresh costs time in proportion to the number of
+ * changes, not to the size of the catalog. Every run of changes of the same kind in a batch is applied with
+ * the batch methods of the agency, such as Agency.addProperties, and a ConcurrentAgency publishes every batch
+ * as a single change.
+ */
+public final class DeltaLoader
+{
+    private final int batchSize;
+
+    public static final int DEFAULT_BATCH_SIZE = 1 << 12;
+    public static final int VALID_MIN_BATCH_SIZE = 1;
+
+    public static final int OPERATION_POSITION = 0;
+    public static final int PROPERTY_ID_POSITION = 1;
+    public static final int PRICE_POSITION = 2;
+    public static final int ADDRESS_POSITION = 1;
+    public static final int ADDRESS_FIELD_COUNT = 5;
+
+    public static final String UPSERT = "U";
+    public static final String DELETE = "D";
+    public static final String PRICE_CHANGE = "P";
+
+    /**
+     * Constructor, which reads DEFAULT_BATCH_SIZE changes at a time.
+     */
+    public DeltaLoader()
+    {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param batchSize The number of changes read and applied together, at least VALID_MIN_BATCH_SIZE.
+     * @throws IllegalArgumentException If the batch size is too small.
+     */
+    public DeltaLoader(final int batchSize)
+    {
+        if (batchSize < VALID_MIN_BATCH_SIZE)
+        {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * This method applies every change of the delta file to the agency, in file order.
+     * @param agency The agency the changes are applied to.
+     * @param deltaFile The delta file.
+     * @return The number of changes applied.
+     * @throws FileNotFoundException If the file does not exist.
+     * @throws UncheckedIOException If the file cannot be read.
+     * @throws IllegalArgumentException If a line is not a change.
+     */
+    public int load(final Agency agency, final File deltaFile) throws FileNotFoundException
+    {
+        if (agency == null)
+        {
+            throw new NullPointerException("Invalid agency: null");
+        }
+        return load(deltaFile, batch -> batch.applyTo(agency));
+    }
+
+    /**
+     * This method applies every change of the delta file to the agency, in file order. Searches see either
+     * all the changes of a batch or none of them.
+     * @param agency The agency the changes are applied to.
+     * @param deltaFile The delta file.
+     * @return The number of changes applied.
+     * @throws FileNotFoundException If the file does not exist.
+     * @throws UncheckedIOException If the file cannot be read.
+     * @throws IllegalArgumentException If a line is not a change.
+     */
+    public int load(final ConcurrentAgency agency, final File deltaFile) throws FileNotFoundException
+    {
+        if (agency == null)
+        {
+            throw new NullPointerException("Invalid agency: null");
+        }
+        return load(deltaFile, batch -> agency.write(batch::applyTo));
+    }
+
+    /**
+     * This method reads the delta file a batch at a time, and hands every batch to the consumer once it is read.
+     * A batch is only read after the previous one is applied, so that a line that is not a change stops
+     * the load after the batches before it.
+     */
+    private int load(final File deltaFile, final Consumer<Batch> consumer) throws FileNotFoundException
+    {
+        Batch batch;
+        StringDictionary dictionary;
+        int changes;
+
+        batch      = new Batch(batchSize);
+        dictionary = new StringDictionary();
+        changes    = 0;
+
+        try (PipeTokenizer records = new PipeTokenizer(deltaFile))
+        {
+            while (records.next())
+            {
+                batch.add(records, dictionary);
+                if (batch.size == batchSize)
+                {
+                    consumer.accept(batch);
+                    changes += batch.size;
+                    batch.clear();
+                }
+            }
+        }
+
+        if (batch.size > 0)
+        {
+            consumer.accept(batch);
+            changes += batch.size;
+        }
+        return changes;
+    }
+
+    /**
+     * This class models a batch of parsed changes. An upsert holds its property, and a delete or a price change
+     * holds the property ID and the price.
+     */
+    private static final class Batch
+    {
+        private final char[]     operations;
+        private final String[]   propertyIds;
+        private final Property[] properties;
+        private final double[]   prices;
+        private int              size;
+
+        private Batch(final int capacity)
+        {
+            operations  = new char[capacity];
+            propertyIds = new String[capacity];
+            properties  = new Property[capacity];
+            prices      = new double[capacity];
+        }
+
+        /**
+         * This method parses the change of the current line at the end of the batch.
+         */
+        private void add(final PipeTokenizer record, final StringDictionary dictionary)
+        {
+            Address address;
+
+            if (record.fieldEqualsIgnoreCase(OPERATION_POSITION, UPSERT))
+            {
+                record.dropFields(ADDRESS_POSITION);
+                address = AddressReader.readAddress(record, dictionary);
+                record.dropFields(ADDRESS_FIELD_COUNT);
+
+                operations[size] = 'U';
+                properties[size] = PropertyReader.readProperty(record, address);
+            }
+            else if (record.fieldEqualsIgnoreCase(OPERATION_POSITION, DELETE) && record.fieldCount() == 2)
+            {
+                operations[size]  = 'D';
+                propertyIds[size] = record.getString(PROPERTY_ID_POSITION);
+            }
+            else if (record.fieldEqualsIgnoreCase(OPERATION_POSITION, PRICE_CHANGE) && record.fieldCount() == 3)
+            {
+                operations[size]  = 'P';
+                propertyIds[size] = record.getString(PROPERTY_ID_POSITION);
+                prices[size]      = record.getDouble(PRICE_POSITION);
+            }
+            else
+            {
+                throw new IllegalArgumentException("Invalid change: " + record.getLine());
+            }
+            size++;
+        }
+
+        /**
+         * This method applies the changes of the batch to the agency, in order, a run of changes of the same
+         * kind at a time.
+         */
+        private void applyTo(final Agency agency)
+        {
+            int start;
+            int end;
+
+            start = 0;
+            for (end = 1; end <= size; end++)
+            {
+                if (end == size || operations[end] != operations[start])
+                {
+                    applyRun(agency, start, end);
+                    start = end;
+                }
+            }
+        }
+
+        /**
+         * This method applies a run of changes of the same kind to the agency as one batch. Of several price
+         * changes of the same property, the last one is kept.
+         */
+        private void applyRun(final Agency agency, final int start, final int end)
+        {
+            LinkedHashMap<String, Double> runPrices;
+            int i;
+
+            switch (operations[start])
+            {
+                case 'U':
+                    agency.addProperties(Arrays.asList(properties).subList(start, end));
+                    break;
+                case 'D':
+                    agency.removeProperties(Arrays.asList(propertyIds).subList(start, end));
+                    break;
+                default:
+                    runPrices = new LinkedHashMap<>();
+                    for (i = start; i < end; i++)
+                    {
+                        runPrices.put(propertyIds[i], prices[i]);
+                    }
+                    agency.setPricesUsd(runPrices);
+                    break;
+            }
+        }
+
+        private void clear()
+        {
+            int i;
+
+            for (i = 0; i < size; i++)
+            {
+                propertyIds[i] = null;
+                properties[i]  = null;
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,500 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models an agency whose changes survive a restart. It keeps its properties in a ConcurrentAgency,
+ * and keeps a snapshot and a MutationLog in a directory: every change is made to the agency, appended to the log,
+ * and returns once the log holding it is forced to the storage device. When the agency is opened, the snapshot
+ * is restored and the log is replayed on top of it, and compact folds the log into a new snapshot.
+ * <ul>
+ *     <li>Changes are committed in groups: while one thread writes and forces the log, the changes made
+ *     by other threads gather in the pending buffer of the log, and the next of them to commit writes
+ *     the whole group with a single fsync. However many threads change the agency, at most one fsync
+ *     is in progress, and each fsync makes every change made before it durable.</li>
+ *     <li>A change is seen by searches as soon as it is made, possibly a little before it is durable.</li>
+ *     <li>Searches run on the ConcurrentAgency, and never wait for the log.</li>
+ * </ul>
+ */
+public final class DurableAgency
+{
+    private final File             directory;
+    private final ConcurrentAgency agency;
+    private final MutationLog      log;
+    private final Object           mutationLock;
+    private final Object           logLock;
+
+    private long        appendedCount;
+    private long        durableCount;
+    private boolean     committing;
+    private boolean     closed;
+    private IOException failure;
+
+    public static final String SNAPSHOT_FILE = "agency.snapshot";
+    public static final String LOG_FILE = "agency.log";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private DurableAgency(final String name, final File directory) throws IOException
+    {
+        File snapshot;
+
+        this.directory = directory;
+
+        agency       = new ConcurrentAgency(name, this::viewPriceChanged);
+        mutationLock = new Object();
+        logLock      = new Object();
+        snapshot     = new File(directory, SNAPSHOT_FILE);
+
+        if (snapshot.exists())
+        {
+            agency.restoreSnapshot(snapshot);
+        }
+
+        log = new MutationLog(new File(directory, LOG_FILE));
+        try
+        {
+            log.replay(agency);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log.close();
+            throw e;
+        }
+    }
+
+    /**
+     * This method opens the agency kept in a directory, creating the directory if it does not exist yet:
+     * the snapshot is restored, if there is one, and the log is replayed on top of it.
+     * An entry torn by a crash at the end of the log is dropped; the change it held never returned.
+     * @param name The name of the agency, has length limit.
+     * @param directory The directory the snapshot and the log are kept in.
+     * @return The agency holding every change that was made durable before it was last closed.
+     * @throws IOException If the files cannot be read, or are not a snapshot and a log.
+     * @throws IllegalArgumentException If the length of the name exceed the limit.
+     */
+    public static DurableAgency open(final String name, final File directory) throws IOException
+    {
+        if (directory == null)
+        {
+            throw new NullPointerException("Invalid directory: null");
+        }
+
+        Files.createDirectories(directory.toPath());
+        return new DurableAgency(name, directory);
+    }
+
+    /**
+     * This method adds the non-null property, replacing any property with the same ID, and returns once
+     * the addition is durable. Changes made to the property object afterwards are not seen by the agency.
+     * @param property The property to be added.
+     * @throws IOException If the log cannot be written.
+     */
+    public void addProperty(final Property property) throws IOException
+    {
+        if (property != null)
+        {
+            change(() -> agency.addProperty(property), () -> log.appendAdd(property));
+        }
+    }
+
+    /**
+     * This method removes the property whose ID matches the parameter, and returns once the removal is durable.
+     * @param propertyId The property ID to be removed.
+     * @throws IOException If the log cannot be written.
+     */
+    public void removeProperty(final String propertyId) throws IOException
+    {
+        change(() -> agency.removeProperty(propertyId), () -> log.appendRemove(propertyId));
+    }
+
+    /**
+     * This method sets the price of the property whose ID matches the parameter, and returns once the change
+     * is durable. A price change made on a view returned by a search is made durable the same way.
+     * @param propertyId The property ID to be matched.
+     * @param priceInUsd The given price to be set, in USD.
+     * @throws IOException If the log cannot be written.
+     */
+    public void setPriceUsd(final String propertyId, final double priceInUsd) throws IOException
+    {
+        change(() -> agency.setPriceUsd(propertyId, priceInUsd), () -> log.appendSetPrice(propertyId, priceInUsd));
+    }
+
+    /**
+     * This method adds the non-null properties as one change, see ConcurrentAgency.addProperties, and returns once
+     * the batch is durable. The entries of the batch are appended to the log together, and committed at once;
+     * a crash while they are written may leave only the first of them in the log, like separate changes.
+     * @param properties The properties to be added.
+     * @throws IOException If the log cannot be written.
+     */
+    public void addProperties(final Collection<? extends Property> properties) throws IOException
+    {
+        ArrayList<Property> batch;
+
+        if (properties == null)
+        {
+            throw new NullPointerException("Invalid properties: null");
+        }
+
+        batch = new ArrayList<>(properties);
+        change(() -> agency.addProperties(batch), () ->
+        {
+            for (Property property : batch)
+            {
+                if (property != null)
+                {
+                    log.appendAdd(property);
+                }
+            }
+        });
+    }
+
+    /**
+     * This method removes the properties whose IDs match the parameter as one change,
+     * see ConcurrentAgency.removeProperties, and returns once the batch is durable.
+     * @param propertyIds The property IDs to be removed.
+     * @throws IOException If the log cannot be written.
+     */
+    public void removeProperties(final Collection<String> propertyIds) throws IOException
+    {
+        ArrayList<String> batch;
+
+        if (propertyIds == null)
+        {
+            throw new NullPointerException("Invalid property IDs: null");
+        }
+
+        batch = new ArrayList<>(propertyIds);
+        change(() -> agency.removeProperties(batch), () -> batch.forEach(log::appendRemove));
+    }
+
+    /**
+     * This method sets the prices of the properties whose IDs are keys of the map as one change,
+     * see ConcurrentAgency.setPricesUsd, and returns once the batch is durable.
+     * @param pricesInUsd The new prices, in USD, by property ID.
+     * @throws IOException If the log cannot be written.
+     */
+    public void setPricesUsd(final Map<String, Double> pricesInUsd) throws IOException
+    {
+        LinkedHashMap<String, Double> batch;
+
+        if (pricesInUsd == null)
+        {
+            throw new NullPointerException("Invalid prices: null");
+        }
+
+        batch = new LinkedHashMap<>(pricesInUsd);
+        change(() -> agency.setPricesUsd(batch), () -> batch.forEach(log::appendSetPrice));
+    }
+
+    /**
+     * This method runs a search on a point-in-time view of the agency, see ConcurrentAgency.read.
+     * @param search The search to be run, which must only query the agency it is given.
+     * @return The result of the search.
+     */
+    public <R> R read(final Function<Agency, R> search)
+    {
+        return agency.read(search);
+    }
+
+    /**
+     * @param propertyId The property ID to be matched.
+     * @return A view of the property whose ID matches the parameter, or null if there is no match.
+     */
+    public Property getProperty(final String propertyId)
+    {
+        return agency.getProperty(propertyId);
+    }
+
+    /**
+     * @param query The predicates to be matched.
+     * @return An ArrayList of views of the properties matching every predicate of the query,
+     * which is empty if there are none.
+     */
+    public ArrayList<Property> find(final PropertyQuery query)
+    {
+        return agency.find(query);
+    }
+
+    /**
+     * @param query The predicates to be matched, and the order, limit and cursor of the page.
+     * @return The page of views of the matching properties.
+     */
+    public PropertyPage findPage(final PropertyQuery query)
+    {
+        return agency.findPage(query);
+    }
+
+    /**
+     * @param query The predicates to be matched.
+     * @return The number of properties matching every predicate of the query.
+     */
+    public int count(final PropertyQuery query)
+    {
+        return agency.count(query);
+    }
+
+    /**
+     * @return The size of the log, in bytes, which grows with every change until the log is compacted.
+     * @throws IOException If the size cannot be read.
+     */
+    public long getLogSize() throws IOException
+    {
+        synchronized (logLock)
+        {
+            return log.size();
+        }
+    }
+
+    /**
+     * This method folds the log into a new snapshot: the snapshot is written next to the current one,
+     * forced, and moved over it, and only once the directory is forced, so that the move itself survives
+     * a crash, is the log emptied. If the process stops before the log is emptied, the log is replayed over
+     * the new snapshot, which already holds its changes, and that leaves the agency unchanged. Changes wait
+     * while the snapshot is written; searches do not, and neither do the commits of changes made before it.
+     * @throws IOException If the snapshot or the log cannot be written.
+     */
+    public void compact() throws IOException
+    {
+        File temporary;
+
+        synchronized (mutationLock)
+        {
+            synchronized (logLock)
+            {
+                checkUsable();
+            }
+
+            temporary = new File(directory, SNAPSHOT_FILE + TEMPORARY_SUFFIX);
+            agency.writeSnapshot(temporary);
+            Files.move(temporary.toPath(), new File(directory, SNAPSHOT_FILE).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel directoryChannel = FileChannel.open(directory.toPath(), StandardOpenOption.READ))
+            {
+                directoryChannel.force(true);
+            }
+
+            synchronized (logLock)
+            {
+                awaitCommit();
+                checkUsable();
+                try
+                {
+                    log.clear();
+                }
+                catch (IOException e)
+                {
+                    failure = e;
+                    throw e;
+                }
+                finally
+                {
+                    durableCount = appendedCount;
+                    logLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * This method makes the changes still pending durable, and closes the log; the agency cannot be changed
+     * afterwards.
+     * @throws IOException If the log cannot be written or closed.
+     */
+    public void close() throws IOException
+    {
+        synchronized (mutationLock)
+        {
+            synchronized (logLock)
+            {
+                if (closed)
+                {
+                    return;
+                }
+
+                awaitCommit();
+                closed = true;
+                try
+                {
+                    if (failure == null)
+                    {
+                        log.write(log.takePending());
+                        durableCount = appendedCount;
+                    }
+                }
+                finally
+                {
+                    log.close();
+                    logLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * This method makes a change to the agency, appends its entries to the log, and commits the log.
+     * The change and its entries are made under the mutation lock, so that the log holds the changes in the order
+     * they were made. The log lock is only taken to append the entries: making the change waits for the searches
+     * running on the agency, and meanwhile the commit in progress can still mark the changes before it durable.
+     * @param change The change to be made to the agency.
+     * @param entry The entries of the change to be appended to the log.
+     * @throws IOException If the log cannot be written.
+     */
+    private void change(final Runnable change, final Runnable entry) throws IOException
+    {
+        long sequence;
+
+        synchronized (mutationLock)
+        {
+            synchronized (logLock)
+            {
+                checkUsable();
+            }
+
+            change.run();
+
+            synchronized (logLock)
+            {
+                entry.run();
+                appendedCount++;
+                sequence = appendedCount;
+            }
+        }
+        commit(sequence);
+    }
+
+    /**
+     * This method returns once the change with the sequence number is durable. If no commit is in progress,
+     * the calling thread writes every pending entry, its own and those of the threads waiting for it,
+     * and forces the log once; otherwise it waits for the commit in progress, which may hold its change.
+     * @param sequence The sequence number of the change, counted from one when the agency was opened.
+     * @throws IOException If the log cannot be written.
+     */
+    private void commit(final long sequence) throws IOException
+    {
+        ByteBuffer batch;
+        long batchEnd;
+        boolean written;
+
+        synchronized (logLock)
+        {
+            while (durableCount < sequence && committing)
+            {
+                awaitCommit();
+            }
+            if (durableCount >= sequence)
+            {
+                return;
+            }
+            checkUsable();
+
+            committing = true;
+            batch      = log.takePending();
+            batchEnd   = appendedCount;
+        }
+
+        written = false;
+        try
+        {
+            log.write(batch);
+            written = true;
+        }
+        catch (IOException e)
+        {
+            synchronized (logLock)
+            {
+                failure = e;
+            }
+            throw e;
+        }
+        finally
+        {
+            synchronized (logLock)
+            {
+                if (written)
+                {
+                    durableCount = batchEnd;
+                }
+                committing = false;
+                logLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * This method waits, holding the log lock, until no commit is in progress. An interrupt does not stop
+     * the wait, since the change being committed cannot be taken back, and is kept for the caller.
+     */
+    private void awaitCommit()
+    {
+        boolean interrupted;
+        interrupted = false;
+
+        while (committing)
+        {
+            try
+            {
+                logLock.wait();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @throws IOException If a write of the log failed before, so that later changes could not be made durable.
+     * @throws IllegalStateException If the agency is closed.
+     */
+    private void checkUsable() throws IOException
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("Closed agency: " + directory);
+        }
+        if (failure != null)
+        {
+            throw new IOException("Mutation log failed: " + directory, failure);
+        }
+    }
+
+    /**
+     * This method is notified when the price of a view returned by a search changes, and makes the change
+     * durable like setPriceUsd, unless the property the view was created from was removed since. The view is
+     * checked under the mutation lock, so that no other change comes between the check and the change.
+     */
+    private void viewPriceChanged(final Property property, final double oldPriceInUsd)
+    {
+        try
+        {
+            synchronized (mutationLock)
+            {
+                if (agency.read(replica -> replica.isCurrentView(property)))
+                {
+                    setPriceUsd(property.getPropertyId(), property.getPriceUsd());
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models the default property table, which holds the Property objects it is given.
+ */
+class HeapPropertyTable extends PropertyTable
+{
+    private Property[] properties;
+
+    HeapPropertyTable()
+    {
+        properties = new Property[INITIAL_CAPACITY];
+    }
+
+    @Override
+    void ensureCapacity(final int capacity)
+    {
+        if (capacity > properties.length)
+        {
+            properties = Arrays.copyOf(properties, Math.max(capacity, properties.length * 2));
+        }
+    }
+
+    @Override
+    void store(final int ordinal, final Property property)
+    {
+        properties[ordinal] = property;
+    }
+
+    @Override
+    Property clear(final int ordinal)
+    {
+        Property removed;
+        removed = properties[ordinal];
+
+        properties[ordinal] = null;
+        return removed;
+    }
+
+    @Override
+    boolean storesPropertyObjects()
+    {
+        return true;
+    }
+
+    @Override
+    Property get(final int ordinal)
+    {
+        return properties[ordinal];
+    }
+
+    @Override
+    byte getKind(final int ordinal)
+    {
+        if (properties[ordinal] == null)
+        {
+            return FREE;
+        }
+        return kindOf(properties[ordinal]);
+    }
+
+    @Override
+    double getPriceUsd(final int ordinal)
+    {
+        return properties[ordinal].getPriceUsd();
+    }
+
+    @Override
+    void setPriceUsd(final int ordinal, final double priceInUsd)
+    {
+        // The Property object is the storage, and it already holds the new price.
+    }
+
+    @Override
+    String getPropertyId(final int ordinal)
+    {
+        return properties[ordinal].getPropertyId();
+    }
+
+    @Override
+    String getType(final int ordinal)
+    {
+        return properties[ordinal].getType();
+    }
+
+    @Override
+    Address getAddress(final int ordinal)
+    {
+        return properties[ordinal].getAddress();
+    }
+
+    @Override
+    int getNumberOfBedrooms(final int ordinal)
+    {
+        return ((Residence) properties[ordinal]).getNumberOfBedrooms();
+    }
+
+    @Override
+    int getSquareFootage(final int ordinal)
+    {
+        return ((Retail) properties[ordinal]).getSquareFootage();
+    }
+
+    @Override
+    boolean offers(final int ordinal, final Amenity amenity)
+    {
+        return amenity.isOfferedBy(properties[ordinal]);
+    }
+}
@@ -0,0 +1,447 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a property table kept in a file outside the JVM heap. Every property is a fixed-width
+ * record of its numeric fields, mapped into memory in segments, and the strings of the properties are
+ * interned in a dictionary file next to it, so that a record refers to each string by its code.
+ * Queries read the records straight from the mapped pages, and the table creates a Property view only
+ * for each property a query returns; a price change on a view is written back to the file through the agency.
+ * <pre>
+ *     header:  magic | version | record size | high water mark
+ *     record:  kind | type | amenities | bedrooms | square footage | street number | price | property ID |
+ *              unit number | street name | postal code | city
+ *     strings: length | UTF-8 bytes, repeated in the order of their codes
+ * </pre>
+ * A property ID is kept packed in the record when PropertyIds can pack it, and as a dictionary code otherwise.
+ */
+class MappedPropertyTable extends PropertyTable
+{
+    private final File                    file;
+    private final RandomAccessFile        recordFile;
+    private final RandomAccessFile        stringFile;
+    private final FileChannel             recordChannel;
+    private final FileChannel             stringChannel;
+    private final MappedByteBuffer        header;
+    private final List<MappedByteBuffer>  segments;
+    private final StringDictionary        strings;
+
+    private PriceChangeListener viewListener;
+
+    public static final String STRING_FILE_SUFFIX = ".strings";
+
+    private static final int MAGIC = 0x50524f50;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 48;
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+    private static final long SEGMENT_SIZE = (long) RECORD_SIZE << SEGMENT_SHIFT;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_RECORD_SIZE = 8;
+    private static final int HEADER_HIGH_WATER_MARK = 12;
+
+    private static final int KIND = 0;
+    private static final int TYPE_CODE = 1;
+    private static final int AMENITIES = 2;
+    private static final int BEDROOMS = 4;
+    private static final int SQUARE_FOOTAGE = 8;
+    private static final int STREET_NUMBER = 12;
+    private static final int PRICE = 16;
+    private static final int PROPERTY_ID = 24;
+    private static final int UNIT_NUMBER = 32;
+    private static final int STREET_NAME = 36;
+    private static final int POSTAL_CODE = 40;
+    private static final int CITY = 44;
+
+    /**
+     * Constructor, which maps the file, creating it if it does not exist yet, and recovers the ordinals
+     * of the properties it already holds.
+     * @param file The file of the records; the dictionary is kept in the same path with STRING_FILE_SUFFIX.
+     * @throws IOException If the files cannot be mapped, or the file is not a property table.
+     */
+    MappedPropertyTable(final File file) throws IOException
+    {
+        int highWaterMark;
+
+        this.file = file;
+
+        recordFile    = new RandomAccessFile(file, "rw");
+        stringFile    = new RandomAccessFile(file.getPath() + STRING_FILE_SUFFIX, "rw");
+        recordChannel = recordFile.getChannel();
+        stringChannel = stringFile.getChannel();
+        segments      = new ArrayList<>();
+        strings       = new StringDictionary();
+
+        try
+        {
+            header = map(0, HEADER_SIZE);
+
+            if (header.getInt(HEADER_MAGIC) == 0)
+            {
+                header.putInt(HEADER_MAGIC, MAGIC);
+                header.putInt(HEADER_VERSION, VERSION);
+                header.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+                header.putInt(HEADER_HIGH_WATER_MARK, 0);
+            }
+            else if (header.getInt(HEADER_MAGIC) != MAGIC || header.getInt(HEADER_VERSION) != VERSION ||
+                    header.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE)
+            {
+                throw new IOException("Invalid property table: " + file);
+            }
+
+            highWaterMark = header.getInt(HEADER_HIGH_WATER_MARK);
+            ensureCapacity(highWaterMark);
+            readStrings();
+            recover(highWaterMark);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            recordFile.close();
+            stringFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param viewListener The listener to be notified when the price of a view changes.
+     */
+    void setViewListener(final PriceChangeListener viewListener)
+    {
+        this.viewListener = viewListener;
+    }
+
+    /**
+     * @return The file of the records.
+     */
+    File getFile()
+    {
+        return file;
+    }
+
+    @Override
+    void ensureCapacity(final int capacity)
+    {
+        try
+        {
+            while (((long) segments.size() << SEGMENT_SHIFT) < capacity)
+            {
+                segments.add(map(HEADER_SIZE + segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Cannot grow property table: " + file, e);
+        }
+    }
+
+    @Override
+    void store(final int ordinal, final Property property)
+    {
+        MappedByteBuffer segment;
+        int offset;
+        Address address;
+        long packedId;
+        int amenities;
+
+        segment  = segments.get(ordinal >>> SEGMENT_SHIFT);
+        offset   = offsetOf(ordinal);
+        address  = property.getAddress();
+        packedId = PropertyIds.pack(property.getPropertyId());
+
+        if (packedId == PropertyIds.NOT_PACKABLE)
+        {
+            packedId = -(intern(property.getPropertyId()) + 1L);
+        }
+
+        amenities = 0;
+        for (Amenity amenity : Amenity.values())
+        {
+            if (amenity.isOfferedBy(property))
+            {
+                amenities |= 1 << amenity.ordinal();
+            }
+        }
+
+        segment.put(offset + KIND, kindOf(property));
+        segment.put(offset + TYPE_CODE, (byte) Property.typeCode(property.getType()));
+        segment.put(offset + AMENITIES, (byte) amenities);
+        segment.putInt(offset + BEDROOMS,
+                property instanceof Residence ? ((Residence) property).getNumberOfBedrooms() : 0);
+        segment.putInt(offset + SQUARE_FOOTAGE,
+                property instanceof Retail ? ((Retail) property).getSquareFootage() : 0);
+        segment.putInt(offset + STREET_NUMBER, address.getStreetNumber());
+        segment.putDouble(offset + PRICE, property.getPriceUsd());
+        segment.putLong(offset + PROPERTY_ID, packedId);
+        segment.putInt(offset + UNIT_NUMBER,
+                address.getUnitNumber() == null ? StringDictionary.NO_CODE : intern(address.getUnitNumber()));
+        segment.putInt(offset + STREET_NAME, intern(address.getStreetName()));
+        segment.putInt(offset + POSTAL_CODE, intern(address.getPostalCode()));
+        segment.putInt(offset + CITY, intern(address.getCity()));
+
+        if (ordinal >= header.getInt(HEADER_HIGH_WATER_MARK))
+        {
+            header.putInt(HEADER_HIGH_WATER_MARK, ordinal + 1);
+        }
+    }
+
+    @Override
+    Property clear(final int ordinal)
+    {
+        MappedByteBuffer segment;
+        int offset;
+        int i;
+
+        segment = segments.get(ordinal >>> SEGMENT_SHIFT);
+        offset  = offsetOf(ordinal);
+
+        for (i = 0; i < RECORD_SIZE; i += Long.BYTES)
+        {
+            segment.putLong(offset + i, 0);
+        }
+        return null;
+    }
+
+    @Override
+    boolean storesPropertyObjects()
+    {
+        return false;
+    }
+
+    @Override
+    Property get(final int ordinal)
+    {
+        Property view;
+
+        switch (getKind(ordinal))
+        {
+            case RESIDENCE:
+                view = Residence.restore(getPriceUsd(ordinal), getAddress(ordinal), getNumberOfBedrooms(ordinal),
+                        offers(ordinal, Amenity.SWIMMING_POOL), getType(ordinal), getPropertyId(ordinal),
+                        offers(ordinal, Amenity.STRATA));
+                break;
+            case COMMERCIAL:
+                view = Commercial.restore(getPriceUsd(ordinal), getAddress(ordinal), getType(ordinal),
+                        getPropertyId(ordinal), offers(ordinal, Amenity.LOADING_DOCK),
+                        offers(ordinal, Amenity.HIGHWAY_ACCESS));
+                break;
+            case RETAIL:
+                view = Retail.restore(getPriceUsd(ordinal), getAddress(ordinal), getType(ordinal),
+                        getPropertyId(ordinal), getSquareFootage(ordinal), offers(ordinal, Amenity.CUSTOMER_PARKING));
+                break;
+            default:
+                return null;
+        }
+
+        bindView(view, ordinal);
+        if (viewListener != null)
+        {
+            view.addPriceChangeListener(viewListener);
+        }
+        return view;
+    }
+
+    @Override
+    byte getKind(final int ordinal)
+    {
+        return segments.get(ordinal >>> SEGMENT_SHIFT).get(offsetOf(ordinal) + KIND);
+    }
+
+    @Override
+    double getPriceUsd(final int ordinal)
+    {
+        return segments.get(ordinal >>> SEGMENT_SHIFT).getDouble(offsetOf(ordinal) + PRICE);
+    }
+
+    @Override
+    void setPriceUsd(final int ordinal, final double priceInUsd)
+    {
+        segments.get(ordinal >>> SEGMENT_SHIFT).putDouble(offsetOf(ordinal) + PRICE, priceInUsd);
+    }
+
+    @Override
+    String getPropertyId(final int ordinal)
+    {
+        long packedId;
+        packedId = segments.get(ordinal >>> SEGMENT_SHIFT).getLong(offsetOf(ordinal) + PROPERTY_ID);
+
+        if (packedId < 0)
+        {
+            return strings.get((int) (-packedId - 1));
+        }
+        return PropertyIds.unpack(packedId);
+    }
+
+    @Override
+    String getType(final int ordinal)
+    {
+        return Property.typeName(segments.get(ordinal >>> SEGMENT_SHIFT).get(offsetOf(ordinal) + TYPE_CODE));
+    }
+
+    @Override
+    Address getAddress(final int ordinal)
+    {
+        MappedByteBuffer segment;
+        int offset;
+        int unitNumber;
+
+        segment    = segments.get(ordinal >>> SEGMENT_SHIFT);
+        offset     = offsetOf(ordinal);
+        unitNumber = segment.getInt(offset + UNIT_NUMBER);
+
+        return Address.restore(unitNumber == StringDictionary.NO_CODE ? null : strings.get(unitNumber),
+                segment.getInt(offset + STREET_NUMBER), strings.get(segment.getInt(offset + STREET_NAME)),
+                strings.get(segment.getInt(offset + POSTAL_CODE)), strings.get(segment.getInt(offset + CITY)));
+    }
+
+    @Override
+    String getStreetName(final int ordinal)
+    {
+        return strings.get(segments.get(ordinal >>> SEGMENT_SHIFT).getInt(offsetOf(ordinal) + STREET_NAME));
+    }
+
+    @Override
+    String getPostalCode(final int ordinal)
+    {
+        return strings.get(segments.get(ordinal >>> SEGMENT_SHIFT).getInt(offsetOf(ordinal) + POSTAL_CODE));
+    }
+
+    @Override
+    String getCity(final int ordinal)
+    {
+        return strings.get(segments.get(ordinal >>> SEGMENT_SHIFT).getInt(offsetOf(ordinal) + CITY));
+    }
+
+    @Override
+    int getNumberOfBedrooms(final int ordinal)
+    {
+        return segments.get(ordinal >>> SEGMENT_SHIFT).getInt(offsetOf(ordinal) + BEDROOMS);
+    }
+
+    @Override
+    int getSquareFootage(final int ordinal)
+    {
+        return segments.get(ordinal >>> SEGMENT_SHIFT).getInt(offsetOf(ordinal) + SQUARE_FOOTAGE);
+    }
+
+    @Override
+    boolean offers(final int ordinal, final Amenity amenity)
+    {
+        return (segments.get(ordinal >>> SEGMENT_SHIFT).get(offsetOf(ordinal) + AMENITIES) &
+                (1 << amenity.ordinal())) != 0;
+    }
+
+    /**
+     * This method forces the records to the storage device. The dictionary is written as it grows,
+     * and is forced as well.
+     * @throws IOException If the files cannot be written.
+     */
+    @Override
+    void flush() throws IOException
+    {
+        for (MappedByteBuffer segment : segments)
+        {
+            segment.force();
+        }
+        header.force();
+        stringChannel.force(false);
+    }
+
+    @Override
+    void close() throws IOException
+    {
+        flush();
+        recordFile.close();
+        stringFile.close();
+    }
+
+    /**
+     * This method interns the string in the dictionary, and appends it to the dictionary file if it is new.
+     * @param string The string to be interned.
+     * @return The code of the string.
+     */
+    private int intern(final String string)
+    {
+        int code;
+        byte[] bytes;
+        ByteBuffer entry;
+
+        code = strings.codeOf(string);
+        if (code != StringDictionary.NO_CODE)
+        {
+            return code;
+        }
+
+        bytes = string.getBytes(StandardCharsets.UTF_8);
+        entry = ByteBuffer.allocate(Integer.BYTES + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putInt(bytes.length).put(bytes).flip();
+
+        try
+        {
+            while (entry.hasRemaining())
+            {
+                stringChannel.write(entry, stringChannel.size());
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Cannot grow string dictionary: " + file, e);
+        }
+        return strings.intern(string);
+    }
+
+    /**
+     * This method loads the dictionary file into the dictionary, in the order of the codes.
+     * @throws IOException If the dictionary file cannot be read.
+     */
+    private void readStrings() throws IOException
+    {
+        ByteBuffer buffer;
+        byte[] bytes;
+
+        if (stringChannel.size() == 0)
+        {
+            return;
+        }
+
+        buffer = stringChannel.map(FileChannel.MapMode.READ_ONLY, 0, stringChannel.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        while (buffer.remaining() >= Integer.BYTES)
+        {
+            bytes = new byte[buffer.getInt()];
+            if (bytes.length > buffer.remaining())
+            {
+                throw new IOException("Invalid string dictionary: " + file + STRING_FILE_SUFFIX);
+            }
+            buffer.get(bytes);
+            strings.intern(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private MappedByteBuffer map(final long position, final long size) throws IOException
+    {
+        MappedByteBuffer buffer;
+        buffer = recordChannel.map(FileChannel.MapMode.READ_WRITE, position, size);
+
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static int offsetOf(final int ordinal)
+    {
+        return (ordinal & SEGMENT_MASK) * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,430 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models an append-only log of the changes made to an agency. Changes are encoded into a pending
+ * buffer as they are made, and the buffer is written and forced to the storage device as one batch, so that
+ * many changes share a single fsync. Every entry carries its length and a CRC, so that an entry torn by
+ * a crash is recognized when the log is replayed, and cut off together with everything after it.
+ * <pre>
+ *     header:  magic | version
+ *     entry:   payload length | CRC-32C of the payload | payload
+ *     payload: ADD | kind | type | amenities | bedrooms | square footage | price | property ID |
+ *                    unit number | street number | street name | postal code | city
+ *              REMOVE | property ID
+ *              SET_PRICE | property ID | price
+ *     string:  length | UTF-8 bytes, or a length of -1 for null
+ * </pre>
+ * Replaying an entry sets the whole state of one property, so replaying the log again over an agency that
+ * already holds its changes leaves the agency unchanged.
+ */
+final class MutationLog
+{
+    private final File        file;
+    private final FileChannel channel;
+    private ByteBuffer        pending;
+
+    private static final int MAGIC = 0x4d4c4f47;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_HEADER_SIZE = 8;
+    private static final int INITIAL_PENDING_SIZE = 1 << 12;
+    private static final int NULL_LENGTH = -1;
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte SET_PRICE = 3;
+
+    /**
+     * Constructor, which opens the log, creating it if it does not exist yet. The log must be replayed
+     * before any change is appended to it.
+     * @param file The file of the log.
+     * @throws IOException If the file cannot be opened, or is not a log of this version.
+     */
+    MutationLog(final File file) throws IOException
+    {
+        ByteBuffer header;
+
+        this.file = file;
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        pending = newBuffer(INITIAL_PENDING_SIZE);
+        header  = newBuffer(HEADER_SIZE);
+
+        try
+        {
+            if (channel.size() < HEADER_SIZE)
+            {
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                channel.truncate(0);
+                writeFully(header, 0);
+                channel.force(false);
+            }
+            else
+            {
+                readFully(header, 0);
+                if (header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != VERSION)
+                {
+                    throw new IOException("Invalid mutation log: " + file);
+                }
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * This method applies every intact entry of the log to the agency, in order, and cuts off the log after
+     * the last of them, so that new entries follow it.
+     * @param agency The agency the entries are applied to.
+     * @return The number of entries applied.
+     * @throws IOException If the log cannot be read or cut off.
+     */
+    int replay(final ConcurrentAgency agency) throws IOException
+    {
+        ByteBuffer entryHeader;
+        ByteBuffer payload;
+        CRC32C checksum;
+        long position;
+        int length;
+        int entries;
+
+        entryHeader = newBuffer(ENTRY_HEADER_SIZE);
+        checksum    = new CRC32C();
+        position    = HEADER_SIZE;
+        entries     = 0;
+
+        while (position + ENTRY_HEADER_SIZE <= channel.size())
+        {
+            entryHeader.clear();
+            readFully(entryHeader, position);
+            length = entryHeader.getInt(0);
+
+            if (length <= 0 || position + ENTRY_HEADER_SIZE + length > channel.size())
+            {
+                break;
+            }
+
+            payload = newBuffer(length);
+            readFully(payload, position + ENTRY_HEADER_SIZE);
+            payload.flip();
+            checksum.reset();
+            checksum.update(payload);
+            if ((int) checksum.getValue() != entryHeader.getInt(Integer.BYTES))
+            {
+                break;
+            }
+
+            apply(payload.rewind(), agency);
+            position += ENTRY_HEADER_SIZE + length;
+            entries++;
+        }
+
+        channel.truncate(position);
+        channel.position(position);
+        return entries;
+    }
+
+    /**
+     * This method appends the addition of a property to the pending entries.
+     * @param property The property added.
+     */
+    void appendAdd(final Property property)
+    {
+        Address address;
+        int amenities;
+        int start;
+
+        address   = property.getAddress();
+        amenities = 0;
+        for (Amenity amenity : Amenity.values())
+        {
+            if (amenity.isOfferedBy(property))
+            {
+                amenities |= 1 << amenity.ordinal();
+            }
+        }
+
+        start = beginEntry(ADD);
+        require(Byte.BYTES * 3 + Integer.BYTES * 2 + Double.BYTES);
+        pending.put(PropertyTable.kindOf(property));
+        pending.put((byte) Property.typeCode(property.getType()));
+        pending.put((byte) amenities);
+        pending.putInt(property instanceof Residence ? ((Residence) property).getNumberOfBedrooms() : 0);
+        pending.putInt(property instanceof Retail ? ((Retail) property).getSquareFootage() : 0);
+        pending.putDouble(property.getPriceUsd());
+        putString(property.getPropertyId());
+        putString(address.getUnitNumber());
+        require(Integer.BYTES);
+        pending.putInt(address.getStreetNumber());
+        putString(address.getStreetName());
+        putString(address.getPostalCode());
+        putString(address.getCity());
+        endEntry(start);
+    }
+
+    /**
+     * This method appends the removal of a property to the pending entries.
+     * @param propertyId The ID of the property removed.
+     */
+    void appendRemove(final String propertyId)
+    {
+        int start;
+
+        start = beginEntry(REMOVE);
+        putString(propertyId);
+        endEntry(start);
+    }
+
+    /**
+     * This method appends a price change to the pending entries.
+     * @param propertyId The ID of the property.
+     * @param priceInUsd The new price, in USD.
+     */
+    void appendSetPrice(final String propertyId, final double priceInUsd)
+    {
+        int start;
+
+        start = beginEntry(SET_PRICE);
+        putString(propertyId);
+        require(Double.BYTES);
+        pending.putDouble(priceInUsd);
+        endEntry(start);
+    }
+
+    /**
+     * @return The entries appended since the last call, ready to be written; the pending buffer starts over.
+     */
+    ByteBuffer takePending()
+    {
+        ByteBuffer batch;
+
+        batch   = pending.flip();
+        pending = newBuffer(Math.max(INITIAL_PENDING_SIZE, batch.limit()));
+        return batch;
+    }
+
+    /**
+     * This method writes a batch of entries at the end of the log and forces them to the storage device.
+     * Only one batch is written at a time.
+     * @param batch The entries to be written.
+     * @throws IOException If the log cannot be written.
+     */
+    void write(final ByteBuffer batch) throws IOException
+    {
+        if (batch.hasRemaining())
+        {
+            writeFully(batch, channel.position());
+            channel.position(channel.position() + batch.limit());
+            channel.force(false);
+        }
+    }
+
+    /**
+     * This method drops every entry of the log, once the changes they hold are kept in a snapshot,
+     * along with the pending entries.
+     * @throws IOException If the log cannot be cut off.
+     */
+    void clear() throws IOException
+    {
+        pending.clear();
+        channel.truncate(HEADER_SIZE);
+        channel.position(HEADER_SIZE);
+        channel.force(false);
+    }
+
+    /**
+     * @return The size of the log file, in bytes.
+     * @throws IOException If the size cannot be read.
+     */
+    long size() throws IOException
+    {
+        return channel.size();
+    }
+
+    void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * This method applies one entry to the agency.
+     */
+    private void apply(final ByteBuffer payload, final ConcurrentAgency agency) throws IOException
+    {
+        switch (payload.get())
+        {
+            case ADD:
+                agency.addProperty(getProperty(payload));
+                break;
+            case REMOVE:
+                agency.removeProperty(getString(payload));
+                break;
+            case SET_PRICE:
+                agency.setPriceUsd(getString(payload), payload.getDouble());
+                break;
+            default:
+                throw new IOException("Invalid mutation log: " + file);
+        }
+    }
+
+    /**
+     * @return The property of an ADD entry, recreated without validating it again.
+     */
+    private static Property getProperty(final ByteBuffer payload)
+    {
+        byte kind;
+        String type;
+        int amenities;
+        int bedrooms;
+        int squareFootage;
+        double price;
+        String propertyId;
+        String unitNumber;
+        Address address;
+
+        kind          = payload.get();
+        type          = Property.typeName(payload.get());
+        amenities     = payload.get() & 0xFF;
+        bedrooms      = payload.getInt();
+        squareFootage = payload.getInt();
+        price         = payload.getDouble();
+        propertyId    = getString(payload);
+        unitNumber    = getString(payload);
+
+        address = Address.restore(unitNumber, payload.getInt(), getString(payload), getString(payload),
+                getString(payload));
+
+        switch (kind)
+        {
+            case PropertyTable.RESIDENCE:
+                return Residence.restore(price, address, bedrooms, offered(amenities, Amenity.SWIMMING_POOL), type,
+                        propertyId, offered(amenities, Amenity.STRATA));
+            case PropertyTable.COMMERCIAL:
+                return Commercial.restore(price, address, type, propertyId,
+                        offered(amenities, Amenity.LOADING_DOCK), offered(amenities, Amenity.HIGHWAY_ACCESS));
+            default:
+                return Retail.restore(price, address, type, propertyId, squareFootage,
+                        offered(amenities, Amenity.CUSTOMER_PARKING));
+        }
+    }
+
+    private static boolean offered(final int amenities, final Amenity amenity)
+    {
+        return (amenities & (1 << amenity.ordinal())) != 0;
+    }
+
+    private static String getString(final ByteBuffer payload)
+    {
+        byte[] bytes;
+        int length;
+
+        length = payload.getInt();
+        if (length == NULL_LENGTH)
+        {
+            return null;
+        }
+
+        bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method reserves the header of an entry and appends its operation.
+     * @return The position of the entry in the pending buffer.
+     */
+    private int beginEntry(final byte operation)
+    {
+        int start;
+
+        require(ENTRY_HEADER_SIZE + Byte.BYTES);
+        start = pending.position();
+        pending.position(start + ENTRY_HEADER_SIZE);
+        pending.put(operation);
+        return start;
+    }
+
+    /**
+     * This method fills in the length and the CRC of the entry that starts at the position.
+     */
+    private void endEntry(final int start)
+    {
+        ByteBuffer payload;
+        CRC32C checksum;
+
+        payload  = pending.duplicate().position(start + ENTRY_HEADER_SIZE).limit(pending.position());
+        checksum = new CRC32C();
+        checksum.update(payload);
+
+        pending.putInt(start, pending.position() - start - ENTRY_HEADER_SIZE);
+        pending.putInt(start + Integer.BYTES, (int) checksum.getValue());
+    }
+
+    private void putString(final String value)
+    {
+        byte[] bytes;
+
+        if (value == null)
+        {
+            require(Integer.BYTES);
+            pending.putInt(NULL_LENGTH);
+            return;
+        }
+
+        bytes = value.getBytes(StandardCharsets.UTF_8);
+        require(Integer.BYTES + bytes.length);
+        pending.putInt(bytes.length).put(bytes);
+    }
+
+    /**
+     * This method grows the pending buffer until it has room for the number of bytes.
+     */
+    private void require(final int bytes)
+    {
+        ByteBuffer grown;
+
+        if (pending.remaining() < bytes)
+        {
+            grown = newBuffer(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            grown.put(pending.flip());
+            pending = grown;
+        }
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new IOException("Invalid mutation log: " + file);
+            }
+        }
+    }
+
+    private void writeFully(final ByteBuffer buffer, final long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static ByteBuffer newBuffer(final int capacity)
+    {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
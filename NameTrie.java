@@ -0,0 +1,394 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a trie of names, such as street names or cities, with the number of properties
+ * holding each name. Names are stored by their folded case, see Address.foldCase.
+ * The nodes are kept in parallel arrays, with the children of a node in a linked list, and every node
+ * knows the highest count in its subtree, so that the most common completions of a prefix are found
+ * best-first, without visiting the rest of the subtree.
+ */
+class NameTrie
+{
+    private char[]   labels;
+    private int[]    parents;
+    private int[]    firstChildren;
+    private int[]    nextSiblings;
+    private int[]    counts;
+    private int[]    maxCounts;
+    private String[] names;
+    private int      nodeCount;
+
+    private static final int ROOT = 0;
+    private static final int NO_NODE = -1;
+    private static final long RESULT = 1L << 31;
+
+    NameTrie()
+    {
+        labels        = new char[PropertyTable.INITIAL_CAPACITY];
+        parents       = new int[PropertyTable.INITIAL_CAPACITY];
+        firstChildren = new int[PropertyTable.INITIAL_CAPACITY];
+        nextSiblings  = new int[PropertyTable.INITIAL_CAPACITY];
+        counts        = new int[PropertyTable.INITIAL_CAPACITY];
+        maxCounts     = new int[PropertyTable.INITIAL_CAPACITY];
+        names         = new String[PropertyTable.INITIAL_CAPACITY];
+
+        parents[ROOT]       = NO_NODE;
+        firstChildren[ROOT] = NO_NODE;
+        nextSiblings[ROOT]  = NO_NODE;
+        nodeCount           = 1;
+    }
+
+    /**
+     * This method counts one more property with the name.
+     * @param name The name to be counted.
+     */
+    void add(final String name)
+    {
+        add(name, 1);
+    }
+
+    /**
+     * This method counts a number of properties more with the name, such as those added in a batch.
+     * @param name The name to be counted.
+     * @param count The number of properties with the name, at least one.
+     */
+    void add(final String name, final int count)
+    {
+        String key;
+        int node;
+        int child;
+        int i;
+
+        key  = Address.foldCase(name);
+        node = ROOT;
+
+        for (i = 0; i < key.length(); i++)
+        {
+            child = childOf(node, key.charAt(i));
+            if (child == NO_NODE)
+            {
+                child = addChild(node, key.charAt(i));
+            }
+            node = child;
+        }
+
+        counts[node] += count;
+        if (names[node] == null)
+        {
+            names[node] = name;
+        }
+
+        for (child = node; child != NO_NODE && maxCounts[child] < counts[node]; child = parents[child])
+        {
+            maxCounts[child] = counts[node];
+        }
+    }
+
+    /**
+     * This method counts one property less with the name.
+     * @param name The name to be uncounted, which must have been counted.
+     */
+    void remove(final String name)
+    {
+        int node;
+        int maxCount;
+        int child;
+
+        node = find(Address.foldCase(name));
+        if (node == NO_NODE || counts[node] == 0)
+        {
+            return;
+        }
+
+        counts[node]--;
+        if (counts[node] == 0)
+        {
+            names[node] = null;
+        }
+
+        for (; node != NO_NODE; node = parents[node])
+        {
+            maxCount = counts[node];
+            for (child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child])
+            {
+                maxCount = Math.max(maxCount, maxCounts[child]);
+            }
+
+            if (maxCount == maxCounts[node])
+            {
+                return;
+            }
+            maxCounts[node] = maxCount;
+        }
+    }
+
+    /**
+     * @param prefix The prefix to be completed (case-insensitive).
+     * @param limit The maximum number of suggestions.
+     * @return The names starting with the prefix, most common first.
+     */
+    ArrayList<Suggestion> complete(final String prefix, final int limit)
+    {
+        int node;
+        node = find(Address.foldCase(prefix));
+
+        if (node == NO_NODE)
+        {
+            return new ArrayList<>();
+        }
+        return mostCommon(new int[] {node}, 1, limit);
+    }
+
+    /**
+     * This method completes a prefix that may be misspelled: a name is suggested if some prefix of it
+     * is within maxEdits insertions, deletions and substitutions of the prefix. The trie is walked depth-first
+     * with one row of the Levenshtein distance table per node, and a branch is given up as soon as every
+     * entry of its row exceeds maxEdits.
+     * @param prefix The prefix to be completed (case-insensitive).
+     * @param maxEdits The maximum edit distance.
+     * @param limit The maximum number of suggestions.
+     * @return The names starting with a prefix within the edit distance, most common first.
+     */
+    ArrayList<Suggestion> complete(final String prefix, final int maxEdits, final int limit)
+    {
+        String key;
+        int[] row;
+        int[][] matches;
+        int[] matchCount;
+        int i;
+
+        key = Address.foldCase(prefix);
+        row = new int[key.length() + 1];
+
+        for (i = 0; i < row.length; i++)
+        {
+            row[i] = i;
+        }
+
+        matches    = new int[][] {new int[PropertyTable.INITIAL_CAPACITY]};
+        matchCount = new int[1];
+        collectMatches(ROOT, key, row, maxEdits, matches, matchCount);
+        return mostCommon(matches[0], matchCount[0], limit);
+    }
+
+    private void collectMatches(final int node, final String key, final int[] row, final int maxEdits,
+                                final int[][] matches, final int[] matchCount)
+    {
+        int[] childRow;
+        int minimum;
+        int child;
+        int j;
+
+        if (row[key.length()] <= maxEdits)
+        {
+            if (matchCount[0] == matches[0].length)
+            {
+                matches[0] = Arrays.copyOf(matches[0], matchCount[0] * 2);
+            }
+            matches[0][matchCount[0]] = node;
+            matchCount[0]++;
+            return;
+        }
+
+        for (child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child])
+        {
+            if (maxCounts[child] == 0)
+            {
+                continue;
+            }
+
+            childRow    = new int[row.length];
+            childRow[0] = row[0] + 1;
+            minimum     = childRow[0];
+
+            for (j = 1; j < row.length; j++)
+            {
+                childRow[j] = Math.min(Math.min(row[j] + 1, childRow[j - 1] + 1),
+                        row[j - 1] + (key.charAt(j - 1) == labels[child] ? 0 : 1));
+                minimum = Math.min(minimum, childRow[j]);
+            }
+
+            if (minimum <= maxEdits)
+            {
+                collectMatches(child, key, childRow, maxEdits, matches, matchCount);
+            }
+        }
+    }
+
+    /**
+     * This method finds the most common names in the subtrees of some nodes, best-first: a queue holds
+     * both subtrees, ranked by the highest count inside them, and names, ranked by their count,
+     * so that a name is taken from the queue only when no subtree still queued can hold a more common one.
+     * @param roots The roots of the subtrees, none of which is inside another.
+     * @param rootCount The number of roots.
+     * @param limit The maximum number of names.
+     * @return The most common names, most common first.
+     */
+    private ArrayList<Suggestion> mostCommon(final int[] roots, final int rootCount, final int limit)
+    {
+        ArrayList<Suggestion> suggestions;
+        PriorityQueue<Long> queue;
+        long entry;
+        int node;
+        int child;
+        int i;
+
+        suggestions = new ArrayList<>();
+        queue       = new PriorityQueue<>(Comparator.reverseOrder());
+
+        for (i = 0; i < rootCount; i++)
+        {
+            if (maxCounts[roots[i]] > 0)
+            {
+                queue.add(entry(maxCounts[roots[i]], false, roots[i]));
+            }
+        }
+
+        while (suggestions.size() < limit && !queue.isEmpty())
+        {
+            entry = queue.poll();
+            node  = (int) (entry & Integer.MAX_VALUE);
+
+            if ((entry & RESULT) != 0)
+            {
+                suggestions.add(new Suggestion(names[node], counts[node]));
+                continue;
+            }
+
+            if (counts[node] > 0)
+            {
+                queue.add(entry(counts[node], true, node));
+            }
+            for (child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child])
+            {
+                if (maxCounts[child] > 0)
+                {
+                    queue.add(entry(maxCounts[child], false, child));
+                }
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * This method writes the nodes of the trie.
+     * @param out The snapshot being written.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    void write(final AgencySnapshot.Output out) throws IOException
+    {
+        int node;
+
+        out.putInt(nodeCount);
+        for (node = 0; node < nodeCount; node++)
+        {
+            out.putChar(labels[node]);
+            out.putInt(parents[node]);
+            out.putInt(firstChildren[node]);
+            out.putInt(nextSiblings[node]);
+            out.putInt(counts[node]);
+            out.putInt(maxCounts[node]);
+            out.putString(names[node]);
+        }
+    }
+
+    /**
+     * This method reads the nodes written by write into an empty trie.
+     * @param in The snapshot being read.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    void read(final AgencySnapshot.Input in) throws IOException
+    {
+        int node;
+
+        nodeCount = in.getInt();
+        if (nodeCount > labels.length)
+        {
+            labels        = new char[nodeCount];
+            parents       = new int[nodeCount];
+            firstChildren = new int[nodeCount];
+            nextSiblings  = new int[nodeCount];
+            counts        = new int[nodeCount];
+            maxCounts     = new int[nodeCount];
+            names         = new String[nodeCount];
+        }
+
+        for (node = 0; node < nodeCount; node++)
+        {
+            labels[node]        = in.getChar();
+            parents[node]       = in.getInt();
+            firstChildren[node] = in.getInt();
+            nextSiblings[node]  = in.getInt();
+            counts[node]        = in.getInt();
+            maxCounts[node]     = in.getInt();
+            names[node]         = in.getString();
+        }
+    }
+
+    /**
+     * @return A queue entry ranked by the count, with names ahead of subtrees of the same count.
+     */
+    private static long entry(final int count, final boolean result, final int node)
+    {
+        return ((long) count << 32) | (result ? RESULT : 0) | node;
+    }
+
+    private int find(final String key)
+    {
+        int node;
+        int i;
+
+        node = ROOT;
+        for (i = 0; i < key.length() && node != NO_NODE; i++)
+        {
+            node = childOf(node, key.charAt(i));
+        }
+        return node;
+    }
+
+    private int childOf(final int node, final char label)
+    {
+        int child;
+
+        for (child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child])
+        {
+            if (labels[child] == label)
+            {
+                return child;
+            }
+        }
+        return NO_NODE;
+    }
+
+    private int addChild(final int node, final char label)
+    {
+        int child;
+
+        if (nodeCount == labels.length)
+        {
+            labels        = Arrays.copyOf(labels, nodeCount * 2);
+            parents       = Arrays.copyOf(parents, nodeCount * 2);
+            firstChildren = Arrays.copyOf(firstChildren, nodeCount * 2);
+            nextSiblings  = Arrays.copyOf(nextSiblings, nodeCount * 2);
+            counts        = Arrays.copyOf(counts, nodeCount * 2);
+            maxCounts     = Arrays.copyOf(maxCounts, nodeCount * 2);
+            names         = Arrays.copyOf(names, nodeCount * 2);
+        }
+
+        child = nodeCount;
+        nodeCount++;
+
+        labels[child]        = label;
+        parents[child]       = node;
+        firstChildren[child] = NO_NODE;
+        nextSiblings[child]  = firstChildren[node];
+        firstChildren[node]  = child;
+        return child;
+    }
+}
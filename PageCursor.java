@@ -0,0 +1,87 @@
+import java.util.Objects;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models the position after the last property of a PropertyPage, from which the next page starts.
+ * It holds the sort value and the position of that property rather than a count of the properties before it,
+ * so that paging goes on where it left off while properties are added, removed and repriced: a property that
+ * does not change is neither skipped nor returned twice.
+ */
+public final class PageCursor
+{
+    private final SortKey sortKey;
+    private final boolean descending;
+    private final double  value;
+    private final int     ordinal;
+
+    PageCursor(final SortKey sortKey, final boolean descending, final double value, final int ordinal)
+    {
+        this.sortKey    = sortKey;
+        this.descending = descending;
+        this.value      = value;
+        this.ordinal    = ordinal;
+    }
+
+    /**
+     * @return The key of the order the cursor belongs to, or null for the order of the agency.
+     */
+    public SortKey getSortKey()
+    {
+        return sortKey;
+    }
+
+    /**
+     * @return True if the order the cursor belongs to is descending, false otherwise.
+     */
+    public boolean isDescending()
+    {
+        return descending;
+    }
+
+    double getValue()
+    {
+        return value;
+    }
+
+    int getOrdinal()
+    {
+        return ordinal;
+    }
+
+    @Override
+    public boolean equals(final Object object)
+    {
+        PageCursor other;
+
+        if (this == object)
+        {
+            return true;
+        }
+        if (!(object instanceof PageCursor))
+        {
+            return false;
+        }
+
+        other = (PageCursor) object;
+        return sortKey == other.sortKey && descending == other.descending &&
+                Double.compare(value, other.value) == 0 && ordinal == other.ordinal;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(sortKey, descending, value, ordinal);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PageCursor [" +
+                "sortKey=" + sortKey +
+                ", descending=" + descending +
+                ", value=" + value +
+                ", position=" + ordinal +
+                ']';
+    }
+}
@@ -0,0 +1,474 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a reader of pipe-delimited data files, such as address_data.txt and property_data.txt.
+ * It reads the file through a FileChannel into a reusable byte buffer, and splits each line into fields
+ * by recording where they start and end, so that ints, doubles and booleans are parsed straight from
+ * the bytes; a String is only created when a field is asked for as a String.
+ * Empty lines are skipped, and a line may end with either "\n" or "\r\n".
+ * <pre>
+ *     while (tokenizer.next())
+ *     {
+ *         price = tokenizer.getDouble(0);
+ *     }
+ * </pre>
+ */
+final class PipeTokenizer implements Closeable
+{
+    private final FileChannel channel;
+    private final long        end;
+    private long              position;
+    private boolean           endOfInput;
+
+    private byte[] buffer;
+    private int    bufferStart;
+    private int    bufferEnd;
+    private int    lineStart;
+    private int    lineEnd;
+
+    private int[] fieldStarts;
+    private int[] fieldEnds;
+    private int   fieldCount;
+
+    public static final byte FIELD_SEPARATOR = '|';
+
+    private static final int    BUFFER_SIZE = 1 << 16;
+    private static final int    INITIAL_FIELD_CAPACITY = 8;
+    private static final int    MAX_EXACT_POWER_OF_TEN = 22;
+    private static final long   MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int    MAX_INT_DIGITS = 9;
+    private static final String TRUE = "true";
+
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER_OF_TEN + 1];
+
+    static
+    {
+        int i;
+
+        POWERS_OF_TEN[0] = 1;
+        for (i = 1; i <= MAX_EXACT_POWER_OF_TEN; i++)
+        {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Constructor, which opens the file to be read.
+     * @param file The file to be read.
+     * @throws FileNotFoundException If the file does not exist.
+     */
+    PipeTokenizer(final File file) throws FileNotFoundException
+    {
+        this(new FileInputStream(file).getChannel(), 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor, which reads the lines of a channel between two positions. The channel is only read with
+     * absolute positions, so that several tokenizers can share it.
+     * @param channel The channel to be read.
+     * @param start The position of the first byte of a line.
+     * @param end The position after the last byte to be read.
+     */
+    PipeTokenizer(final FileChannel channel, final long start, final long end)
+    {
+        this.channel  = channel;
+        this.position = start;
+        this.end      = end;
+
+        buffer      = new byte[BUFFER_SIZE];
+        fieldStarts = new int[INITIAL_FIELD_CAPACITY];
+        fieldEnds   = new int[INITIAL_FIELD_CAPACITY];
+    }
+
+    /**
+     * This method calls the handler once for every non-empty line of the file, and closes the file.
+     * The tokenizer passed to the handler is only valid until the handler returns.
+     * @param file The file to be read.
+     * @param handler The handler of the lines.
+     * @throws FileNotFoundException If the file does not exist.
+     * @throws UncheckedIOException If the file cannot be read.
+     */
+    static void forEachRecord(final File file, final Consumer<PipeTokenizer> handler) throws FileNotFoundException
+    {
+        try (PipeTokenizer tokenizer = new PipeTokenizer(file))
+        {
+            while (tokenizer.next())
+            {
+                handler.accept(tokenizer);
+            }
+        }
+    }
+
+    /**
+     * This method moves to the next non-empty line and splits it into fields.
+     * @return True if there is a next line, false at the end of the input.
+     * @throws UncheckedIOException If the input cannot be read.
+     */
+    boolean next()
+    {
+        int scanned;
+        int i;
+
+        scanned = bufferStart;
+
+        while (true)
+        {
+            for (i = scanned; i < bufferEnd && buffer[i] != '\n'; i++)
+            {
+                // Looking for the end of the line.
+            }
+
+            if (i == bufferEnd && !endOfInput)
+            {
+                scanned = i - bufferStart;
+                fill();
+                scanned += bufferStart;
+                continue;
+            }
+            if (i == bufferEnd && bufferStart == bufferEnd)
+            {
+                return false;
+            }
+
+            lineStart   = bufferStart;
+            lineEnd     = i;
+            bufferStart = i < bufferEnd ? i + 1 : i;
+            scanned     = bufferStart;
+
+            if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r')
+            {
+                lineEnd--;
+            }
+            if (lineEnd > lineStart)
+            {
+                split();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return The number of fields of the current line.
+     */
+    int fieldCount()
+    {
+        return fieldCount;
+    }
+
+    /**
+     * This method drops the first fields of the current line, so that the field after them becomes field 0;
+     * a line made of several records, such as a change of a delta feed, can then be read by their readers.
+     * @param count The number of fields to be dropped.
+     */
+    void dropFields(final int count)
+    {
+        checkField(count);
+        System.arraycopy(fieldStarts, count, fieldStarts, 0, fieldCount - count);
+        System.arraycopy(fieldEnds, count, fieldEnds, 0, fieldCount - count);
+        fieldCount -= count;
+    }
+
+    /**
+     * @return The current line, without its line terminator.
+     */
+    String getLine()
+    {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param field The index of the field in the current line.
+     * @return The field, as a String.
+     */
+    String getString(final int field)
+    {
+        checkField(field);
+        return new String(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method interns the field in a dictionary, so that a value repeated on many lines, such as a city,
+     * is stored once; no String is created for a value the dictionary has seen before.
+     * @param field The index of the field in the current line.
+     * @param dictionary The dictionary the field is interned in.
+     * @return The field, as the String shared through the dictionary.
+     */
+    String getString(final int field, final StringDictionary dictionary)
+    {
+        checkField(field);
+        return dictionary.get(dictionary.intern(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field]));
+    }
+
+    /**
+     * This method parses the field like Integer.parseInt, without creating a String for it.
+     * @param field The index of the field in the current line.
+     * @return The field, as an int.
+     * @throws NumberFormatException If the field is not an int.
+     */
+    int getInt(final int field)
+    {
+        int start;
+        int stop;
+        boolean negative;
+        long value;
+        int i;
+
+        checkField(field);
+        start    = fieldStarts[field];
+        stop     = fieldEnds[field];
+        negative = start < stop && buffer[start] == '-';
+
+        if (negative)
+        {
+            start++;
+        }
+
+        if (start == stop || stop - start > MAX_INT_DIGITS)
+        {
+            return Integer.parseInt(getString(field));
+        }
+
+        value = 0;
+        for (i = start; i < stop; i++)
+        {
+            if (buffer[i] < '0' || buffer[i] > '9')
+            {
+                return Integer.parseInt(getString(field));
+            }
+            value = value * 10 + (buffer[i] - '0');
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * This method parses the field like Double.parseDouble. A plain decimal number whose digits fit in
+     * 53 bits, with at most 22 digits after the point, is parsed straight from the bytes: both its digits
+     * and the power of ten are exact doubles, so one division gives the correctly rounded result.
+     * Any other number is handed to Double.parseDouble.
+     * @param field The index of the field in the current line.
+     * @return The field, as a double.
+     * @throws NumberFormatException If the field is not a number.
+     */
+    double getDouble(final int field)
+    {
+        int start;
+        int stop;
+        boolean negative;
+        boolean seenPoint;
+        boolean seenDigit;
+        long mantissa;
+        int fractionDigits;
+        double value;
+        int i;
+
+        checkField(field);
+        start    = fieldStarts[field];
+        stop     = fieldEnds[field];
+        negative = start < stop && buffer[start] == '-';
+
+        if (negative)
+        {
+            start++;
+        }
+
+        mantissa       = 0;
+        fractionDigits = 0;
+        seenPoint      = false;
+        seenDigit      = false;
+
+        for (i = start; i < stop; i++)
+        {
+            if (buffer[i] >= '0' && buffer[i] <= '9')
+            {
+                mantissa  = mantissa * 10 + (buffer[i] - '0');
+                seenDigit = true;
+                if (seenPoint)
+                {
+                    fractionDigits++;
+                }
+                if (mantissa > MAX_EXACT_MANTISSA || fractionDigits > MAX_EXACT_POWER_OF_TEN)
+                {
+                    return Double.parseDouble(getString(field));
+                }
+            }
+            else if (buffer[i] == '.' && !seenPoint)
+            {
+                seenPoint = true;
+            }
+            else
+            {
+                return Double.parseDouble(getString(field));
+            }
+        }
+
+        if (!seenDigit)
+        {
+            return Double.parseDouble(getString(field));
+        }
+
+        value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * This method parses the field like Boolean.parseBoolean, without creating a String for it.
+     * @param field The index of the field in the current line.
+     * @return True if the field is "true" (case-insensitive), false otherwise.
+     */
+    boolean getBoolean(final int field)
+    {
+        return fieldEqualsIgnoreCase(field, TRUE);
+    }
+
+    /**
+     * @param field The index of the field in the current line.
+     * @param value The value to be matched.
+     * @return True if the field equals the value (case-insensitive), false otherwise.
+     */
+    boolean fieldEqualsIgnoreCase(final int field, final String value)
+    {
+        int start;
+        int i;
+
+        checkField(field);
+        start = fieldStarts[field];
+
+        if (fieldEnds[field] - start != value.length())
+        {
+            return !isAscii(field) && getString(field).equalsIgnoreCase(value);
+        }
+
+        for (i = 0; i < value.length(); i++)
+        {
+            if (buffer[start + i] < 0)
+            {
+                return getString(field).equalsIgnoreCase(value);
+            }
+            if (Character.toLowerCase((char) buffer[start + i]) != Character.toLowerCase(value.charAt(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method closes the channel the tokenizer reads.
+     */
+    @Override
+    public void close()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void split()
+    {
+        int i;
+
+        fieldCount = 0;
+        addField(lineStart);
+
+        for (i = lineStart; i < lineEnd; i++)
+        {
+            if (buffer[i] == FIELD_SEPARATOR)
+            {
+                fieldEnds[fieldCount - 1] = i;
+                addField(i + 1);
+            }
+        }
+        fieldEnds[fieldCount - 1] = lineEnd;
+    }
+
+    private void addField(final int start)
+    {
+        if (fieldCount == fieldStarts.length)
+        {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+            fieldEnds   = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldCount++;
+    }
+
+    /**
+     * This method reads more of the input after the unread bytes, first moving them to the front of the buffer,
+     * and growing the buffer when a single line fills it.
+     */
+    private void fill()
+    {
+        ByteBuffer target;
+        int read;
+
+        if (bufferStart > 0)
+        {
+            System.arraycopy(buffer, bufferStart, buffer, 0, bufferEnd - bufferStart);
+            bufferEnd  -= bufferStart;
+            bufferStart = 0;
+        }
+        if (bufferEnd == buffer.length)
+        {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        target = ByteBuffer.wrap(buffer, bufferEnd, (int) Math.min(buffer.length - bufferEnd, end - position));
+        try
+        {
+            read = target.hasRemaining() ? channel.read(target, position) : -1;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        if (read <= 0)
+        {
+            endOfInput = true;
+        }
+        else
+        {
+            position  += read;
+            bufferEnd += read;
+        }
+    }
+
+    private boolean isAscii(final int field)
+    {
+        int i;
+
+        for (i = fieldStarts[field]; i < fieldEnds[field]; i++)
+        {
+            if (buffer[i] < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkField(final int field)
+    {
+        if (field < 0 || field >= fieldCount)
+        {
+            throw new ArrayIndexOutOfBoundsException("Invalid field: " + field);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models the running price statistics of a group of properties, kept up to date as properties
+ * are added, removed and repriced, so that reading them is O(1).
+ * The total is a compensated sum, following Neumaier's variant of Kahan summation: the low-order bits lost by
+ * each addition are collected separately, so that the total does not drift however many prices are added
+ * and taken away. The lowest and highest prices are the ends of a PriceIndex of the group.
+ * Between beginBatch and endBatch, the prices added and removed are only counted in the total, and kept aside
+ * to be merged into the index at once.
+ */
+class PriceAggregate
+{
+    private final PriceIndex prices;
+    private double           sum;
+    private double           compensation;
+
+    private boolean  batching;
+    private double[] addedPrices;
+    private int[]    addedOrdinals;
+    private int      addedCount;
+    private double[] removedPrices;
+    private int[]    removedOrdinals;
+    private int      removedCount;
+
+    private static final int INITIAL_BATCH_CAPACITY = 16;
+
+    /**
+     * Constructor, which keeps the prices of the group in a PriceIndex of its own.
+     */
+    PriceAggregate()
+    {
+        this(new PriceIndex());
+    }
+
+    /**
+     * Constructor.
+     * @param prices The index the prices of the group are kept in, which must be empty.
+     */
+    PriceAggregate(final PriceIndex prices)
+    {
+        this.prices = prices;
+    }
+
+    /**
+     * @param priceInUsd The price of the property, in USD.
+     * @param ordinal The ordinal of the property.
+     */
+    void add(final double priceInUsd, final int ordinal)
+    {
+        if (batching)
+        {
+            if (addedCount == addedPrices.length)
+            {
+                addedPrices   = Arrays.copyOf(addedPrices, addedCount * 2);
+                addedOrdinals = Arrays.copyOf(addedOrdinals, addedCount * 2);
+            }
+            addedPrices[addedCount]   = priceInUsd;
+            addedOrdinals[addedCount] = ordinal;
+            addedCount++;
+        }
+        else
+        {
+            prices.add(priceInUsd, ordinal);
+        }
+        accumulate(priceInUsd);
+    }
+
+    /**
+     * @param priceInUsd The price the property was added with, in USD.
+     * @param ordinal The ordinal of the property, which must be in the group before the batch, if there is one.
+     */
+    void remove(final double priceInUsd, final int ordinal)
+    {
+        if (batching)
+        {
+            if (removedCount == removedPrices.length)
+            {
+                removedPrices   = Arrays.copyOf(removedPrices, removedCount * 2);
+                removedOrdinals = Arrays.copyOf(removedOrdinals, removedCount * 2);
+            }
+            removedPrices[removedCount]   = priceInUsd;
+            removedOrdinals[removedCount] = ordinal;
+            removedCount++;
+            accumulate(-priceInUsd);
+        }
+        else if (prices.remove(priceInUsd, ordinal))
+        {
+            accumulate(-priceInUsd);
+        }
+
+        if (prices.size() == 0)
+        {
+            sum          = 0;
+            compensation = 0;
+        }
+    }
+
+    /**
+     * This method starts a batch of changes: until endBatch, no property may be removed in the batch it was
+     * added in, and the index of the group is not up to date.
+     */
+    void beginBatch()
+    {
+        if (!batching)
+        {
+            batching        = true;
+            addedPrices     = new double[INITIAL_BATCH_CAPACITY];
+            addedOrdinals   = new int[INITIAL_BATCH_CAPACITY];
+            removedPrices   = new double[INITIAL_BATCH_CAPACITY];
+            removedOrdinals = new int[INITIAL_BATCH_CAPACITY];
+        }
+    }
+
+    /**
+     * This method ends a batch of changes, merging the prices removed and then the prices added into the index,
+     * see PriceIndex.addAll.
+     */
+    void endBatch()
+    {
+        if (batching)
+        {
+            prices.removeAll(removedPrices, removedOrdinals, removedCount);
+            prices.addAll(addedPrices, addedOrdinals, addedCount);
+
+            batching        = false;
+            addedPrices     = null;
+            addedOrdinals   = null;
+            addedCount      = 0;
+            removedPrices   = null;
+            removedOrdinals = null;
+            removedCount    = 0;
+
+            if (prices.size() == 0)
+            {
+                sum          = 0;
+                compensation = 0;
+            }
+        }
+    }
+
+    /**
+     * @return The number of properties in the group.
+     */
+    int count()
+    {
+        return prices.size();
+    }
+
+    /**
+     * @return The sum of the prices of the group, in USD.
+     */
+    double totalUsd()
+    {
+        return sum + compensation;
+    }
+
+    /**
+     * @return A snapshot of the statistics of the group.
+     */
+    PriceStats toStats()
+    {
+        return new PriceStats(prices.size(), totalUsd(), prices.minPriceUsd(), prices.maxPriceUsd());
+    }
+
+    /**
+     * This method writes the total of the group and its price index.
+     * @param out The snapshot being written.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    void write(final AgencySnapshot.Output out) throws IOException
+    {
+        out.putDouble(sum);
+        out.putDouble(compensation);
+        prices.write(out);
+    }
+
+    /**
+     * This method reads the total and the price index written by write into an empty group.
+     * @param in The snapshot being read.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    void read(final AgencySnapshot.Input in) throws IOException
+    {
+        sum          = in.getDouble();
+        compensation = in.getDouble();
+        prices.read(in);
+    }
+
+    private void accumulate(final double priceInUsd)
+    {
+        double total;
+        total = sum + priceInUsd;
+
+        if (Math.abs(sum) >= Math.abs(priceInUsd))
+        {
+            compensation += (sum - total) + priceInUsd;
+        }
+        else
+        {
+            compensation += (priceInUsd - total) + sum;
+        }
+        sum = total;
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This interface is notified whenever the price of a property changes, so that the
+ * structures that are ordered by price can be kept up to date.
+ */
+interface PriceChangeListener
+{
+    /**
+     * This method is called after the price of the property has been changed.
+     * @param property The property whose price changed, already holding the new price.
+     * @param oldPriceInUsd The price of the property before the change, in USD.
+     */
+    void priceChanged(Property property, double oldPriceInUsd);
+}
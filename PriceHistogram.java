@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models the distribution of the prices of a group of properties, as a log-linear histogram
+ * in the style of an HDR histogram: every power of two is split into SUB_BUCKETS buckets of equal width, so a
+ * bucket is never wider than 1/SUB_BUCKETS of the prices in it, and prices below one dollar share one bucket.
+ * A price is counted by reading the exponent and the leading bits of its mantissa, and uncounted the same way,
+ * so the histogram follows every add, remove and price change exactly. Its size depends on the range of
+ * the prices, not on their number, and so does the cost of a percentile; two histograms merge by adding
+ * their counts.
+ * <pre>
+ *     bucket of a price p >= 1:  [2^e * (1 + i / SUB_BUCKETS), 2^e * (1 + (i + 1) / SUB_BUCKETS))
+ * </pre>
+ */
+public final class PriceHistogram
+{
+    private long[][] rows;
+    private long     belowOneCount;
+    private long     count;
+
+    public static final int SUB_BUCKET_BITS = 7;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int MANTISSA_BITS = 52;
+    private static final double MIN_PERCENTILE = 0;
+    private static final double MAX_PERCENTILE = 100;
+    private static final double MEDIAN = 50;
+
+    PriceHistogram()
+    {
+        rows = new long[0][];
+    }
+
+    /**
+     * This method counts a price.
+     * @param priceInUsd The price, in USD, which cannot be negative.
+     */
+    void add(final double priceInUsd)
+    {
+        int exponent;
+
+        count++;
+        if (priceInUsd < 1)
+        {
+            belowOneCount++;
+            return;
+        }
+
+        exponent = Math.getExponent(priceInUsd);
+        if (exponent >= rows.length)
+        {
+            rows = Arrays.copyOf(rows, exponent + 1);
+        }
+        if (rows[exponent] == null)
+        {
+            rows[exponent] = new long[SUB_BUCKETS];
+        }
+        rows[exponent][subBucketOf(priceInUsd)]++;
+    }
+
+    /**
+     * This method uncounts a price.
+     * @param priceInUsd The price, in USD, which must have been counted.
+     */
+    void remove(final double priceInUsd)
+    {
+        count--;
+        if (priceInUsd < 1)
+        {
+            belowOneCount--;
+            return;
+        }
+        rows[Math.getExponent(priceInUsd)][subBucketOf(priceInUsd)]--;
+    }
+
+    /**
+     * @return A histogram holding the same counts, which does not follow later changes to this one.
+     */
+    PriceHistogram copy()
+    {
+        PriceHistogram copy;
+        int exponent;
+
+        copy               = new PriceHistogram();
+        copy.rows          = new long[rows.length][];
+        copy.belowOneCount = belowOneCount;
+        copy.count         = count;
+
+        for (exponent = 0; exponent < rows.length; exponent++)
+        {
+            if (rows[exponent] != null)
+            {
+                copy.rows[exponent] = rows[exponent].clone();
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * This method writes the counts of the histogram, row by row.
+     * @param out The snapshot being written.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    void write(final AgencySnapshot.Output out) throws IOException
+    {
+        int exponent;
+        int subBucket;
+
+        out.putLong(count);
+        out.putLong(belowOneCount);
+        out.putInt(rows.length);
+
+        for (exponent = 0; exponent < rows.length; exponent++)
+        {
+            out.putByte((byte) (rows[exponent] == null ? 0 : 1));
+            if (rows[exponent] != null)
+            {
+                for (subBucket = 0; subBucket < SUB_BUCKETS; subBucket++)
+                {
+                    out.putLong(rows[exponent][subBucket]);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method reads the counts written by write into an empty histogram.
+     * @param in The snapshot being read.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    void read(final AgencySnapshot.Input in) throws IOException
+    {
+        int exponent;
+        int subBucket;
+
+        count         = in.getLong();
+        belowOneCount = in.getLong();
+        rows          = new long[in.getInt()][];
+
+        for (exponent = 0; exponent < rows.length; exponent++)
+        {
+            if (in.getByte() != 0)
+            {
+                rows[exponent] = new long[SUB_BUCKETS];
+                for (subBucket = 0; subBucket < SUB_BUCKETS; subBucket++)
+                {
+                    rows[exponent][subBucket] = in.getLong();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param other The histogram to be merged with this one, cannot be null.
+     * @return A new histogram counting the prices of both histograms.
+     */
+    public PriceHistogram merge(final PriceHistogram other)
+    {
+        PriceHistogram merged;
+        int exponent;
+        int subBucket;
+
+        if (other == null)
+        {
+            throw new NullPointerException("Invalid histogram: null");
+        }
+
+        merged = copy();
+        if (other.rows.length > merged.rows.length)
+        {
+            merged.rows = Arrays.copyOf(merged.rows, other.rows.length);
+        }
+        merged.belowOneCount += other.belowOneCount;
+        merged.count         += other.count;
+
+        for (exponent = 0; exponent < other.rows.length; exponent++)
+        {
+            if (other.rows[exponent] != null)
+            {
+                if (merged.rows[exponent] == null)
+                {
+                    merged.rows[exponent] = new long[SUB_BUCKETS];
+                }
+                for (subBucket = 0; subBucket < SUB_BUCKETS; subBucket++)
+                {
+                    merged.rows[exponent][subBucket] += other.rows[exponent][subBucket];
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return The number of prices counted.
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100.
+     * @return The middle of the bucket holding the price at the percentile, in USD, which is within
+     * 1/(2 * SUB_BUCKETS) of the price; zero if that price is below one dollar, and NaN if there are no prices.
+     * @throws IllegalArgumentException If the percentile is not between 0 and 100.
+     */
+    public double getValueAtPercentile(final double percentile)
+    {
+        long rank;
+        long seen;
+        int exponent;
+        int subBucket;
+
+        if (!(percentile >= MIN_PERCENTILE && percentile <= MAX_PERCENTILE))
+        {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+        if (count == 0)
+        {
+            return Double.NaN;
+        }
+
+        rank = Math.max(1, (long) Math.ceil(percentile / MAX_PERCENTILE * count));
+        seen = belowOneCount;
+        if (seen >= rank)
+        {
+            return 0;
+        }
+
+        for (exponent = 0; exponent < rows.length; exponent++)
+        {
+            if (rows[exponent] != null)
+            {
+                for (subBucket = 0; subBucket < SUB_BUCKETS; subBucket++)
+                {
+                    seen += rows[exponent][subBucket];
+                    if (seen >= rank)
+                    {
+                        return middleOf(exponent, subBucket);
+                    }
+                }
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @return The median price, in USD, see getValueAtPercentile.
+     */
+    public double getMedianUsd()
+    {
+        return getValueAtPercentile(MEDIAN);
+    }
+
+    /**
+     * @param minUsd The minimum price, inclusive.
+     * @param maxUsd The maximum price, inclusive.
+     * @return The number of prices in the buckets whose middle is in the range; prices below one dollar
+     * are counted as zero.
+     */
+    public long getCountBetween(final double minUsd, final double maxUsd)
+    {
+        long between;
+        double middle;
+        int exponent;
+        int subBucket;
+
+        between = minUsd <= 0 && maxUsd >= 0 ? belowOneCount : 0;
+
+        for (exponent = 0; exponent < rows.length; exponent++)
+        {
+            if (rows[exponent] != null)
+            {
+                for (subBucket = 0; subBucket < SUB_BUCKETS; subBucket++)
+                {
+                    middle = middleOf(exponent, subBucket);
+                    if (middle >= minUsd && middle <= maxUsd)
+                    {
+                        between += rows[exponent][subBucket];
+                    }
+                }
+            }
+        }
+        return between;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PriceHistogram [" +
+                "count=" + count +
+                ", medianUsd=" + (count == 0 ? Double.NaN : getMedianUsd()) +
+                ']';
+    }
+
+    private static int subBucketOf(final double priceInUsd)
+    {
+        return (int) (Double.doubleToRawLongBits(priceInUsd) >>> (MANTISSA_BITS - SUB_BUCKET_BITS)) &
+                (SUB_BUCKETS - 1);
+    }
+
+    private static double middleOf(final int exponent, final int subBucket)
+    {
+        return Math.scalb(1 + (subBucket + 0.5) / SUB_BUCKETS, exponent);
+    }
+}
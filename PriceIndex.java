@@ -0,0 +1,637 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a sorted index of property prices, kept as a list of sorted blocks of
+ * primitive double prices with the property ordinals alongside them, similar to the leaf level of a B+-tree.
+ * Entries are ordered by price and then by ordinal, so every entry has exactly one position.
+ * Range queries cost O(log n + k), and insertions and removals only shift the entries of a single block.
+ */
+class PriceIndex
+{
+    private double[][] blockPrices;
+    private int[][]    blockOrdinals;
+    private int[]      blockSizes;
+    private int        blockCount;
+    private int        size;
+
+    public static final int BLOCK_CAPACITY = 512;
+    public static final int MERGE_DIVISOR = BLOCK_CAPACITY / 4;
+    private static final int INITIAL_BLOCK_DIRECTORY_SIZE = 4;
+
+    PriceIndex()
+    {
+        blockPrices   = new double[INITIAL_BLOCK_DIRECTORY_SIZE][];
+        blockOrdinals = new int[INITIAL_BLOCK_DIRECTORY_SIZE][];
+        blockSizes    = new int[INITIAL_BLOCK_DIRECTORY_SIZE];
+    }
+
+    /**
+     * This method adds an entry to the index.
+     * @param priceInUsd The price of the property, in USD.
+     * @param ordinal The ordinal of the property.
+     */
+    void add(final double priceInUsd, final int ordinal)
+    {
+        double price;
+        int block;
+        int position;
+        int last;
+
+        price = normalize(priceInUsd);
+
+        if (blockCount == 0)
+        {
+            insertBlock(0, new double[BLOCK_CAPACITY], new int[BLOCK_CAPACITY]);
+            block = 0;
+        }
+        else
+        {
+            block = Math.min(findBlock(price, ordinal), blockCount - 1);
+        }
+
+        if (blockSizes[block] == BLOCK_CAPACITY)
+        {
+            splitBlock(block);
+            last = blockSizes[block] - 1;
+            if (compare(blockPrices[block][last], blockOrdinals[block][last], price, ordinal) < 0)
+            {
+                block++;
+            }
+        }
+
+        position = findPosition(block, price, ordinal);
+        System.arraycopy(blockPrices[block], position, blockPrices[block], position + 1, blockSizes[block] - position);
+        System.arraycopy(blockOrdinals[block], position, blockOrdinals[block], position + 1,
+                blockSizes[block] - position);
+        blockPrices[block][position]   = price;
+        blockOrdinals[block][position] = ordinal;
+        blockSizes[block]++;
+        size++;
+    }
+
+    /**
+     * This method removes an entry from the index.
+     * @param priceInUsd The price the property was indexed with, in USD.
+     * @param ordinal The ordinal of the property.
+     * @return True if the entry was found and removed, false otherwise.
+     */
+    boolean remove(final double priceInUsd, final int ordinal)
+    {
+        double price;
+        int block;
+        int position;
+
+        price = normalize(priceInUsd);
+        block = findBlock(price, ordinal);
+
+        if (block == blockCount)
+        {
+            return false;
+        }
+
+        position = findPosition(block, price, ordinal);
+        if (compare(blockPrices[block][position], blockOrdinals[block][position], price, ordinal) != 0)
+        {
+            return false;
+        }
+
+        System.arraycopy(blockPrices[block], position + 1, blockPrices[block], position,
+                blockSizes[block] - position - 1);
+        System.arraycopy(blockOrdinals[block], position + 1, blockOrdinals[block], position,
+                blockSizes[block] - position - 1);
+        blockSizes[block]--;
+        size--;
+
+        if (blockSizes[block] == 0)
+        {
+            removeBlock(block);
+        }
+        return true;
+    }
+
+    /**
+     * This method adds a batch of entries to the index. A batch holding at least one entry for every
+     * MERGE_DIVISOR entries of the index is sorted and merged with the index into new blocks, in a single pass;
+     * a smaller batch is added one entry at a time, which shifts half a block on average for every entry.
+     * @param prices The prices of the entries, in USD, which are reordered.
+     * @param ordinals The ordinals of the entries, which are reordered along with their prices.
+     * @param count The number of entries in the batch.
+     */
+    void addAll(final double[] prices, final int[] ordinals, final int count)
+    {
+        int i;
+
+        if (count < size / MERGE_DIVISOR)
+        {
+            for (i = 0; i < count; i++)
+            {
+                add(prices[i], ordinals[i]);
+            }
+            return;
+        }
+
+        sort(prices, ordinals, count);
+        merge(prices, ordinals, count, true);
+    }
+
+    /**
+     * This method removes a batch of entries from the index, merging it with the index like addAll.
+     * Entries of the batch that are not in the index are ignored.
+     * @param prices The prices the entries were indexed with, in USD, which are reordered.
+     * @param ordinals The ordinals of the entries, which are reordered along with their prices.
+     * @param count The number of entries in the batch.
+     */
+    void removeAll(final double[] prices, final int[] ordinals, final int count)
+    {
+        int i;
+
+        if (count < size / MERGE_DIVISOR)
+        {
+            for (i = 0; i < count; i++)
+            {
+                remove(prices[i], ordinals[i]);
+            }
+            return;
+        }
+
+        sort(prices, ordinals, count);
+        merge(prices, ordinals, count, false);
+    }
+
+    /**
+     * @param minUsd The minimum price, inclusive.
+     * @param maxUsd The maximum price, inclusive.
+     * @return The number of entries whose price falls in the range.
+     */
+    int countBetween(final double minUsd, final double maxUsd)
+    {
+        int lowBlock;
+        int lowPosition;
+        int highBlock;
+        int highPosition;
+        int count;
+        int block;
+
+        if (!(minUsd <= maxUsd))
+        {
+            return 0;
+        }
+
+        lowBlock     = findBlock(normalize(minUsd), Integer.MIN_VALUE);
+        lowPosition  = lowBlock == blockCount ? 0 : findPosition(lowBlock, normalize(minUsd), Integer.MIN_VALUE);
+        highBlock    = findBlock(normalize(maxUsd), Integer.MAX_VALUE);
+        highPosition = highBlock == blockCount ? 0 : findPosition(highBlock, normalize(maxUsd), Integer.MAX_VALUE);
+
+        if (lowBlock == highBlock)
+        {
+            return highPosition - lowPosition;
+        }
+
+        count = blockSizes[lowBlock] - lowPosition + highPosition;
+        for (block = lowBlock + 1; block < highBlock; block++)
+        {
+            count += blockSizes[block];
+        }
+        return count;
+    }
+
+    /**
+     * This method passes the ordinal of every entry whose price falls in the range to the action,
+     * in ascending order of price.
+     * @param minUsd The minimum price, inclusive.
+     * @param maxUsd The maximum price, inclusive.
+     * @param action The action to be performed for each ordinal.
+     */
+    void forEachBetween(final double minUsd, final double maxUsd, final IntConsumer action)
+    {
+        int lowBlock;
+        int lowPosition;
+        int highBlock;
+        int highPosition;
+        int block;
+        int position;
+        int end;
+
+        if (!(minUsd <= maxUsd))
+        {
+            return;
+        }
+
+        lowBlock     = findBlock(normalize(minUsd), Integer.MIN_VALUE);
+        lowPosition  = lowBlock == blockCount ? 0 : findPosition(lowBlock, normalize(minUsd), Integer.MIN_VALUE);
+        highBlock    = findBlock(normalize(maxUsd), Integer.MAX_VALUE);
+        highPosition = highBlock == blockCount ? 0 : findPosition(highBlock, normalize(maxUsd), Integer.MAX_VALUE);
+
+        position = lowPosition;
+        for (block = lowBlock; block <= highBlock && block < blockCount; block++)
+        {
+            end = block == highBlock ? highPosition : blockSizes[block];
+            for (; position < end; position++)
+            {
+                action.accept(blockOrdinals[block][position]);
+            }
+            position = 0;
+        }
+    }
+
+    /**
+     * This method visits the entries after a position in price order, or in reverse price order,
+     * until the action returns false. Entries with the same price are visited in the order of their ordinals.
+     * @param priceInUsd The price of the position, in USD.
+     * @param ordinal The ordinal of the position; an entry at the position itself is not visited.
+     * @param descending True to visit the entries with lower prices, from the highest, false to visit the entries
+     *                   with higher prices, from the lowest.
+     * @param action The action to be performed for the ordinal of each entry, which returns false to stop.
+     */
+    void forEachAfter(final double priceInUsd, final int ordinal, final boolean descending, final IntPredicate action)
+    {
+        double price;
+        int block;
+        int position;
+
+        price    = normalize(priceInUsd);
+        block    = findBlock(price, ordinal);
+        position = block == blockCount ? 0 : findPosition(block, price, ordinal);
+
+        if (descending)
+        {
+            if (block == blockCount)
+            {
+                block    = blockCount - 1;
+                position = block < 0 ? 0 : blockSizes[block];
+            }
+
+            for (position--; block >= 0; block--)
+            {
+                for (; position >= 0; position--)
+                {
+                    if (!action.test(blockOrdinals[block][position]))
+                    {
+                        return;
+                    }
+                }
+                position = block > 0 ? blockSizes[block - 1] - 1 : 0;
+            }
+            return;
+        }
+
+        if (block < blockCount &&
+                compare(blockPrices[block][position], blockOrdinals[block][position], price, ordinal) == 0)
+        {
+            position++;
+        }
+
+        for (; block < blockCount; block++)
+        {
+            for (; position < blockSizes[block]; position++)
+            {
+                if (!action.test(blockOrdinals[block][position]))
+                {
+                    return;
+                }
+            }
+            position = 0;
+        }
+    }
+
+    /**
+     * @return The lowest price in the index, in USD, or NaN if the index is empty.
+     */
+    double minPriceUsd()
+    {
+        return blockCount == 0 ? Double.NaN : blockPrices[0][0];
+    }
+
+    /**
+     * @return The highest price in the index, in USD, or NaN if the index is empty.
+     */
+    double maxPriceUsd()
+    {
+        return blockCount == 0 ? Double.NaN : blockPrices[blockCount - 1][blockSizes[blockCount - 1] - 1];
+    }
+
+    /**
+     * @return The number of entries in the index.
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * This method writes the entries of the index in their order.
+     * @param out The snapshot being written.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    void write(final AgencySnapshot.Output out) throws IOException
+    {
+        int block;
+        int position;
+
+        out.putInt(size);
+        for (block = 0; block < blockCount; block++)
+        {
+            for (position = 0; position < blockSizes[block]; position++)
+            {
+                out.putDouble(blockPrices[block][position]);
+                out.putInt(blockOrdinals[block][position]);
+            }
+        }
+    }
+
+    /**
+     * This method reads the entries written by write into an empty index, filling every block in turn
+     * instead of searching for the position of each entry.
+     * @param in The snapshot being read.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    void read(final AgencySnapshot.Input in) throws IOException
+    {
+        int entries;
+        int block;
+        int position;
+
+        entries = in.getInt();
+        for (block = 0; entries > 0; block++)
+        {
+            insertBlock(block, new double[BLOCK_CAPACITY], new int[BLOCK_CAPACITY]);
+            blockSizes[block] = Math.min(entries, BLOCK_CAPACITY);
+
+            for (position = 0; position < blockSizes[block]; position++)
+            {
+                blockPrices[block][position]   = in.getDouble();
+                blockOrdinals[block][position] = in.getInt();
+            }
+            entries -= blockSizes[block];
+            size    += blockSizes[block];
+        }
+    }
+
+    /**
+     * Negative zero is folded into positive zero, so that the ordering matches the primitive comparisons
+     * the range queries are defined with.
+     */
+    private static double normalize(final double price)
+    {
+        return price + 0.0;
+    }
+
+    private static int compare(final double price1, final int ordinal1, final double price2, final int ordinal2)
+    {
+        int result;
+        result = Double.compare(price1, price2);
+
+        if (result != 0)
+        {
+            return result;
+        }
+        return Integer.compare(ordinal1, ordinal2);
+    }
+
+    /**
+     * @return The first block whose last entry is not less than the key, or blockCount if there is none.
+     */
+    private int findBlock(final double price, final int ordinal)
+    {
+        int low;
+        int high;
+        int middle;
+        int last;
+
+        low = 0;
+        high = blockCount;
+
+        while (low < high)
+        {
+            middle = (low + high) >>> 1;
+            last = blockSizes[middle] - 1;
+            if (compare(blockPrices[middle][last], blockOrdinals[middle][last], price, ordinal) < 0)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The first position in the block whose entry is not less than the key.
+     */
+    private int findPosition(final int block, final double price, final int ordinal)
+    {
+        int low;
+        int high;
+        int middle;
+
+        low = 0;
+        high = blockSizes[block];
+
+        while (low < high)
+        {
+            middle = (low + high) >>> 1;
+            if (compare(blockPrices[block][middle], blockOrdinals[block][middle], price, ordinal) < 0)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * This method merges a sorted batch with the entries of the index, filling new blocks in order.
+     * @param adding True to add the entries of the batch, false to leave them out.
+     */
+    private void merge(final double[] prices, final int[] ordinals, final int count, final boolean adding)
+    {
+        double[][] oldPrices;
+        int[][] oldOrdinals;
+        int[] oldSizes;
+        int oldCount;
+        int block;
+        int position;
+        int next;
+        int order;
+
+        oldPrices   = blockPrices;
+        oldOrdinals = blockOrdinals;
+        oldSizes    = blockSizes;
+        oldCount    = blockCount;
+
+        blockPrices   = new double[INITIAL_BLOCK_DIRECTORY_SIZE][];
+        blockOrdinals = new int[INITIAL_BLOCK_DIRECTORY_SIZE][];
+        blockSizes    = new int[INITIAL_BLOCK_DIRECTORY_SIZE];
+        blockCount    = 0;
+        size          = 0;
+        next          = 0;
+
+        for (block = 0; block < oldCount; block++)
+        {
+            for (position = 0; position < oldSizes[block]; position++)
+            {
+                order = -1;
+                while (next < count && (order = compare(normalize(prices[next]), ordinals[next],
+                        oldPrices[block][position], oldOrdinals[block][position])) < 0)
+                {
+                    if (adding)
+                    {
+                        append(normalize(prices[next]), ordinals[next]);
+                    }
+                    next++;
+                }
+
+                if (!adding && order == 0)
+                {
+                    next++;
+                }
+                else
+                {
+                    append(oldPrices[block][position], oldOrdinals[block][position]);
+                }
+            }
+        }
+
+        for (; adding && next < count; next++)
+        {
+            append(normalize(prices[next]), ordinals[next]);
+        }
+    }
+
+    /**
+     * This method appends an entry after the last one, which must not be greater, starting a new block when
+     * the last block is full.
+     */
+    private void append(final double price, final int ordinal)
+    {
+        if (blockCount == 0 || blockSizes[blockCount - 1] == BLOCK_CAPACITY)
+        {
+            insertBlock(blockCount, new double[BLOCK_CAPACITY], new int[BLOCK_CAPACITY]);
+        }
+        blockPrices[blockCount - 1][blockSizes[blockCount - 1]]   = price;
+        blockOrdinals[blockCount - 1][blockSizes[blockCount - 1]] = ordinal;
+        blockSizes[blockCount - 1]++;
+        size++;
+    }
+
+    /**
+     * This method sorts the entries of a batch by price and then by ordinal, with a bottom-up merge sort.
+     */
+    private static void sort(final double[] prices, final int[] ordinals, final int count)
+    {
+        double[] fromPrices;
+        int[] fromOrdinals;
+        double[] toPrices;
+        int[] toOrdinals;
+        double[] swapPrices;
+        int[] swapOrdinals;
+        int width;
+        int start;
+        int middle;
+        int end;
+        int left;
+        int right;
+        int i;
+
+        fromPrices   = prices;
+        fromOrdinals = ordinals;
+        toPrices     = new double[count];
+        toOrdinals   = new int[count];
+
+        for (width = 1; width < count; width *= 2)
+        {
+            for (start = 0; start < count; start += 2 * width)
+            {
+                middle = Math.min(start + width, count);
+                end    = Math.min(start + 2 * width, count);
+                left   = start;
+                right  = middle;
+
+                for (i = start; i < end; i++)
+                {
+                    if (right == end || left < middle && compare(normalize(fromPrices[left]), fromOrdinals[left],
+                            normalize(fromPrices[right]), fromOrdinals[right]) <= 0)
+                    {
+                        toPrices[i]   = fromPrices[left];
+                        toOrdinals[i] = fromOrdinals[left];
+                        left++;
+                    }
+                    else
+                    {
+                        toPrices[i]   = fromPrices[right];
+                        toOrdinals[i] = fromOrdinals[right];
+                        right++;
+                    }
+                }
+            }
+
+            swapPrices   = fromPrices;
+            swapOrdinals = fromOrdinals;
+            fromPrices   = toPrices;
+            fromOrdinals = toOrdinals;
+            toPrices     = swapPrices;
+            toOrdinals   = swapOrdinals;
+        }
+
+        if (fromPrices != prices)
+        {
+            System.arraycopy(fromPrices, 0, prices, 0, count);
+            System.arraycopy(fromOrdinals, 0, ordinals, 0, count);
+        }
+    }
+
+    private void splitBlock(final int block)
+    {
+        double[] upperPrices;
+        int[] upperOrdinals;
+        int half;
+
+        upperPrices   = new double[BLOCK_CAPACITY];
+        upperOrdinals = new int[BLOCK_CAPACITY];
+        half = blockSizes[block] / 2;
+
+        System.arraycopy(blockPrices[block], half, upperPrices, 0, blockSizes[block] - half);
+        System.arraycopy(blockOrdinals[block], half, upperOrdinals, 0, blockSizes[block] - half);
+        insertBlock(block + 1, upperPrices, upperOrdinals);
+        blockSizes[block + 1] = blockSizes[block] - half;
+        blockSizes[block] = half;
+    }
+
+    private void insertBlock(final int block, final double[] prices, final int[] ordinals)
+    {
+        if (blockCount == blockSizes.length)
+        {
+            blockPrices   = Arrays.copyOf(blockPrices, blockCount * 2);
+            blockOrdinals = Arrays.copyOf(blockOrdinals, blockCount * 2);
+            blockSizes    = Arrays.copyOf(blockSizes, blockCount * 2);
+        }
+
+        System.arraycopy(blockPrices, block, blockPrices, block + 1, blockCount - block);
+        System.arraycopy(blockOrdinals, block, blockOrdinals, block + 1, blockCount - block);
+        System.arraycopy(blockSizes, block, blockSizes, block + 1, blockCount - block);
+        blockPrices[block]   = prices;
+        blockOrdinals[block] = ordinals;
+        blockSizes[block]    = 0;
+        blockCount++;
+    }
+
+    private void removeBlock(final int block)
+    {
+        System.arraycopy(blockPrices, block + 1, blockPrices, block, blockCount - block - 1);
+        System.arraycopy(blockOrdinals, block + 1, blockOrdinals, block, blockCount - block - 1);
+        System.arraycopy(blockSizes, block + 1, blockSizes, block, blockCount - block - 1);
+        blockCount--;
+        blockPrices[blockCount]   = null;
+        blockOrdinals[blockCount] = null;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a snapshot of the price statistics of a group of properties: how many there are,
+ * their total, average, lowest and highest price. The prices of an empty group are NaN, and its total is zero.
+ */
+public final class PriceStats
+{
+    private final int    count;
+    private final double totalUsd;
+    private final double minUsd;
+    private final double maxUsd;
+
+    PriceStats(final int count, final double totalUsd, final double minUsd, final double maxUsd)
+    {
+        this.count    = count;
+        this.totalUsd = totalUsd;
+        this.minUsd   = minUsd;
+        this.maxUsd   = maxUsd;
+    }
+
+    /**
+     * @return The number of properties.
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return The total price of the properties, in USD.
+     */
+    public double getTotalUsd()
+    {
+        return totalUsd;
+    }
+
+    /**
+     * @return The average price of the properties, in USD, or NaN if there are none.
+     */
+    public double getAverageUsd()
+    {
+        return count == 0 ? Double.NaN : totalUsd / count;
+    }
+
+    /**
+     * @return The lowest price of the properties, in USD, or NaN if there are none.
+     */
+    public double getMinUsd()
+    {
+        return minUsd;
+    }
+
+    /**
+     * @return The highest price of the properties, in USD, or NaN if there are none.
+     */
+    public double getMaxUsd()
+    {
+        return maxUsd;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PriceStats [" +
+                "count=" + count +
+                ", totalUsd=" + totalUsd +
+                ", minUsd=" + minUsd +
+                ", maxUsd=" + maxUsd +
+                ']';
+    }
+}
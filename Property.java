@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 /**
  * @author Tian Lan
  * @version 2.0
@@ -10,10 +12,15 @@ public class Property
     private final String  propertyType;
     private final String  propertyId;
 
+    private volatile PriceChangeListener[] priceChangeListeners;
+    private int                            viewOrdinal;
+    private int                            viewGeneration;
+
     private static final int      VALID_MIN_PRICE_IN_USD = 0;
     private static final int      VALID_MIN_PROPERTY_ID_LENGTH = 1;
     private static final int      VALID_MAX_PROPERTY_ID_LENGTH = 6;
     private static final String[] VALID_PROPERTY_TYPES = {"residence", "commercial", "retail"};
+    private static final PriceChangeListener[] NO_PRICE_CHANGE_LISTENERS = {};
 
     /**
      * Constructor, valid all property information before initialize the object.
@@ -24,6 +31,39 @@ public class Property
      * @throws IllegalArgumentException If the parameter values are not valid.
      */
     Property(final double priceInUsd, final Address address, final String propertyType, final String propertyId)
+    {
+        this(priceInUsd, address, propertyType, propertyId, true);
+    }
+
+    /**
+     * Constructor, which skips the validation when it recreates a property whose information
+     * was already validated, such as a view of a columnar agency.
+     * @param priceInUsd The price of the property, in USD.
+     * @param address The address of the property.
+     * @param propertyType The property type of the property.
+     * @param propertyId The ID of the property.
+     * @param validate True if the property information must be validated, false otherwise.
+     * @throws IllegalArgumentException If the parameter values are validated and are not valid.
+     */
+    Property(final double priceInUsd, final Address address, final String propertyType, final String propertyId,
+             final boolean validate)
+    {
+        if(validate)
+        {
+            validate(priceInUsd, address, propertyType, propertyId);
+        }
+
+        this.priceInUsd    = priceInUsd;
+        this.address       = address;
+        this.propertyType  = propertyType;
+        this.propertyId    = propertyId;
+
+        priceChangeListeners = NO_PRICE_CHANGE_LISTENERS;
+        viewOrdinal          = PropertyTable.NO_ORDINAL;
+    }
+
+    private static void validate(final double priceInUsd, final Address address, final String propertyType,
+                                 final String propertyId)
     {
         if(priceInUsd < VALID_MIN_PRICE_IN_USD)
         {
@@ -67,11 +107,49 @@ public class Property
         {
             throw new NullPointerException("Invalid property id: null");
         }
+    }
 
-        this.priceInUsd    = priceInUsd;
-        this.address       = address;
-        this.propertyType  = propertyType;
-        this.propertyId    = propertyId;
+    /**
+     * @param propertyType The property type to be matched (case-insensitive).
+     * @return The index of the valid property type that matches the parameter, or -1 if there is none.
+     */
+    static int typeCode(final String propertyType)
+    {
+        int code;
+
+        for(code = 0; code < VALID_PROPERTY_TYPES.length; code++)
+        {
+            if(VALID_PROPERTY_TYPES[code].equalsIgnoreCase(propertyType))
+            {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param typeCode The index of a valid property type, as returned by typeCode.
+     * @return The valid property type, in lower case.
+     */
+    static String typeName(final int typeCode)
+    {
+        return VALID_PROPERTY_TYPES[typeCode];
+    }
+
+    /**
+     * @param propertyType The property type to be matched (case-insensitive).
+     * @return The valid property type, in lower case, that matches the parameter, or null if there is none.
+     */
+    static String canonicalType(final String propertyType)
+    {
+        int code;
+        code = typeCode(propertyType);
+
+        if(code < 0)
+        {
+            return null;
+        }
+        return VALID_PROPERTY_TYPES[code];
     }
 
     /**
@@ -112,7 +190,81 @@ public class Property
      */
     public void setPriceUsd(final double priceInUsdToSet)
     {
+        double oldPriceInUsd;
+        oldPriceInUsd = this.priceInUsd;
         this.priceInUsd = priceInUsdToSet;
+
+        if (Double.compare(oldPriceInUsd, priceInUsdToSet) != 0)
+        {
+            for (PriceChangeListener listener : priceChangeListeners)
+            {
+                listener.priceChanged(this, oldPriceInUsd);
+            }
+        }
+    }
+
+    /**
+     * This method ties a view to the ordinal it was created from, see PropertyTable.isCurrentView.
+     * @param ordinal The ordinal of the property the view was created from.
+     * @param generation The generation of the ordinal when the view was created.
+     */
+    void bindView(final int ordinal, final int generation)
+    {
+        viewOrdinal    = ordinal;
+        viewGeneration = generation;
+    }
+
+    /**
+     * @return The ordinal of the property this view was created from, or PropertyTable.NO_ORDINAL if this
+     * property is not a view.
+     */
+    int getViewOrdinal()
+    {
+        return viewOrdinal;
+    }
+
+    /**
+     * @return The generation of the ordinal when this view was created.
+     */
+    int getViewGeneration()
+    {
+        return viewGeneration;
+    }
+
+    /**
+     * This method registers a listener that is notified after every price change.
+     * The listeners are kept in a volatile copy-on-write array, so that notifying them never allocates, and
+     * a thread changing the price sees every listener registered before it, without taking a lock.
+     * @param listener The listener to be added.
+     */
+    synchronized void addPriceChangeListener(final PriceChangeListener listener)
+    {
+        PriceChangeListener[] listeners;
+        listeners = Arrays.copyOf(priceChangeListeners, priceChangeListeners.length + 1);
+        listeners[priceChangeListeners.length] = listener;
+        priceChangeListeners = listeners;
+    }
+
+    /**
+     * This method unregisters a listener previously added with addPriceChangeListener.
+     * @param listener The listener to be removed.
+     */
+    synchronized void removePriceChangeListener(final PriceChangeListener listener)
+    {
+        PriceChangeListener[] listeners;
+        int i;
+
+        for (i = 0; i < priceChangeListeners.length; i++)
+        {
+            if (priceChangeListeners[i] == listener)
+            {
+                listeners = new PriceChangeListener[priceChangeListeners.length - 1];
+                System.arraycopy(priceChangeListeners, 0, listeners, 0, i);
+                System.arraycopy(priceChangeListeners, i + 1, listeners, i, listeners.length - i);
+                priceChangeListeners = listeners;
+                return;
+            }
+        }
     }
 
     /**
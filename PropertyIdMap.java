@@ -0,0 +1,216 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a map from property IDs to ordinals. An ID that PropertyIds can pack is kept as its packed
+ * long, in an open-addressing table with linear probing and the ordinals in a parallel int array, so that
+ * an entry takes twelve bytes per slot instead of a HashMap node, a boxed Integer and a bucket, and a lookup
+ * neither allocates nor hashes a String. A removed entry is filled by shifting back the entries probed past it,
+ * so that no slot is ever marked as deleted. The rare IDs that cannot be packed are kept in a HashMap.
+ */
+final class PropertyIdMap
+{
+    private long[] keys;
+    private int[]  ordinals;
+    private int    size;
+
+    private final Map<String, Integer> unpackedOrdinals;
+
+    private static final long EMPTY = 0L;
+    private static final int  INITIAL_SLOTS = 16;
+    private static final int  MAX_LOAD_NUMERATOR = 3;
+    private static final int  MAX_LOAD_DENOMINATOR = 4;
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    PropertyIdMap()
+    {
+        keys             = new long[INITIAL_SLOTS];
+        ordinals         = new int[INITIAL_SLOTS];
+        unpackedOrdinals = new HashMap<>();
+    }
+
+    /**
+     * @param propertyId The property ID to be looked up.
+     * @return The ordinal of the ID, or PropertyTable.NO_ORDINAL if it is not in the map.
+     */
+    int get(final String propertyId)
+    {
+        long key;
+        int slot;
+        Integer ordinal;
+
+        key = keyOf(propertyId);
+        if (key == PropertyIds.NOT_PACKABLE)
+        {
+            ordinal = unpackedOrdinals.get(propertyId);
+            return ordinal == null ? PropertyTable.NO_ORDINAL : ordinal;
+        }
+
+        for (slot = slotOf(key); keys[slot] != EMPTY; slot = (slot + 1) & (keys.length - 1))
+        {
+            if (keys[slot] == key)
+            {
+                return ordinals[slot];
+            }
+        }
+        return PropertyTable.NO_ORDINAL;
+    }
+
+    /**
+     * This method maps the property ID to the ordinal, replacing any ordinal it was mapped to.
+     * @param propertyId The property ID, cannot be null.
+     * @param ordinal The ordinal of the property.
+     */
+    void put(final String propertyId, final int ordinal)
+    {
+        long key;
+        int slot;
+
+        key = keyOf(propertyId);
+        if (key == PropertyIds.NOT_PACKABLE)
+        {
+            unpackedOrdinals.put(propertyId, ordinal);
+            return;
+        }
+
+        for (slot = slotOf(key); keys[slot] != EMPTY; slot = (slot + 1) & (keys.length - 1))
+        {
+            if (keys[slot] == key)
+            {
+                ordinals[slot] = ordinal;
+                return;
+            }
+        }
+
+        keys[slot]     = key;
+        ordinals[slot] = ordinal;
+        size++;
+
+        if ((long) size * MAX_LOAD_DENOMINATOR > (long) keys.length * MAX_LOAD_NUMERATOR)
+        {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * This method removes the property ID from the map, if it is in it. The entries after it in its probe
+     * sequence are moved back into the freed slot when their own probe sequence passes through it.
+     * @param propertyId The property ID to be removed.
+     */
+    void remove(final String propertyId)
+    {
+        long key;
+        int slot;
+        int next;
+
+        key = keyOf(propertyId);
+        if (key == PropertyIds.NOT_PACKABLE)
+        {
+            unpackedOrdinals.remove(propertyId);
+            return;
+        }
+
+        for (slot = slotOf(key); keys[slot] != key; slot = (slot + 1) & (keys.length - 1))
+        {
+            if (keys[slot] == EMPTY)
+            {
+                return;
+            }
+        }
+        size--;
+
+        for (next = (slot + 1) & (keys.length - 1); keys[next] != EMPTY; next = (next + 1) & (keys.length - 1))
+        {
+            if (((next - slotOf(keys[next])) & (keys.length - 1)) >= ((next - slot) & (keys.length - 1)))
+            {
+                keys[slot]     = keys[next];
+                ordinals[slot] = ordinals[next];
+                slot           = next;
+            }
+        }
+        keys[slot] = EMPTY;
+    }
+
+    /**
+     * @return The number of property IDs in the map.
+     */
+    int size()
+    {
+        return size + unpackedOrdinals.size();
+    }
+
+    /**
+     * This method makes room for a number of property IDs, so that putting them does not rehash the table
+     * more than once.
+     * @param expectedSize The number of property IDs the map is about to hold.
+     */
+    void reserve(final int expectedSize)
+    {
+        int slots;
+
+        slots = keys.length;
+        while ((long) expectedSize * MAX_LOAD_DENOMINATOR > (long) slots * MAX_LOAD_NUMERATOR)
+        {
+            slots *= 2;
+        }
+
+        if (slots > keys.length)
+        {
+            rehash(slots);
+        }
+    }
+
+    /**
+     * @return The packed ID, or NOT_PACKABLE for a null or empty ID, or one PropertyIds cannot pack;
+     * a packed ID is positive, so that zero marks an empty slot.
+     */
+    private static long keyOf(final String propertyId)
+    {
+        if (propertyId == null || propertyId.isEmpty())
+        {
+            return PropertyIds.NOT_PACKABLE;
+        }
+        return PropertyIds.pack(propertyId);
+    }
+
+    /**
+     * The packed ID is multiplied by a 64-bit odd constant, and the high bits are folded into the low ones,
+     * since the characters of an ID fill the low bits of the packed ID first.
+     */
+    private int slotOf(final long key)
+    {
+        long hash;
+        hash = key * HASH_MULTIPLIER;
+
+        return (int) (hash ^ (hash >>> 32)) & (keys.length - 1);
+    }
+
+    private void rehash(final int slots)
+    {
+        long[] oldKeys;
+        int[] oldOrdinals;
+        int oldSlot;
+        int slot;
+
+        oldKeys     = keys;
+        oldOrdinals = ordinals;
+        keys        = new long[slots];
+        ordinals    = new int[slots];
+
+        for (oldSlot = 0; oldSlot < oldKeys.length; oldSlot++)
+        {
+            if (oldKeys[oldSlot] != EMPTY)
+            {
+                slot = slotOf(oldKeys[oldSlot]);
+                while (keys[slot] != EMPTY)
+                {
+                    slot = (slot + 1) & (keys.length - 1);
+                }
+                keys[slot]     = oldKeys[oldSlot];
+                ordinals[slot] = oldOrdinals[oldSlot];
+            }
+        }
+    }
+}
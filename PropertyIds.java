@@ -0,0 +1,75 @@
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class packs property IDs into longs. An ID has at most six characters, so when each character
+ * is in the Latin-1 range it fits losslessly into six 9-bit groups, each holding the character plus one;
+ * the first character goes into the highest group and unused leading groups stay zero.
+ */
+final class PropertyIds
+{
+    public static final long NOT_PACKABLE = -1L;
+
+    private static final int MAX_PACKED_LENGTH = 6;
+    private static final int BITS_PER_CHARACTER = 9;
+    private static final int MAX_PACKED_CHARACTER = 0xFF;
+    private static final long GROUP_MASK = (1L << BITS_PER_CHARACTER) - 1;
+
+    private PropertyIds()
+    {
+    }
+
+    /**
+     * @param propertyId The property ID to be packed.
+     * @return The packed ID, which is positive, or NOT_PACKABLE if the ID is too long
+     * or has a character outside the Latin-1 range.
+     */
+    static long pack(final String propertyId)
+    {
+        long packed;
+        int i;
+        char character;
+
+        if (propertyId.length() > MAX_PACKED_LENGTH)
+        {
+            return NOT_PACKABLE;
+        }
+
+        packed = 0;
+        for (i = 0; i < propertyId.length(); i++)
+        {
+            character = propertyId.charAt(i);
+            if (character > MAX_PACKED_CHARACTER)
+            {
+                return NOT_PACKABLE;
+            }
+            packed = (packed << BITS_PER_CHARACTER) | (character + 1);
+        }
+        return packed;
+    }
+
+    /**
+     * @param packed An ID returned by pack.
+     * @return The property ID that was packed.
+     */
+    static String unpack(final long packed)
+    {
+        char[] characters;
+        int length;
+        int group;
+        long value;
+
+        characters = new char[MAX_PACKED_LENGTH];
+        length = 0;
+
+        for (group = MAX_PACKED_LENGTH - 1; group >= 0; group--)
+        {
+            value = (packed >>> (group * BITS_PER_CHARACTER)) & GROUP_MASK;
+            if (value != 0)
+            {
+                characters[length] = (char) (value - 1);
+                length++;
+            }
+        }
+        return new String(characters, 0, length);
+    }
+}
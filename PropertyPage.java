@@ -0,0 +1,42 @@
+import java.util.ArrayList;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models one page of the ordered results of a PropertyQuery, with the cursor of the next page.
+ */
+public final class PropertyPage
+{
+    private final ArrayList<Property> properties;
+    private final PageCursor          nextCursor;
+
+    PropertyPage(final ArrayList<Property> properties, final PageCursor nextCursor)
+    {
+        this.properties = properties;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return An ArrayList of the properties of the page in order, which is empty if there are none.
+     */
+    public ArrayList<Property> getProperties()
+    {
+        return properties;
+    }
+
+    /**
+     * @return The cursor to pass to PropertyQuery.after for the next page, or null if this is the last page.
+     */
+    public PageCursor getNextCursor()
+    {
+        return nextCursor;
+    }
+
+    /**
+     * @return True if there are properties after this page, false otherwise.
+     */
+    public boolean hasNextPage()
+    {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,570 @@
+import java.util.Objects;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a compound search over an agency, such as
+ * "residences on elm street with 3 to 5 bedrooms under $2M", built up one predicate at a time:
+ * <pre>
+ *     new PropertyQuery().ofType("residence").onStreet("elm street").bedroomsBetween(3, 5).priceBetween(0, 2000000)
+ * </pre>
+ * Two queries are equal when they match the same properties in the same order, ignoring the case of names,
+ * so that equal queries can share a cached result.
+ * Predicates that are not set match every property. The agency answers the query with a single traversal
+ * of its most selective index, checking the remaining predicates on each candidate.
+ * A query can also order and limit its results, and be paged through with the cursor of each page:
+ * <pre>
+ *     query = new PropertyQuery().inCity("vancouver").with(Amenity.SWIMMING_POOL).orderBy(SortKey.PRICE).limit(20)
+ *     page  = agency.findPage(query)
+ *     next  = agency.findPage(query.after(page.getNextCursor()))
+ * </pre>
+ */
+public final class PropertyQuery
+{
+    private String        propertyType;
+    private String        streetName;
+    private String        cityName;
+    private String        postalPrefix;
+    private double        minPriceUsd;
+    private double        maxPriceUsd;
+    private int           minBedrooms;
+    private int           maxBedrooms;
+    private int           minSquareFootage;
+    private AmenityFilter amenityFilter;
+    private boolean       hasPriceRange;
+    private boolean       hasBedroomRange;
+    private boolean       hasMinSquareFootage;
+    private SortKey       sortKey;
+    private boolean       descending;
+    private int           limit;
+    private PageCursor    cursor;
+
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+    private static final int VALID_MIN_LIMIT = 1;
+
+    public PropertyQuery()
+    {
+        minPriceUsd = Double.NEGATIVE_INFINITY;
+        maxPriceUsd = Double.POSITIVE_INFINITY;
+        limit       = NO_LIMIT;
+    }
+
+    /**
+     * @param type The property type to be matched (case-insensitive).
+     * @return This query.
+     * @throws NullPointerException If the type is null.
+     */
+    public PropertyQuery ofType(final String type)
+    {
+        if (type == null)
+        {
+            throw new NullPointerException("Invalid property type: null");
+        }
+        this.propertyType = type;
+        return this;
+    }
+
+    /**
+     * @param street The street name to be matched (case-insensitive).
+     * @return This query.
+     * @throws NullPointerException If the street name is null.
+     */
+    public PropertyQuery onStreet(final String street)
+    {
+        if (street == null)
+        {
+            throw new NullPointerException("Invalid street name: null");
+        }
+        this.streetName = street;
+        return this;
+    }
+
+    /**
+     * @param city The city name to be matched (case-insensitive).
+     * @return This query.
+     * @throws NullPointerException If the city name is null.
+     */
+    public PropertyQuery inCity(final String city)
+    {
+        if (city == null)
+        {
+            throw new NullPointerException("Invalid city: null");
+        }
+        this.cityName = city;
+        return this;
+    }
+
+    /**
+     * This predicate matches an area, such as "V7N" for a Canadian forward sortation area or "902" for
+     * the ZIP codes 902xx. Case, spaces and dashes are ignored, see Address.normalizePostalCode.
+     * @param prefix The start of the postal codes to be matched.
+     * @return This query.
+     * @throws NullPointerException If the prefix is null.
+     */
+    public PropertyQuery inPostalArea(final String prefix)
+    {
+        if (prefix == null)
+        {
+            throw new NullPointerException("Invalid postal code prefix: null");
+        }
+        this.postalPrefix = Address.normalizePostalCode(prefix);
+        return this;
+    }
+
+    /**
+     * @param minUsd The minimum price of the property, in USD, inclusive.
+     * @param maxUsd The maximum price of the property, in USD, inclusive.
+     * @return This query.
+     */
+    public PropertyQuery priceBetween(final double minUsd, final double maxUsd)
+    {
+        this.minPriceUsd   = minUsd;
+        this.maxPriceUsd   = maxUsd;
+        this.hasPriceRange = true;
+        return this;
+    }
+
+    /**
+     * This predicate only matches Residence properties.
+     * @param minimum The minimum number of bedrooms, inclusive.
+     * @param maximum The maximum number of bedrooms, inclusive.
+     * @return This query.
+     */
+    public PropertyQuery bedroomsBetween(final int minimum, final int maximum)
+    {
+        this.minBedrooms     = minimum;
+        this.maxBedrooms     = maximum;
+        this.hasBedroomRange = true;
+        return this;
+    }
+
+    /**
+     * This predicate only matches Retail properties.
+     * @param squareFootage The minimum square footage, inclusive.
+     * @return This query.
+     */
+    public PropertyQuery minSquareFootage(final int squareFootage)
+    {
+        this.minSquareFootage    = squareFootage;
+        this.hasMinSquareFootage = true;
+        return this;
+    }
+
+    /**
+     * @param filter The combination of amenities to be matched; it is combined with any earlier filter by AND.
+     * @return This query.
+     * @throws NullPointerException If the filter is null.
+     */
+    public PropertyQuery withAmenities(final AmenityFilter filter)
+    {
+        if (filter == null)
+        {
+            throw new NullPointerException("Invalid amenity filter: null");
+        }
+        this.amenityFilter = amenityFilter == null ? filter : amenityFilter.and(filter);
+        return this;
+    }
+
+    /**
+     * @param amenity The amenity to be matched; it is combined with any earlier filter by AND.
+     * @return This query.
+     */
+    public PropertyQuery with(final Amenity amenity)
+    {
+        return withAmenities(AmenityFilter.has(amenity));
+    }
+
+    /**
+     * This method orders the results from the lowest value of the key to the highest.
+     * @param key The key to be ordered by.
+     * @return This query.
+     * @throws NullPointerException If the key is null.
+     */
+    public PropertyQuery orderBy(final SortKey key)
+    {
+        return orderBy(key, false);
+    }
+
+    /**
+     * This method orders the results from the highest value of the key to the lowest.
+     * @param key The key to be ordered by.
+     * @return This query.
+     * @throws NullPointerException If the key is null.
+     */
+    public PropertyQuery orderByDescending(final SortKey key)
+    {
+        return orderBy(key, true);
+    }
+
+    /**
+     * @param maximum The maximum number of results, or of results per page.
+     * @return This query.
+     * @throws IllegalArgumentException If the maximum is less than one.
+     */
+    public PropertyQuery limit(final int maximum)
+    {
+        if (maximum < VALID_MIN_LIMIT)
+        {
+            throw new IllegalArgumentException("Invalid limit: " + maximum);
+        }
+        this.limit = maximum;
+        return this;
+    }
+
+    /**
+     * This method starts the results after the last property of a page.
+     * @param pageCursor The cursor of the page, from PropertyPage.getNextCursor, which must belong to the same order.
+     * @return This query.
+     * @throws NullPointerException If the cursor is null.
+     */
+    public PropertyQuery after(final PageCursor pageCursor)
+    {
+        if (pageCursor == null)
+        {
+            throw new NullPointerException("Invalid cursor: null");
+        }
+        this.cursor = pageCursor;
+        return this;
+    }
+
+    private PropertyQuery orderBy(final SortKey key, final boolean isDescending)
+    {
+        if (key == null)
+        {
+            throw new NullPointerException("Invalid sort key: null");
+        }
+        this.sortKey    = key;
+        this.descending = isDescending;
+        return this;
+    }
+
+    /**
+     * @return A query with the same predicates, order, limit and cursor, which does not follow later changes
+     * to this one.
+     */
+    PropertyQuery copy()
+    {
+        PropertyQuery copy;
+        copy = new PropertyQuery();
+
+        copy.propertyType        = propertyType;
+        copy.streetName          = streetName;
+        copy.cityName            = cityName;
+        copy.postalPrefix        = postalPrefix;
+        copy.minPriceUsd         = minPriceUsd;
+        copy.maxPriceUsd         = maxPriceUsd;
+        copy.minBedrooms         = minBedrooms;
+        copy.maxBedrooms         = maxBedrooms;
+        copy.minSquareFootage    = minSquareFootage;
+        copy.amenityFilter       = amenityFilter;
+        copy.hasPriceRange       = hasPriceRange;
+        copy.hasBedroomRange     = hasBedroomRange;
+        copy.hasMinSquareFootage = hasMinSquareFootage;
+        copy.sortKey             = sortKey;
+        copy.descending          = descending;
+        copy.limit               = limit;
+        copy.cursor              = cursor;
+        return copy;
+    }
+
+    /**
+     * @param property The property to be checked.
+     * @return True if the property satisfies every predicate of this query, false otherwise.
+     */
+    public boolean matches(final Property property)
+    {
+        if (property == null)
+        {
+            return false;
+        }
+        if (hasPriceRange && !(property.getPriceUsd() >= minPriceUsd && property.getPriceUsd() <= maxPriceUsd))
+        {
+            return false;
+        }
+        if (propertyType != null && !property.getType().equalsIgnoreCase(propertyType))
+        {
+            return false;
+        }
+        if (hasBedroomRange && !(property instanceof Residence &&
+                ((Residence) property).getNumberOfBedrooms() >= minBedrooms &&
+                ((Residence) property).getNumberOfBedrooms() <= maxBedrooms))
+        {
+            return false;
+        }
+        if (hasMinSquareFootage && !(property instanceof Retail &&
+                ((Retail) property).getSquareFootage() >= minSquareFootage))
+        {
+            return false;
+        }
+        if (amenityFilter != null && !amenityFilter.matches(property))
+        {
+            return false;
+        }
+        if (streetName != null && !property.getAddress().getStreetName().equalsIgnoreCase(streetName))
+        {
+            return false;
+        }
+        if (postalPrefix != null &&
+                !Address.normalizePostalCode(property.getAddress().getPostalCode()).startsWith(postalPrefix))
+        {
+            return false;
+        }
+        return cityName == null || property.getAddress().getCity().equalsIgnoreCase(cityName);
+    }
+
+    /**
+     * This method checks the predicates field by field, so that the property never has to be materialized.
+     * @param table The table holding the property.
+     * @param ordinal The ordinal to be checked.
+     * @return True if a property is stored under the ordinal and satisfies every predicate of this query,
+     * false otherwise.
+     */
+    boolean matches(final PropertyTable table, final int ordinal)
+    {
+        double priceInUsd;
+
+        if (hasPriceRange && table.getKind(ordinal) != PropertyTable.FREE)
+        {
+            priceInUsd = table.getPriceUsd(ordinal);
+            if (!(priceInUsd >= minPriceUsd && priceInUsd <= maxPriceUsd))
+            {
+                return false;
+            }
+        }
+        return matchesApartFromPrice(table, ordinal);
+    }
+
+    /**
+     * @param table The table holding the property.
+     * @param ordinal The ordinal to be checked.
+     * @return True if a property is stored under the ordinal and satisfies every predicate of this query
+     * but the price range, false otherwise.
+     */
+    boolean matchesApartFromPrice(final PropertyTable table, final int ordinal)
+    {
+        byte kind;
+
+        kind = table.getKind(ordinal);
+        if (kind == PropertyTable.FREE)
+        {
+            return false;
+        }
+        if (propertyType != null && !table.getType(ordinal).equalsIgnoreCase(propertyType))
+        {
+            return false;
+        }
+        if (hasBedroomRange && !(kind == PropertyTable.RESIDENCE &&
+                table.getNumberOfBedrooms(ordinal) >= minBedrooms &&
+                table.getNumberOfBedrooms(ordinal) <= maxBedrooms))
+        {
+            return false;
+        }
+        if (hasMinSquareFootage && !(kind == PropertyTable.RETAIL &&
+                table.getSquareFootage(ordinal) >= minSquareFootage))
+        {
+            return false;
+        }
+        if (amenityFilter != null && !amenityFilter.matches(table, ordinal))
+        {
+            return false;
+        }
+        if (streetName != null && !table.getStreetName(ordinal).equalsIgnoreCase(streetName))
+        {
+            return false;
+        }
+        if (postalPrefix != null && !Address.normalizePostalCode(table.getPostalCode(ordinal)).startsWith(postalPrefix))
+        {
+            return false;
+        }
+        return cityName == null || table.getCity(ordinal).equalsIgnoreCase(cityName);
+    }
+
+    String getPropertyType()
+    {
+        return propertyType;
+    }
+
+    String getStreetName()
+    {
+        return streetName;
+    }
+
+    String getCityName()
+    {
+        return cityName;
+    }
+
+    /**
+     * @return The normalized postal code prefix, or null if the predicate is not set.
+     */
+    String getPostalPrefix()
+    {
+        return postalPrefix;
+    }
+
+    boolean hasPriceRange()
+    {
+        return hasPriceRange;
+    }
+
+    double getMinPriceUsd()
+    {
+        return minPriceUsd;
+    }
+
+    double getMaxPriceUsd()
+    {
+        return maxPriceUsd;
+    }
+
+    AmenityFilter getAmenityFilter()
+    {
+        return amenityFilter;
+    }
+
+    /**
+     * @return The key the results are ordered by, or null if they are in the order of the agency.
+     */
+    SortKey getSortKey()
+    {
+        return sortKey;
+    }
+
+    boolean isDescending()
+    {
+        return descending;
+    }
+
+    int getLimit()
+    {
+        return limit;
+    }
+
+    PageCursor getCursor()
+    {
+        return cursor;
+    }
+
+    /**
+     * @return True if a change to the price of a property can change the result of this query, false otherwise.
+     */
+    boolean dependsOnPrice()
+    {
+        return hasPriceRange || sortKey == SortKey.PRICE;
+    }
+
+    /**
+     * @return True if the results are ordered, limited or paged, false if they are simply every match.
+     */
+    boolean isOrdered()
+    {
+        return sortKey != null || limit != NO_LIMIT || cursor != null;
+    }
+
+    /**
+     * @param object The object to be compared with.
+     * @return True if the object is a query with the same predicates, order, limit and cursor, false otherwise.
+     */
+    @Override
+    public boolean equals(final Object object)
+    {
+        PropertyQuery other;
+
+        if (this == object)
+        {
+            return true;
+        }
+        if (!(object instanceof PropertyQuery))
+        {
+            return false;
+        }
+
+        other = (PropertyQuery) object;
+        return Objects.equals(fold(propertyType), fold(other.propertyType)) &&
+                Objects.equals(fold(streetName), fold(other.streetName)) &&
+                Objects.equals(fold(cityName), fold(other.cityName)) &&
+                Objects.equals(postalPrefix, other.postalPrefix) &&
+                hasPriceRange == other.hasPriceRange &&
+                Double.compare(minPriceUsd, other.minPriceUsd) == 0 &&
+                Double.compare(maxPriceUsd, other.maxPriceUsd) == 0 &&
+                hasBedroomRange == other.hasBedroomRange &&
+                minBedrooms == other.minBedrooms &&
+                maxBedrooms == other.maxBedrooms &&
+                hasMinSquareFootage == other.hasMinSquareFootage &&
+                minSquareFootage == other.minSquareFootage &&
+                Objects.equals(amenityFilter, other.amenityFilter) &&
+                sortKey == other.sortKey &&
+                descending == other.descending &&
+                limit == other.limit &&
+                Objects.equals(cursor, other.cursor);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(fold(propertyType), fold(streetName), fold(cityName), postalPrefix, minPriceUsd,
+                maxPriceUsd, minBedrooms, maxBedrooms, minSquareFootage, amenityFilter, sortKey, descending, limit,
+                cursor);
+    }
+
+    private static String fold(final String name)
+    {
+        return name == null ? null : Address.foldCase(name);
+    }
+
+    /**
+     * @return The PropertyQuery class is represented by a String, displaying the predicates that are set.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder;
+        builder = new StringBuilder("PropertyQuery [");
+
+        if (propertyType != null)
+        {
+            builder.append("type='").append(propertyType).append("' ");
+        }
+        if (streetName != null)
+        {
+            builder.append("street='").append(streetName).append("' ");
+        }
+        if (cityName != null)
+        {
+            builder.append("city='").append(cityName).append("' ");
+        }
+        if (postalPrefix != null)
+        {
+            builder.append("postalArea='").append(postalPrefix).append("' ");
+        }
+        if (hasPriceRange)
+        {
+            builder.append("priceInUsd=").append(minPriceUsd).append("..").append(maxPriceUsd).append(' ');
+        }
+        if (hasBedroomRange)
+        {
+            builder.append("bedrooms=").append(minBedrooms).append("..").append(maxBedrooms).append(' ');
+        }
+        if (hasMinSquareFootage)
+        {
+            builder.append("squareFootage>=").append(minSquareFootage).append(' ');
+        }
+        if (amenityFilter != null)
+        {
+            builder.append("amenities=").append(amenityFilter).append(' ');
+        }
+        if (sortKey != null)
+        {
+            builder.append("orderBy=").append(sortKey).append(descending ? " DESC " : " ");
+        }
+        if (limit != NO_LIMIT)
+        {
+            builder.append("limit=").append(limit).append(' ');
+        }
+        if (cursor != null)
+        {
+            builder.append("after=").append(cursor).append(' ');
+        }
+        return builder.toString().trim() + "]";
+    }
+}
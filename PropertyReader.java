@@ -2,7 +2,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 
 /**
  * @author Tian Lan
@@ -12,6 +11,19 @@ public class PropertyReader
 {
     private final List<String> propertyData;
 
+    public static final int PRICE_POSITION = 0;
+    public static final int BEDROOMS_POSITION = 1;
+    public static final int SWIMMING_POOL_POSITION = 2;
+    public static final int RESIDENCE_TYPE_POSITION = 3;
+    public static final int RESIDENCE_ID_POSITION = 4;
+    public static final int STRATA_POSITION = 5;
+    public static final int TYPE_POSITION = 1;
+    public static final int ID_POSITION = 2;
+    public static final int LOADING_DOCK_POSITION = 3;
+    public static final int HIGHWAY_ACCESS_POSITION = 4;
+    public static final int SQUARE_FOOTAGE_POSITION = 3;
+    public static final int CUSTOMER_PARKING_POSITION = 4;
+
     public PropertyReader()
     {
         propertyData = new ArrayList<>();
@@ -25,18 +37,37 @@ public class PropertyReader
      */
     public static ArrayList<String> readPropertyData(final File file) throws FileNotFoundException
     {
-        String oneProperty;
         ArrayList<String> propertyData;
-
-        Scanner myScanner = new Scanner(file);
         propertyData = new ArrayList<>();
 
-        while(myScanner.hasNext())
+        PipeTokenizer.forEachRecord(file, record -> propertyData.add(record.getLine()));
+        return propertyData;
+    }
+
+    /**
+     * This method creates the subtype property of one line of a property file. The fields of a Residence are
+     * price|bedrooms|pool|type|id|strata, those of a Commercial property are price|type|id|loading dock|highway
+     * access, and those of a Retail property are price|type|id|square footage|customer parking.
+     * @param record The tokenizer positioned on the line.
+     * @param address The address of the property.
+     * @return The property described by the line.
+     */
+    static Property readProperty(final PipeTokenizer record, final Address address)
+    {
+        if (record.fieldEqualsIgnoreCase(RESIDENCE_TYPE_POSITION, "residence"))
         {
-            oneProperty = myScanner.nextLine();
-            propertyData.add(oneProperty);
+            return new Residence(record.getDouble(PRICE_POSITION), address, record.getInt(BEDROOMS_POSITION),
+                    record.getBoolean(SWIMMING_POOL_POSITION), record.getString(RESIDENCE_TYPE_POSITION),
+                    record.getString(RESIDENCE_ID_POSITION), record.getBoolean(STRATA_POSITION));
         }
-        myScanner.close();
-        return propertyData;
+        else if (record.fieldEqualsIgnoreCase(TYPE_POSITION, "commercial"))
+        {
+            return new Commercial(record.getDouble(PRICE_POSITION), address, record.getString(TYPE_POSITION),
+                    record.getString(ID_POSITION), record.getBoolean(LOADING_DOCK_POSITION),
+                    record.getBoolean(HIGHWAY_ACCESS_POSITION));
+        }
+        return new Retail(record.getDouble(PRICE_POSITION), address, record.getString(TYPE_POSITION),
+                record.getString(ID_POSITION), record.getInt(SQUARE_FOOTAGE_POSITION),
+                record.getBoolean(CUSTOMER_PARKING_POSITION));
     }
 }
@@ -0,0 +1,101 @@
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a lazy traversal of the properties matching a PropertyQuery, in ascending ordinal order.
+ * It covers a range of ordinals, taking the candidates from the driver bitmap of the query plan, or every ordinal
+ * of the range when there is none, and checks each candidate against the query only when the next property is
+ * asked for, so a stream that stops early does not visit the rest of the range.
+ * A range splits in half, so the properties of a parallel stream are shared out between threads without
+ * visiting them first.
+ */
+final class PropertySpliterator implements Spliterator<Property>
+{
+    private final PropertyTable table;
+    private final PropertyQuery query;
+    private final RoaringBitmap candidates;
+    private int                 position;
+    private final int           end;
+
+    public static final int MIN_SPLIT_SIZE = 1 << 12;
+
+    /**
+     * Constructor.
+     * @param table The table the properties are stored in.
+     * @param query The predicates to be matched.
+     * @param candidates The ordinals that may match, or null to check every ordinal of the range.
+     * @param position The first ordinal of the range.
+     * @param end The ordinal after the last one of the range.
+     */
+    PropertySpliterator(final PropertyTable table, final PropertyQuery query, final RoaringBitmap candidates,
+                        final int position, final int end)
+    {
+        this.table      = table;
+        this.query      = query;
+        this.candidates = candidates;
+        this.position   = position;
+        this.end        = end;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super Property> action)
+    {
+        int ordinal;
+
+        while (position < end)
+        {
+            ordinal = candidates == null ? position : candidates.nextOrdinal(position);
+            if (ordinal == RoaringBitmap.NO_ORDINAL || ordinal >= end)
+            {
+                position = end;
+                return false;
+            }
+
+            position = ordinal + 1;
+            if (query.matches(table, ordinal))
+            {
+                action.accept(table.get(ordinal));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<Property> trySplit()
+    {
+        int start;
+        int middle;
+
+        if (end - position < MIN_SPLIT_SIZE * 2)
+        {
+            return null;
+        }
+
+        start    = position;
+        middle   = (position + end) >>> 1;
+        position = middle;
+        return new PropertySpliterator(table, query, candidates, start, middle);
+    }
+
+    /**
+     * @return The number of candidates left, assuming the candidates of the bitmap are spread evenly.
+     */
+    @Override
+    public long estimateSize()
+    {
+        if (candidates == null || table.highWaterMark() == 0)
+        {
+            return end - position;
+        }
+        return Math.min(end - position, (long) candidates.cardinality() * (end - position) / table.highWaterMark());
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return ORDERED | DISTINCT | NONNULL;
+    }
+}
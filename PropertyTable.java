@@ -0,0 +1,336 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Tian Lan
+ * @version 2.0
+ * This class stores the properties of an agency under dense internal ordinals.
+ * The ordinals are small ints that the secondary indexes keep instead of property IDs,
+ * and the ordinals of removed properties are reused by the next insertions.
+ * Subclasses decide how the information of each property is laid out, and expose it field by field,
+ * so that queries only need a Property object for the properties they return.
+ * Property IDs are mapped to their ordinals by a PropertyIdMap. Every ordinal has a generation, which
+ * changes whenever the ordinal is freed, so that a view can tell whether the property it was created from
+ * is still stored under its ordinal.
+ */
+abstract class PropertyTable
+{
+    private final PropertyIdMap ordinalsById;
+    private int[]               freeOrdinals;
+    private int[]               generations;
+    private int                 freeOrdinalCount;
+    private int                 highWaterMark;
+
+    public static final int INITIAL_CAPACITY = 16;
+    public static final int NO_ORDINAL = -1;
+
+    public static final byte FREE = 0;
+    public static final byte RESIDENCE = 1;
+    public static final byte COMMERCIAL = 2;
+    public static final byte RETAIL = 3;
+
+    PropertyTable()
+    {
+        ordinalsById = new PropertyIdMap();
+        freeOrdinals = new int[INITIAL_CAPACITY];
+        generations  = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * This method stores the property under a free ordinal. The property ID must not be stored yet.
+     * @param property The property to be stored.
+     * @return The ordinal assigned to the property.
+     */
+    int insert(final Property property)
+    {
+        int ordinal;
+
+        if (freeOrdinalCount > 0)
+        {
+            freeOrdinalCount--;
+            ordinal = freeOrdinals[freeOrdinalCount];
+        }
+        else
+        {
+            ordinal = highWaterMark;
+            highWaterMark++;
+            ensureCapacity(highWaterMark);
+            ensureGenerations(highWaterMark);
+        }
+
+        store(ordinal, property);
+        ordinalsById.put(property.getPropertyId(), ordinal);
+        return ordinal;
+    }
+
+    /**
+     * This method removes the property stored under the ordinal and frees the ordinal for reuse.
+     * @param ordinal The ordinal of the property to be removed.
+     * @return The removed property if the table holds the Property objects it was given, null otherwise.
+     */
+    Property remove(final int ordinal)
+    {
+        Property removed;
+
+        ordinalsById.remove(getPropertyId(ordinal));
+        removed = clear(ordinal);
+        generations[ordinal]++;
+
+        if (freeOrdinalCount == freeOrdinals.length)
+        {
+            freeOrdinals = Arrays.copyOf(freeOrdinals, freeOrdinals.length * 2);
+        }
+        freeOrdinals[freeOrdinalCount] = ordinal;
+        freeOrdinalCount++;
+        return removed;
+    }
+
+    /**
+     * This method rebuilds the ID map and the free ordinals from the properties the table already stores,
+     * such as a table mapped from a file. It must be called before any other change to the table.
+     * @param storedHighWaterMark The high water mark of the stored properties.
+     */
+    void recover(final int storedHighWaterMark)
+    {
+        int ordinal;
+
+        highWaterMark = storedHighWaterMark;
+        ordinalsById.reserve(highWaterMark);
+        ensureGenerations(highWaterMark);
+        for (ordinal = 0; ordinal < highWaterMark; ordinal++)
+        {
+            if (isLive(ordinal))
+            {
+                ordinalsById.put(getPropertyId(ordinal), ordinal);
+            }
+            else
+            {
+                if (freeOrdinalCount == freeOrdinals.length)
+                {
+                    freeOrdinals = Arrays.copyOf(freeOrdinals, freeOrdinals.length * 2);
+                }
+                freeOrdinals[freeOrdinalCount] = ordinal;
+                freeOrdinalCount++;
+            }
+        }
+    }
+
+    /**
+     * This method makes room for more properties at once, so that inserting them neither grows the table
+     * nor rehashes the ID map more than once.
+     * @param additionalProperties The number of properties about to be inserted.
+     */
+    void reserve(final int additionalProperties)
+    {
+        int expectedSize;
+
+        expectedSize = size() + additionalProperties;
+        ensureCapacity(Math.max(highWaterMark, expectedSize));
+        ordinalsById.reserve(expectedSize);
+    }
+
+    /**
+     * @param propertyId The property ID to be matched.
+     * @return The ordinal of the property with the ID, or NO_ORDINAL if there is no match.
+     */
+    int ordinalOf(final String propertyId)
+    {
+        return ordinalsById.get(propertyId);
+    }
+
+    /**
+     * This method ties a view created by get to the ordinal it was created from.
+     * @param view The view of the property stored under the ordinal.
+     * @param ordinal The ordinal of a live property.
+     */
+    void bindView(final Property view, final int ordinal)
+    {
+        view.bindView(ordinal, generations[ordinal]);
+    }
+
+    /**
+     * This method gives the ordinals the generations they have in another table holding the same properties
+     * under the same ordinals, such as the table of a copied agency.
+     * @param source The table whose generations are copied.
+     */
+    void copyGenerations(final PropertyTable source)
+    {
+        generations = Arrays.copyOf(source.generations, source.generations.length);
+    }
+
+    /**
+     * @param view A property returned by get, or any other property.
+     * @return True if the property is a view created by this table, or by a table that made the same changes,
+     * and the property it was created from is still stored under its ordinal, false otherwise.
+     */
+    boolean isCurrentView(final Property view)
+    {
+        int ordinal;
+        ordinal = view.getViewOrdinal();
+
+        return ordinal != NO_ORDINAL && ordinal < highWaterMark && generations[ordinal] == view.getViewGeneration()
+                && isLive(ordinal);
+    }
+
+    /**
+     * @return The number of properties stored.
+     */
+    int size()
+    {
+        return highWaterMark - freeOrdinalCount;
+    }
+
+    /**
+     * @return One more than the highest ordinal ever assigned; every live ordinal is below it.
+     */
+    int highWaterMark()
+    {
+        return highWaterMark;
+    }
+
+    /**
+     * @param ordinal The ordinal to be looked up, below the high water mark.
+     * @return True if a property is stored under the ordinal, false if the ordinal is free.
+     */
+    boolean isLive(final int ordinal)
+    {
+        return getKind(ordinal) != FREE;
+    }
+
+    private void ensureGenerations(final int capacity)
+    {
+        if (capacity > generations.length)
+        {
+            generations = Arrays.copyOf(generations, Math.max(capacity, generations.length * 2));
+        }
+    }
+
+    /**
+     * @param property The property to be classified.
+     * @return The kind constant of the subtype of the property.
+     */
+    static byte kindOf(final Property property)
+    {
+        if (property instanceof Residence)
+        {
+            return RESIDENCE;
+        }
+        if (property instanceof Commercial)
+        {
+            return COMMERCIAL;
+        }
+        return RETAIL;
+    }
+
+    /**
+     * This method makes room for ordinals below the capacity.
+     * @param capacity The number of ordinals to be stored.
+     */
+    abstract void ensureCapacity(int capacity);
+
+    /**
+     * This method lays out the information of the property under the ordinal.
+     * @param ordinal The ordinal of the property.
+     * @param property The property to be stored.
+     */
+    abstract void store(int ordinal, Property property);
+
+    /**
+     * This method erases the information stored under the ordinal.
+     * @param ordinal The ordinal to be freed.
+     * @return The Property object that was stored, or null if the table does not hold Property objects.
+     */
+    abstract Property clear(int ordinal);
+
+    /**
+     * @return True if the table holds the very Property objects it was given, so that a price change on
+     * one of them changes the table, false if the table keeps its own copy of their information.
+     */
+    abstract boolean storesPropertyObjects();
+
+    /**
+     * @param ordinal The ordinal to be looked up, below the high water mark.
+     * @return The property stored under the ordinal, or null if the ordinal is free.
+     */
+    abstract Property get(int ordinal);
+
+    /**
+     * @param ordinal The ordinal to be looked up, below the high water mark.
+     * @return The kind constant of the property stored under the ordinal, or FREE.
+     */
+    abstract byte getKind(int ordinal);
+
+    abstract double getPriceUsd(int ordinal);
+
+    /**
+     * This method writes a new price back to the table. It is only needed by tables that do not
+     * store Property objects.
+     * @param ordinal The ordinal of a live property.
+     * @param priceInUsd The new price, in USD.
+     */
+    abstract void setPriceUsd(int ordinal, double priceInUsd);
+
+    abstract String getPropertyId(int ordinal);
+
+    abstract String getType(int ordinal);
+
+    abstract Address getAddress(int ordinal);
+
+    /**
+     * Subclasses override this method when they can read the street name without creating the Address.
+     * @return The street name of the property stored under the ordinal.
+     */
+    String getStreetName(final int ordinal)
+    {
+        return getAddress(ordinal).getStreetName();
+    }
+
+    /**
+     * Subclasses override this method when they can read the postal code without creating the Address.
+     * @return The postal code of the property stored under the ordinal.
+     */
+    String getPostalCode(final int ordinal)
+    {
+        return getAddress(ordinal).getPostalCode();
+    }
+
+    /**
+     * Subclasses override this method when they can read the city without creating the Address.
+     * @return The city of the property stored under the ordinal.
+     */
+    String getCity(final int ordinal)
+    {
+        return getAddress(ordinal).getCity();
+    }
+
+    /**
+     * @return The number of bedrooms of the Residence stored under the ordinal.
+     */
+    abstract int getNumberOfBedrooms(int ordinal);
+
+    /**
+     * @return The square footage of the Retail property stored under the ordinal.
+     */
+    abstract int getSquareFootage(int ordinal);
+
+    /**
+     * @return True if the property stored under the ordinal offers the amenity, false otherwise.
+     */
+    abstract boolean offers(int ordinal, Amenity amenity);
+
+    /**
+     * This method writes the table to the storage behind it. Tables held on the heap have nothing to write.
+     * @throws IOException If the storage cannot be written.
+     */
+    void flush() throws IOException
+    {
+    }
+
+    /**
+     * This method flushes the table and releases the storage behind it; the table cannot be used afterwards.
+     * @throws IOException If the storage cannot be written or released.
+     */
+    void close() throws IOException
+    {
+    }
+}
@@ -0,0 +1,222 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a bounded cache of query results, holding the ordinals of the matching properties of the
+ * most recently used queries, and evicting the least recently used ones when it is full.
+ * An entry is invalidated precisely: when a property is added or removed, only the results of the queries
+ * the property matches are dropped, and when a price changes, only those of the matching queries that
+ * depend on the price. Results larger than MAX_CACHED_MATCHES are not cached, so that a broad query does not
+ * hold on to a large array.
+ * <p>
+ * Looking up a result takes no lock, so that the searches of a ConcurrentAgency never wait for each other.
+ * Recency is approximate: a clock advances with every result put in the cache, and a hit stamps its entry with
+ * the current time, writing the entry only if the stamp changes. A put into a full cache first evicts the entries
+ * with the oldest stamps, leaving room for an eighth of the capacity, so that the entries are scanned once per
+ * many puts rather than on every one; a result put while another thread is evicting is not cached.
+ */
+final class QueryCache
+{
+    private final Map<PropertyQuery, Entry> entries;
+    private final AtomicLong                clock;
+    private final AtomicBoolean             evicting;
+    private final LongAdder                 hitCount;
+    private final LongAdder                 missCount;
+    private final LongAdder                 invalidationCount;
+    private volatile int                    capacity;
+
+    public static final int MAX_CACHED_MATCHES = 1 << 16;
+    private static final int EVICTION_DIVISOR = 8;
+
+    /**
+     * Constructor.
+     * @param capacity The maximum number of cached results; zero turns the cache off.
+     */
+    QueryCache(final int capacity)
+    {
+        this.capacity     = capacity;
+        entries           = new ConcurrentHashMap<>();
+        clock             = new AtomicLong();
+        evicting          = new AtomicBoolean();
+        hitCount          = new LongAdder();
+        missCount         = new LongAdder();
+        invalidationCount = new LongAdder();
+    }
+
+    /**
+     * @param query The query to be looked up.
+     * @return The ordinals of the properties matching the query, in the order they were found, or null if the
+     * result is not cached.
+     */
+    int[] get(final PropertyQuery query)
+    {
+        Entry entry;
+        long now;
+
+        entry = capacity == 0 ? null : entries.get(query);
+        if (entry == null)
+        {
+            missCount.increment();
+            return null;
+        }
+
+        now = clock.get();
+        if (entry.lastUsed != now)
+        {
+            entry.lastUsed = now;
+        }
+        hitCount.increment();
+        return entry.ordinals;
+    }
+
+    /**
+     * @param query The query, which is copied so that later changes to it do not affect the cache.
+     * @param ordinals The ordinals of the properties matching the query, in the order they were found.
+     */
+    void put(final PropertyQuery query, final int[] ordinals)
+    {
+        if (capacity > 0 && ordinals.length <= MAX_CACHED_MATCHES)
+        {
+            if (entries.size() >= capacity && !evict())
+            {
+                return;
+            }
+            entries.put(query.copy(), new Entry(ordinals, clock.incrementAndGet()));
+        }
+    }
+
+    /**
+     * This method drops the results a change to the property stored under the ordinal can affect. It is called
+     * after a property is added and before one is removed. For a price change, which may already be seen in the
+     * table, it drops the results of the queries that depend on the price and that the property matches
+     * apart from its price, whatever its old and new prices are. A ConcurrentAgency never changes the agency
+     * searches run on, so that no result is put in the cache while it is being invalidated.
+     * @param table The table the property is stored in.
+     * @param ordinal The ordinal of the property.
+     * @param priceChange True if only the price of the property changes, false if it is added or removed.
+     */
+    void invalidate(final PropertyTable table, final int ordinal, final boolean priceChange)
+    {
+        Iterator<PropertyQuery> queries;
+        PropertyQuery query;
+
+        queries = entries.keySet().iterator();
+        while (queries.hasNext())
+        {
+            query = queries.next();
+            if (priceChange ? query.dependsOnPrice() && query.matchesApartFromPrice(table, ordinal) :
+                    query.matches(table, ordinal))
+            {
+                queries.remove();
+                invalidationCount.increment();
+            }
+        }
+    }
+
+    /**
+     * @param maximum The maximum number of cached results; zero turns the cache off.
+     */
+    void setCapacity(final int maximum)
+    {
+        capacity = maximum;
+        if (maximum == 0)
+        {
+            entries.clear();
+        }
+        else if (entries.size() > maximum)
+        {
+            evict();
+        }
+    }
+
+    /**
+     * @return A snapshot of the statistics of the cache.
+     */
+    QueryCacheStats getStats()
+    {
+        return new QueryCacheStats(entries.size(), capacity, hitCount.sum(), missCount.sum(),
+                invalidationCount.sum());
+    }
+
+    /**
+     * This method evicts the entries with the oldest stamps, until the cache has room for at least one result
+     * and for an eighth of its capacity. Only one thread evicts at a time.
+     * @return True if the entries were evicted, false if another thread is evicting.
+     */
+    private boolean evict()
+    {
+        long[] stamps;
+        int count;
+        int excess;
+        long newestEvicted;
+        Iterator<Entry> values;
+        Entry entry;
+
+        if (!evicting.compareAndSet(false, true))
+        {
+            return false;
+        }
+
+        try
+        {
+            stamps = new long[entries.size()];
+            count  = 0;
+            for (Entry value : entries.values())
+            {
+                if (count == stamps.length)
+                {
+                    stamps = Arrays.copyOf(stamps, count * 2 + 1);
+                }
+                stamps[count] = value.lastUsed;
+                count++;
+            }
+
+            excess = count - (capacity - 1 - capacity / EVICTION_DIVISOR);
+            if (excess <= 0)
+            {
+                return true;
+            }
+
+            Arrays.sort(stamps, 0, count);
+            newestEvicted = stamps[excess - 1];
+
+            values = entries.values().iterator();
+            while (excess > 0 && values.hasNext())
+            {
+                entry = values.next();
+                if (entry.lastUsed <= newestEvicted)
+                {
+                    values.remove();
+                    excess--;
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * This class models a cached result, stamped with the time of the clock when it was last used.
+     */
+    private static final class Entry
+    {
+        private final int[]   ordinals;
+        private volatile long lastUsed;
+
+        private Entry(final int[] ordinals, final long lastUsed)
+        {
+            this.ordinals = ordinals;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
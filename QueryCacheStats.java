@@ -0,0 +1,83 @@
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a snapshot of the statistics of the query cache of an agency.
+ */
+public final class QueryCacheStats
+{
+    private final int  size;
+    private final int  capacity;
+    private final long hitCount;
+    private final long missCount;
+    private final long invalidationCount;
+
+    QueryCacheStats(final int size, final int capacity, final long hitCount, final long missCount,
+                    final long invalidationCount)
+    {
+        this.size              = size;
+        this.capacity          = capacity;
+        this.hitCount          = hitCount;
+        this.missCount         = missCount;
+        this.invalidationCount = invalidationCount;
+    }
+
+    /**
+     * @return The number of cached results.
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return The maximum number of cached results.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return The number of queries answered from the cache.
+     */
+    public long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of queries that were not in the cache.
+     */
+    public long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * @return The number of results dropped because a property they could depend on changed.
+     */
+    public long getInvalidationCount()
+    {
+        return invalidationCount;
+    }
+
+    /**
+     * @return The share of the queries answered from the cache, from 0 to 1, or NaN if there were none.
+     */
+    public double getHitRate()
+    {
+        return hitCount + missCount == 0 ? Double.NaN : (double) hitCount / (hitCount + missCount);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "QueryCacheStats [" +
+                "size=" + size +
+                ", capacity=" + capacity +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", invalidationCount=" + invalidationCount +
+                ']';
+    }
+}
@@ -31,9 +31,21 @@ public class Residence extends Property
                      final String propertyId,
                      final boolean isPartOfStrata)
     {
-        super(priceInUsd, address, propertyType, propertyId);
+        this(priceInUsd, address, numberOfBedrooms, hasSwimmingPool, propertyType, propertyId, isPartOfStrata, true);
+    }
+
+    private Residence(final double priceInUsd,
+                      final Address address,
+                      final int numberOfBedrooms,
+                      final boolean hasSwimmingPool,
+                      final String propertyType,
+                      final String propertyId,
+                      final boolean isPartOfStrata,
+                      final boolean validate)
+    {
+        super(priceInUsd, address, propertyType, propertyId, validate);
 
-        if(numberOfBedrooms < VALID_MIN_NUM_OF_BEDROOMS || numberOfBedrooms > VALID_MAX_NUM_OF_BEDROOMS)
+        if(validate && (numberOfBedrooms < VALID_MIN_NUM_OF_BEDROOMS || numberOfBedrooms > VALID_MAX_NUM_OF_BEDROOMS))
         {
             throw new IllegalArgumentException("Invalid number of bedrooms: " + numberOfBedrooms);
         }
@@ -43,6 +55,23 @@ public class Residence extends Property
         this.isPartOfStrata   = isPartOfStrata;
     }
 
+    /**
+     * This method recreates a residence from information that was validated when it was first constructed,
+     * without validating it again.
+     * @return The recreated residence.
+     */
+    static Residence restore(final double priceInUsd,
+                             final Address address,
+                             final int numberOfBedrooms,
+                             final boolean hasSwimmingPool,
+                             final String propertyType,
+                             final String propertyId,
+                             final boolean isPartOfStrata)
+    {
+        return new Residence(priceInUsd, address, numberOfBedrooms, hasSwimmingPool, propertyType, propertyId,
+                isPartOfStrata, false);
+    }
+
     /**
      * @return The number of bedrooms of the property.
      */
@@ -28,9 +28,20 @@ public class Retail extends Property
                   final int squareFootage,
                   final boolean hasCustomerParking)
     {
-        super(priceInUsd, address, propertyType, propertyId);
+        this(priceInUsd, address, propertyType, propertyId, squareFootage, hasCustomerParking, true);
+    }
+
+    private Retail(final double priceInUsd,
+                   final Address address,
+                   final String propertyType,
+                   final String propertyId,
+                   final int squareFootage,
+                   final boolean hasCustomerParking,
+                   final boolean validate)
+    {
+        super(priceInUsd, address, propertyType, propertyId, validate);
 
-        if(squareFootage < VALID_MIN_SQUARE_FOOTAGE || squareFootage > VALID_MAX_SQUARE_FOOTAGE)
+        if(validate && (squareFootage < VALID_MIN_SQUARE_FOOTAGE || squareFootage > VALID_MAX_SQUARE_FOOTAGE))
         {
             throw new IllegalArgumentException("Invalid amount of floor space: " + squareFootage);
         }
@@ -39,6 +50,21 @@ public class Retail extends Property
         this.hasCustomerParking = hasCustomerParking;
     }
 
+    /**
+     * This method recreates a retail property from information that was validated when it was first
+     * constructed, without validating it again.
+     * @return The recreated retail property.
+     */
+    static Retail restore(final double priceInUsd,
+                          final Address address,
+                          final String propertyType,
+                          final String propertyId,
+                          final int squareFootage,
+                          final boolean hasCustomerParking)
+    {
+        return new Retail(priceInUsd, address, propertyType, propertyId, squareFootage, hasCustomerParking, false);
+    }
+
     /**
      * @return The amount of floor space available.
      */
@@ -0,0 +1,711 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a compressed set of property ordinals in the Roaring bitmap layout.
+ * The ordinals are split by their high 16 bits into containers; a sparse container is a sorted char array
+ * of the low 16 bits, and a dense container is a fixed 1024 word bitset. Containers switch form at
+ * ARRAY_CONTAINER_MAX_SIZE entries, so each one never takes more than 8KB.
+ */
+class RoaringBitmap
+{
+    private char[]   keys;
+    private Object[] containers;
+    private int[]    cardinalities;
+    private int      containerCount;
+    private int      cardinality;
+
+    public static final int ARRAY_CONTAINER_MAX_SIZE = 4096;
+    public static final int NO_ORDINAL = -1;
+    private static final int BITMAP_CONTAINER_WORDS = 1024;
+    private static final int INITIAL_CONTAINER_COUNT = 4;
+    private static final int INITIAL_ARRAY_CONTAINER_SIZE = 4;
+    private static final int LOW_BITS = 16;
+    private static final int LOW_MASK = 0xFFFF;
+
+    RoaringBitmap()
+    {
+        keys          = new char[INITIAL_CONTAINER_COUNT];
+        containers    = new Object[INITIAL_CONTAINER_COUNT];
+        cardinalities = new int[INITIAL_CONTAINER_COUNT];
+    }
+
+    /**
+     * This method adds the ordinal to the set.
+     * @param ordinal The non-negative ordinal to be added.
+     * @return True if the ordinal was not in the set yet, false otherwise.
+     */
+    boolean add(final int ordinal)
+    {
+        char key;
+        char low;
+        int index;
+        int position;
+        char[] array;
+        long[] words;
+
+        key   = (char) (ordinal >>> LOW_BITS);
+        low   = (char) (ordinal & LOW_MASK);
+        index = Arrays.binarySearch(keys, 0, containerCount, key);
+
+        if (index < 0)
+        {
+            index = -index - 1;
+            insertContainer(index, key, new char[INITIAL_ARRAY_CONTAINER_SIZE], 0);
+        }
+
+        if (containers[index] instanceof long[])
+        {
+            words = (long[]) containers[index];
+            if ((words[low >>> 6] & (1L << low)) != 0)
+            {
+                return false;
+            }
+            words[low >>> 6] |= 1L << low;
+        }
+        else
+        {
+            array = (char[]) containers[index];
+            position = Arrays.binarySearch(array, 0, cardinalities[index], low);
+            if (position >= 0)
+            {
+                return false;
+            }
+            position = -position - 1;
+
+            if (cardinalities[index] == ARRAY_CONTAINER_MAX_SIZE)
+            {
+                words = toWords(array, cardinalities[index]);
+                words[low >>> 6] |= 1L << low;
+                containers[index] = words;
+            }
+            else
+            {
+                if (cardinalities[index] == array.length)
+                {
+                    array = Arrays.copyOf(array, Math.min(array.length * 2, ARRAY_CONTAINER_MAX_SIZE));
+                    containers[index] = array;
+                }
+                System.arraycopy(array, position, array, position + 1, cardinalities[index] - position);
+                array[position] = low;
+            }
+        }
+
+        cardinalities[index]++;
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * This method removes the ordinal from the set.
+     * @param ordinal The ordinal to be removed.
+     * @return True if the ordinal was in the set, false otherwise.
+     */
+    boolean remove(final int ordinal)
+    {
+        char low;
+        int index;
+        int position;
+        char[] array;
+        long[] words;
+
+        low   = (char) (ordinal & LOW_MASK);
+        index = Arrays.binarySearch(keys, 0, containerCount, (char) (ordinal >>> LOW_BITS));
+
+        if (ordinal < 0 || index < 0)
+        {
+            return false;
+        }
+
+        if (containers[index] instanceof long[])
+        {
+            words = (long[]) containers[index];
+            if ((words[low >>> 6] & (1L << low)) == 0)
+            {
+                return false;
+            }
+            words[low >>> 6] &= ~(1L << low);
+
+            if (cardinalities[index] - 1 == ARRAY_CONTAINER_MAX_SIZE)
+            {
+                containers[index] = toArray(words, ARRAY_CONTAINER_MAX_SIZE);
+            }
+        }
+        else
+        {
+            array = (char[]) containers[index];
+            position = Arrays.binarySearch(array, 0, cardinalities[index], low);
+            if (position < 0)
+            {
+                return false;
+            }
+            System.arraycopy(array, position + 1, array, position, cardinalities[index] - position - 1);
+        }
+
+        cardinalities[index]--;
+        cardinality--;
+
+        if (cardinalities[index] == 0)
+        {
+            removeContainer(index);
+        }
+        return true;
+    }
+
+    /**
+     * @param ordinal The ordinal to be looked up.
+     * @return True if the ordinal is in the set, false otherwise.
+     */
+    boolean contains(final int ordinal)
+    {
+        char low;
+        int index;
+
+        low   = (char) (ordinal & LOW_MASK);
+        index = Arrays.binarySearch(keys, 0, containerCount, (char) (ordinal >>> LOW_BITS));
+
+        if (ordinal < 0 || index < 0)
+        {
+            return false;
+        }
+        if (containers[index] instanceof long[])
+        {
+            return (((long[]) containers[index])[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) containers[index], 0, cardinalities[index], low) >= 0;
+    }
+
+    /**
+     * @param from The ordinal to start looking from, inclusive.
+     * @return The lowest ordinal in the set that is not less than from, or NO_ORDINAL if there is none.
+     */
+    int nextOrdinal(final int from)
+    {
+        int index;
+        int low;
+        int word;
+        long bits;
+        int position;
+        long[] words;
+
+        low   = Math.max(from, 0) & LOW_MASK;
+        index = Arrays.binarySearch(keys, 0, containerCount, (char) (Math.max(from, 0) >>> LOW_BITS));
+
+        if (index < 0)
+        {
+            index = -index - 1;
+            low   = 0;
+        }
+
+        for (; index < containerCount; index++, low = 0)
+        {
+            if (containers[index] instanceof long[])
+            {
+                words = (long[]) containers[index];
+                bits  = words[low >>> 6] & (-1L << low);
+
+                for (word = low >>> 6; bits == 0 && word + 1 < BITMAP_CONTAINER_WORDS; bits = words[++word])
+                {
+                    // Looking for the next word with an ordinal.
+                }
+                if (bits != 0)
+                {
+                    return (keys[index] << LOW_BITS) | (word << 6) | Long.numberOfTrailingZeros(bits);
+                }
+            }
+            else
+            {
+                position = Arrays.binarySearch((char[]) containers[index], 0, cardinalities[index], (char) low);
+                if (position < 0)
+                {
+                    position = -position - 1;
+                }
+                if (position < cardinalities[index])
+                {
+                    return (keys[index] << LOW_BITS) | ((char[]) containers[index])[position];
+                }
+            }
+        }
+        return NO_ORDINAL;
+    }
+
+    /**
+     * @return The number of ordinals in the set.
+     */
+    int cardinality()
+    {
+        return cardinality;
+    }
+
+    /**
+     * This method passes every ordinal in the set to the action, in ascending order.
+     * @param action The action to be performed for each ordinal.
+     */
+    void forEach(final IntConsumer action)
+    {
+        int index;
+        int high;
+        int i;
+        int word;
+        long bits;
+        char[] array;
+        long[] words;
+
+        for (index = 0; index < containerCount; index++)
+        {
+            high = keys[index] << LOW_BITS;
+
+            if (containers[index] instanceof long[])
+            {
+                words = (long[]) containers[index];
+                for (word = 0; word < BITMAP_CONTAINER_WORDS; word++)
+                {
+                    bits = words[word];
+                    while (bits != 0)
+                    {
+                        action.accept(high | (word << 6) | Long.numberOfTrailingZeros(bits));
+                        bits &= bits - 1;
+                    }
+                }
+            }
+            else
+            {
+                array = (char[]) containers[index];
+                for (i = 0; i < cardinalities[index]; i++)
+                {
+                    action.accept(high | array[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param first The first set.
+     * @param second The second set.
+     * @return A new set holding the ordinals that are in both sets.
+     */
+    static RoaringBitmap and(final RoaringBitmap first, final RoaringBitmap second)
+    {
+        RoaringBitmap result;
+        int i;
+        int j;
+
+        result = new RoaringBitmap();
+        i = 0;
+        j = 0;
+
+        while (i < first.containerCount && j < second.containerCount)
+        {
+            if (first.keys[i] < second.keys[j])
+            {
+                i++;
+            }
+            else if (first.keys[i] > second.keys[j])
+            {
+                j++;
+            }
+            else
+            {
+                result.appendIntersection(first, i, second, j);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param first The first set.
+     * @param second The second set.
+     * @return A new set holding the ordinals that are in either set.
+     */
+    static RoaringBitmap or(final RoaringBitmap first, final RoaringBitmap second)
+    {
+        RoaringBitmap result;
+        long[] words;
+        int i;
+        int j;
+
+        result = new RoaringBitmap();
+        i = 0;
+        j = 0;
+
+        while (i < first.containerCount || j < second.containerCount)
+        {
+            if (j == second.containerCount || (i < first.containerCount && first.keys[i] < second.keys[j]))
+            {
+                result.appendCopy(first, i);
+                i++;
+            }
+            else if (i == first.containerCount || first.keys[i] > second.keys[j])
+            {
+                result.appendCopy(second, j);
+                j++;
+            }
+            else
+            {
+                words = first.wordsOf(i);
+                second.orInto(j, words);
+                result.appendWords(first.keys[i], words);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param first The set to be subtracted from.
+     * @param second The set to be subtracted.
+     * @return A new set holding the ordinals that are in the first set but not in the second set.
+     */
+    static RoaringBitmap andNot(final RoaringBitmap first, final RoaringBitmap second)
+    {
+        RoaringBitmap result;
+        int index;
+        int other;
+        int i;
+        char[] array;
+        char[] filtered;
+        int count;
+        long[] words;
+
+        result = new RoaringBitmap();
+
+        for (index = 0; index < first.containerCount; index++)
+        {
+            other = Arrays.binarySearch(second.keys, 0, second.containerCount, first.keys[index]);
+
+            if (other < 0)
+            {
+                result.appendCopy(first, index);
+            }
+            else if (first.containers[index] instanceof long[])
+            {
+                words = first.wordsOf(index);
+                second.andNotInto(other, words);
+                result.appendWords(first.keys[index], words);
+            }
+            else
+            {
+                array = (char[]) first.containers[index];
+                filtered = new char[first.cardinalities[index]];
+                count = 0;
+                for (i = 0; i < first.cardinalities[index]; i++)
+                {
+                    if (!second.containsLow(other, array[i]))
+                    {
+                        filtered[count] = array[i];
+                        count++;
+                    }
+                }
+                result.appendContainer(first.keys[index], filtered, count);
+            }
+        }
+        return result;
+    }
+
+    private void appendIntersection(final RoaringBitmap first, final int i, final RoaringBitmap second, final int j)
+    {
+        char[] array;
+        char[] filtered;
+        int count;
+        int size;
+        int k;
+        long[] words;
+        RoaringBitmap probed;
+        int probedIndex;
+
+        if (first.containers[i] instanceof long[] && second.containers[j] instanceof long[])
+        {
+            words = first.wordsOf(i);
+            for (k = 0; k < BITMAP_CONTAINER_WORDS; k++)
+            {
+                words[k] &= ((long[]) second.containers[j])[k];
+            }
+            appendWords(first.keys[i], words);
+            return;
+        }
+
+        if (first.containers[i] instanceof char[])
+        {
+            array = (char[]) first.containers[i];
+            count = first.cardinalities[i];
+            probed = second;
+            probedIndex = j;
+        }
+        else
+        {
+            array = (char[]) second.containers[j];
+            count = second.cardinalities[j];
+            probed = first;
+            probedIndex = i;
+        }
+
+        filtered = new char[count];
+        size = 0;
+        for (k = 0; k < count; k++)
+        {
+            if (probed.containsLow(probedIndex, array[k]))
+            {
+                filtered[size] = array[k];
+                size++;
+            }
+        }
+        appendContainer(first.keys[i], filtered, size);
+    }
+
+    private boolean containsLow(final int index, final char low)
+    {
+        if (containers[index] instanceof long[])
+        {
+            return (((long[]) containers[index])[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) containers[index], 0, cardinalities[index], low) >= 0;
+    }
+
+    /**
+     * @return A bitset copy of the container, which the caller may modify.
+     */
+    private long[] wordsOf(final int index)
+    {
+        if (containers[index] instanceof long[])
+        {
+            return ((long[]) containers[index]).clone();
+        }
+        return toWords((char[]) containers[index], cardinalities[index]);
+    }
+
+    private void orInto(final int index, final long[] words)
+    {
+        char[] array;
+        int i;
+
+        if (containers[index] instanceof long[])
+        {
+            for (i = 0; i < BITMAP_CONTAINER_WORDS; i++)
+            {
+                words[i] |= ((long[]) containers[index])[i];
+            }
+        }
+        else
+        {
+            array = (char[]) containers[index];
+            for (i = 0; i < cardinalities[index]; i++)
+            {
+                words[array[i] >>> 6] |= 1L << array[i];
+            }
+        }
+    }
+
+    private void andNotInto(final int index, final long[] words)
+    {
+        char[] array;
+        int i;
+
+        if (containers[index] instanceof long[])
+        {
+            for (i = 0; i < BITMAP_CONTAINER_WORDS; i++)
+            {
+                words[i] &= ~((long[]) containers[index])[i];
+            }
+        }
+        else
+        {
+            array = (char[]) containers[index];
+            for (i = 0; i < cardinalities[index]; i++)
+            {
+                words[array[i] >>> 6] &= ~(1L << array[i]);
+            }
+        }
+    }
+
+    private void appendCopy(final RoaringBitmap source, final int index)
+    {
+        Object container;
+        container = source.containers[index];
+
+        if (container instanceof long[])
+        {
+            appendContainer(source.keys[index], ((long[]) container).clone(), source.cardinalities[index]);
+        }
+        else
+        {
+            appendContainer(source.keys[index],
+                    Arrays.copyOf((char[]) container, source.cardinalities[index]), source.cardinalities[index]);
+        }
+    }
+
+    /**
+     * This method writes the containers of the set, each in the form it has.
+     * @param out The snapshot being written.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    void write(final AgencySnapshot.Output out) throws IOException
+    {
+        char[] array;
+        int index;
+        int i;
+
+        out.putInt(containerCount);
+        for (index = 0; index < containerCount; index++)
+        {
+            out.putChar(keys[index]);
+            out.putInt(cardinalities[index]);
+            out.putByte((byte) (containers[index] instanceof long[] ? 1 : 0));
+
+            if (containers[index] instanceof long[])
+            {
+                for (long word : (long[]) containers[index])
+                {
+                    out.putLong(word);
+                }
+            }
+            else
+            {
+                array = (char[]) containers[index];
+                for (i = 0; i < cardinalities[index]; i++)
+                {
+                    out.putChar(array[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method reads the containers written by write into an empty set.
+     * @param in The snapshot being read.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    void read(final AgencySnapshot.Input in) throws IOException
+    {
+        char key;
+        int count;
+        long[] words;
+        char[] array;
+        int remaining;
+        int i;
+
+        for (remaining = in.getInt(); remaining > 0; remaining--)
+        {
+            key   = in.getChar();
+            count = in.getInt();
+
+            if (in.getByte() != 0)
+            {
+                words = new long[BITMAP_CONTAINER_WORDS];
+                for (i = 0; i < words.length; i++)
+                {
+                    words[i] = in.getLong();
+                }
+                appendContainer(key, words, count);
+            }
+            else
+            {
+                array = new char[count];
+                for (i = 0; i < count; i++)
+                {
+                    array[i] = in.getChar();
+                }
+                appendContainer(key, array, count);
+            }
+        }
+    }
+
+    /**
+     * This method appends a bitset container, converting it to an array container if it is sparse enough.
+     */
+    private void appendWords(final char key, final long[] words)
+    {
+        int count;
+        count = 0;
+
+        for (long word : words)
+        {
+            count += Long.bitCount(word);
+        }
+
+        if (count > ARRAY_CONTAINER_MAX_SIZE)
+        {
+            appendContainer(key, words, count);
+        }
+        else
+        {
+            appendContainer(key, toArray(words, count), count);
+        }
+    }
+
+    private void appendContainer(final char key, final Object container, final int count)
+    {
+        if (count > 0)
+        {
+            insertContainer(containerCount, key, container, count);
+            cardinality += count;
+        }
+    }
+
+    private void insertContainer(final int index, final char key, final Object container, final int count)
+    {
+        if (containerCount == keys.length)
+        {
+            keys          = Arrays.copyOf(keys, containerCount * 2);
+            containers    = Arrays.copyOf(containers, containerCount * 2);
+            cardinalities = Arrays.copyOf(cardinalities, containerCount * 2);
+        }
+
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, containerCount - index);
+        keys[index]          = key;
+        containers[index]    = container;
+        cardinalities[index] = count;
+        containerCount++;
+    }
+
+    private void removeContainer(final int index)
+    {
+        System.arraycopy(keys, index + 1, keys, index, containerCount - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, containerCount - index - 1);
+        System.arraycopy(cardinalities, index + 1, cardinalities, index, containerCount - index - 1);
+        containerCount--;
+        containers[containerCount] = null;
+    }
+
+    private static long[] toWords(final char[] array, final int count)
+    {
+        long[] words;
+        int i;
+
+        words = new long[BITMAP_CONTAINER_WORDS];
+        for (i = 0; i < count; i++)
+        {
+            words[array[i] >>> 6] |= 1L << array[i];
+        }
+        return words;
+    }
+
+    private static char[] toArray(final long[] words, final int count)
+    {
+        char[] array;
+        int size;
+        int word;
+        long bits;
+
+        array = new char[count];
+        size = 0;
+        for (word = 0; word < BITMAP_CONTAINER_WORDS; word++)
+        {
+            bits = words[word];
+            while (bits != 0)
+            {
+                array[size] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+                size++;
+                bits &= bits - 1;
+            }
+        }
+        return array;
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This enum models the keys the results of a PropertyQuery can be ordered by. A property without the attribute
+ * of the key, such as a Commercial property ordered by bedrooms, sorts as if the attribute were zero;
+ * properties with the same value sort in a fixed order of their own.
+ */
+public enum SortKey
+{
+    PRICE,
+    BEDROOMS,
+    SQUARE_FOOTAGE;
+
+    /**
+     * @param table The table the property is stored in.
+     * @param ordinal The ordinal of a live property.
+     * @return The value of the key for the property.
+     */
+    double valueOf(final PropertyTable table, final int ordinal)
+    {
+        switch (this)
+        {
+            case PRICE:
+                return table.getPriceUsd(ordinal);
+            case BEDROOMS:
+                return table.getKind(ordinal) == PropertyTable.RESIDENCE ? table.getNumberOfBedrooms(ordinal) : 0;
+            default:
+                return table.getKind(ordinal) == PropertyTable.RETAIL ? table.getSquareFootage(ordinal) : 0;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This enum models the ways an agency can lay out the properties it stores.
+ */
+public enum StorageMode
+{
+    /**
+     * The agency holds the Property objects it is given.
+     */
+    HEAP,
+
+    /**
+     * The agency copies every property into primitive arrays, one per field, and creates Property views
+     * only for the properties its queries return. This takes far less memory for large catalogs and
+     * turns full-catalog queries into loops over contiguous arrays; a price change made on a view
+     * is written back to the agency, but changes made on the original objects after they were added are not.
+     */
+    COLUMNAR,
+
+    /**
+     * The agency lays out the properties like COLUMNAR, but in fixed-width records of a memory-mapped file
+     * outside the JVM heap, with their strings interned in a dictionary file; see Agency.open.
+     * The catalog can then be larger than the heap, and reopening the file maps it instead of parsing it again.
+     */
+    MAPPED
+}
@@ -0,0 +1,161 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a dictionary of interned strings, each stored once and identified by a small int code.
+ * Codes are assigned densely in the order the strings are first seen.
+ * Strings can also be interned straight from their UTF-8 bytes, such as a field of a data file: the codes of
+ * strings interned that way are kept in an open-addressing table keyed by the bytes, so that a string
+ * seen before is found without creating a String for it.
+ */
+class StringDictionary
+{
+    private final Map<String, Integer> codes;
+    private final List<String>         strings;
+
+    private byte[][] encodings;
+    private int[]    byteSlots;
+    private int      byteCount;
+
+    public static final int NO_CODE = -1;
+
+    private static final int INITIAL_BYTE_SLOTS = 64;
+
+    StringDictionary()
+    {
+        codes   = new HashMap<>();
+        strings = new ArrayList<>();
+
+        encodings = new byte[INITIAL_BYTE_SLOTS][];
+        byteSlots = new int[INITIAL_BYTE_SLOTS];
+    }
+
+    /**
+     * @param string The string to be interned, cannot be null.
+     * @return The code of the string, which is assigned if the string is new.
+     */
+    int intern(final String string)
+    {
+        Integer code;
+        code = codes.get(string);
+
+        if (code == null)
+        {
+            code = strings.size();
+            codes.put(string, code);
+            strings.add(string);
+        }
+        return code;
+    }
+
+    /**
+     * This method interns the string encoded by some UTF-8 bytes, creating a String only if no string
+     * with the same bytes was interned from bytes before.
+     * @param bytes The array holding the bytes.
+     * @param offset The index of the first byte.
+     * @param length The number of bytes.
+     * @return The code of the string, which is assigned if the string is new.
+     */
+    int intern(final byte[] bytes, final int offset, final int length)
+    {
+        int slot;
+        int code;
+
+        for (slot = hash(bytes, offset, length) & (byteSlots.length - 1); byteSlots[slot] != 0;
+             slot = (slot + 1) & (byteSlots.length - 1))
+        {
+            code = byteSlots[slot] - 1;
+            if (Arrays.equals(encodings[code], 0, encodings[code].length, bytes, offset, offset + length))
+            {
+                return code;
+            }
+        }
+
+        code = intern(new String(bytes, offset, length, StandardCharsets.UTF_8));
+        if (code >= encodings.length)
+        {
+            encodings = Arrays.copyOf(encodings, Math.max(code + 1, encodings.length * 2));
+        }
+        encodings[code] = Arrays.copyOfRange(bytes, offset, offset + length);
+        byteSlots[slot] = code + 1;
+        byteCount++;
+
+        if (byteCount * 2 > byteSlots.length)
+        {
+            rehash();
+        }
+        return code;
+    }
+
+    /**
+     * @param string The string to be looked up.
+     * @return The code of the string, or NO_CODE if it was never interned.
+     */
+    int codeOf(final String string)
+    {
+        Integer code;
+        code = codes.get(string);
+
+        if (code == null)
+        {
+            return NO_CODE;
+        }
+        return code;
+    }
+
+    /**
+     * @param code The code of an interned string.
+     * @return The interned string.
+     */
+    String get(final int code)
+    {
+        return strings.get(code);
+    }
+
+    /**
+     * @return The number of interned strings.
+     */
+    int size()
+    {
+        return strings.size();
+    }
+
+    private void rehash()
+    {
+        int slot;
+        int code;
+
+        byteSlots = new int[byteSlots.length * 2];
+        for (code = 0; code < encodings.length; code++)
+        {
+            if (encodings[code] != null)
+            {
+                slot = hash(encodings[code], 0, encodings[code].length) & (byteSlots.length - 1);
+                while (byteSlots[slot] != 0)
+                {
+                    slot = (slot + 1) & (byteSlots.length - 1);
+                }
+                byteSlots[slot] = code + 1;
+            }
+        }
+    }
+
+    private static int hash(final byte[] bytes, final int offset, final int length)
+    {
+        int hash;
+        int i;
+
+        hash = 1;
+        for (i = offset; i < offset + length; i++)
+        {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
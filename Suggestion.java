@@ -0,0 +1,49 @@
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models one autocomplete suggestion: a street name or a city, and the number of properties on it.
+ */
+public final class Suggestion
+{
+    private final String name;
+    private final int    count;
+
+    /**
+     * Constructor.
+     * @param name The suggested name.
+     * @param count The number of properties with the name.
+     */
+    Suggestion(final String name, final int count)
+    {
+        this.name  = name;
+        this.count = count;
+    }
+
+    /**
+     * @return The suggested name, as spelled by the first property stored with it.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return The number of properties with the name.
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return The Suggestion class is represented by a String, displaying the name and the count.
+     */
+    @Override
+    public String toString()
+    {
+        return "Suggestion [" +
+                "name='" + name + '\'' +
+                ", count=" + count +
+                ']';
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import benchmark.Catalog;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class models a synthetic catalog written by a CatalogGenerator into a temporary directory and loaded
+ * into an agency, for the benchmarks in the benchmark package. Closing it closes the agency and deletes
+ * the directory.
+ */
+public final class AgencyCatalog implements Catalog
+{
+    private final File   directory;
+    private final File   addressFile;
+    private final File   propertyFile;
+    private final Agency agency;
+
+    public static final long SEED = 42;
+
+    /**
+     * Constructor.
+     * @param size The number of properties in the catalog.
+     * @param storageMode The name of the storage mode of the agency.
+     * @throws IOException If the catalog cannot be written or read.
+     */
+    public AgencyCatalog(final int size, final String storageMode) throws IOException
+    {
+        StorageMode mode;
+
+        mode         = StorageMode.valueOf(storageMode);
+        directory    = Files.createTempDirectory("agency-benchmark").toFile();
+        addressFile  = new File(directory, Assignment2.ADDRESS_READER_FILE);
+        propertyFile = new File(directory, Assignment2.PROPERTY_READER_FILE);
+
+        new CatalogGenerator(SEED).write(size, addressFile, propertyFile);
+
+        agency = mode == StorageMode.MAPPED ?
+                Agency.open("Benchmark", new File(directory, "catalog.dat")) :
+                new Agency("Benchmark", mode);
+        new BulkLoader().load(agency, addressFile, propertyFile);
+    }
+
+    @Override
+    public String propertyId(final int lineNumber)
+    {
+        return CatalogGenerator.propertyId(lineNumber);
+    }
+
+    @Override
+    public String streetName(final int rank)
+    {
+        return CatalogGenerator.streetName(rank);
+    }
+
+    @Override
+    public int getStreetCount()
+    {
+        return CatalogGenerator.DEFAULT_STREET_COUNT;
+    }
+
+    @Override
+    public Object getProperty(final String propertyId)
+    {
+        return agency.getProperty(propertyId);
+    }
+
+    @Override
+    public Object getPropertiesBetween(final double minUsd, final double maxUsd)
+    {
+        return agency.getPropertiesBetween(minUsd, maxUsd);
+    }
+
+    @Override
+    public Object getPropertiesOn(final String streetName)
+    {
+        return agency.getPropertiesOn(streetName);
+    }
+
+    @Override
+    public Object getPropertiesWithBedrooms(final int minBedrooms, final int maxBedrooms)
+    {
+        return agency.getPropertiesWithBedrooms(minBedrooms, maxBedrooms);
+    }
+
+    @Override
+    public Object getPropertiesOfType(final String propertyType)
+    {
+        return agency.getPropertiesOfType(propertyType);
+    }
+
+    @Override
+    public Object getPropertiesWithPools()
+    {
+        return agency.getPropertiesWithPools();
+    }
+
+    @Override
+    public Object getPropertiesWithStrata()
+    {
+        return agency.getPropertiesWithStrata();
+    }
+
+    @Override
+    public Object getPropertiesWithLoadingDocks()
+    {
+        return agency.getPropertiesWithLoadingDocks();
+    }
+
+    @Override
+    public Object getPropertiesWithHighwayAccess()
+    {
+        return agency.getPropertiesWithHighwayAccess();
+    }
+
+    @Override
+    public Object getPropertiesWithCustomerParking()
+    {
+        return agency.getPropertiesWithCustomerParking();
+    }
+
+    @Override
+    public Object getPropertiesSquareFootage(final int squareFootage)
+    {
+        return agency.getPropertiesSquareFootage(squareFootage);
+    }
+
+    @Override
+    public double getTotalPropertyValues()
+    {
+        return agency.getTotalPropertyValues();
+    }
+
+    @Override
+    public Object readAddressData() throws FileNotFoundException
+    {
+        return AddressReader.readAddressData(addressFile);
+    }
+
+    @Override
+    public Object readPropertyData() throws FileNotFoundException
+    {
+        return PropertyReader.readPropertyData(propertyFile);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            agency.close();
+        }
+        finally
+        {
+            for (File file : directory.listFiles())
+            {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+}
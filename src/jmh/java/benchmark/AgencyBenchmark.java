@@ -0,0 +1,206 @@
+package benchmark;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This class benchmarks the queries of an agency, and the parsing of the data files, with JMH, on synthetic
+ * catalogs written by a CatalogGenerator. The catalog is written and loaded once per fork, and the random
+ * property IDs, prices and street names the queries use are drawn before the measurement, so that no random
+ * number is generated while an operation is timed. Every result is consumed by a Blackhole.
+ * <p>
+ * The allocation rates are reported by the JMH GC profiler, which the build turns on for the jmh task; the
+ * catalog sizes and the storage mode can be chosen with -p when the benchmark jar is run directly:
+ * <pre>
+ *     gradle jmh
+ *     gradle jmhJar
+ *     java -jar build/libs/property-search-interface-java-jmh.jar AgencyBenchmark -prof gc
+ *     java -jar build/libs/property-search-interface-java-jmh.jar AgencyBenchmark -prof gc -p size=10000
+ *             -p storageMode=COLUMNAR
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx16g")
+public class AgencyBenchmark
+{
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"HEAP"})
+    public String storageMode;
+
+    private Catalog  catalog;
+    private String[] propertyIds;
+    private double[] prices;
+    private String[] streetNames;
+
+    public static final String CATALOG_CLASS = "AgencyCatalog";
+    public static final long SEED = 42;
+    public static final int INPUT_COUNT = 1 << 12;
+
+    private static final int MAX_PRICE_IN_USD = 5000000;
+    private static final int PRICE_RANGE_WIDTH_IN_USD = 10000;
+
+    /**
+     * This method writes a catalog of the size, loads it, and draws the inputs of the queries.
+     * @throws ReflectiveOperationException If the catalog cannot be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException
+    {
+        Random random;
+        int i;
+
+        catalog = (Catalog) Class.forName(CATALOG_CLASS).getConstructor(int.class, String.class)
+                .newInstance(size, storageMode);
+
+        random      = new Random(SEED);
+        propertyIds = new String[INPUT_COUNT];
+        prices      = new double[INPUT_COUNT];
+        streetNames = new String[INPUT_COUNT];
+        for (i = 0; i < INPUT_COUNT; i++)
+        {
+            propertyIds[i] = catalog.propertyId(random.nextInt(size));
+            prices[i]      = random.nextInt(MAX_PRICE_IN_USD);
+            streetNames[i] = catalog.streetName(random.nextInt(catalog.getStreetCount()));
+        }
+    }
+
+    /**
+     * This method closes the agency and deletes the catalog.
+     * @throws IOException If the agency cannot be closed.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        catalog.close();
+    }
+
+    @Benchmark
+    public void getProperty(final Input input, final Blackhole blackhole)
+    {
+        blackhole.consume(catalog.getProperty(propertyIds[input.next()]));
+    }
+
+    @Benchmark
+    public void getPropertiesBetween(final Input input, final Blackhole blackhole)
+    {
+        double minimum;
+
+        minimum = prices[input.next()];
+        blackhole.consume(catalog.getPropertiesBetween(minimum, minimum + PRICE_RANGE_WIDTH_IN_USD));
+    }
+
+    @Benchmark
+    public void getPropertiesOn(final Input input, final Blackhole blackhole)
+    {
+        blackhole.consume(catalog.getPropertiesOn(streetNames[input.next()]));
+    }
+
+    @Benchmark
+    public void getPropertiesWithBedrooms(final Blackhole blackhole)
+    {
+        blackhole.consume(catalog.getPropertiesWithBedrooms(2, 3));
+    }
+
+    @Benchmark
+    public void getPropertiesOfType(final Blackhole blackhole)
+    {
+        blackhole.consume(catalog.getPropertiesOfType("retail"));
+    }
+
+    @Benchmark
+    public void getPropertiesWithPools(final Blackhole blackhole)
+    {
+        blackhole.consume(catalog.getPropertiesWithPools());
+    }
+
+    @Benchmark
+    public void getPropertiesWithStrata(final Blackhole blackhole)
+    {
+        blackhole.consume(catalog.getPropertiesWithStrata());
+    }
+
+    @Benchmark
+    public void getPropertiesWithLoadingDocks(final Blackhole blackhole)
+    {
+        blackhole.consume(catalog.getPropertiesWithLoadingDocks());
+    }
+
+    @Benchmark
+    public void getPropertiesWithHighwayAccess(final Blackhole blackhole)
+    {
+        blackhole.consume(catalog.getPropertiesWithHighwayAccess());
+    }
+
+    @Benchmark
+    public void getPropertiesWithCustomerParking(final Blackhole blackhole)
+    {
+        blackhole.consume(catalog.getPropertiesWithCustomerParking());
+    }
+
+    @Benchmark
+    public void getPropertiesSquareFootage(final Blackhole blackhole)
+    {
+        blackhole.consume(catalog.getPropertiesSquareFootage(9000));
+    }
+
+    @Benchmark
+    public void getTotalPropertyValues(final Blackhole blackhole)
+    {
+        blackhole.consume(catalog.getTotalPropertyValues());
+    }
+
+    @Benchmark
+    public void readAddressData(final Blackhole blackhole) throws FileNotFoundException
+    {
+        blackhole.consume(catalog.readAddressData());
+    }
+
+    @Benchmark
+    public void readPropertyData(final Blackhole blackhole) throws FileNotFoundException
+    {
+        blackhole.consume(catalog.readPropertyData());
+    }
+
+    /**
+     * This class models the position of a benchmark thread in the inputs drawn before the measurement.
+     */
+    @State(Scope.Thread)
+    public static class Input
+    {
+        private int position;
+
+        /**
+         * @return The index of the next input.
+         */
+        int next()
+        {
+            position = (position + 1) & (INPUT_COUNT - 1);
+            return position;
+        }
+    }
+}
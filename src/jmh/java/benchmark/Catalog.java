@@ -0,0 +1,60 @@
+package benchmark;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+
+/**
+ * @author Tian Lan
+ * @version 1.0
+ * This interface models a synthetic catalog loaded into an agency, as seen by the benchmarks. JMH does not
+ * accept benchmarks in the default package, and a named package cannot refer to the classes of the default
+ * package, so the benchmarks reach the agency through this interface, which AgencyCatalog implements.
+ * Every query returns the result of the method of the same name of the agency or of the readers.
+ */
+public interface Catalog extends Closeable
+{
+    /**
+     * @param lineNumber The line of the property in the catalog.
+     * @return The ID of the property on the line.
+     */
+    String propertyId(int lineNumber);
+
+    /**
+     * @param rank The rank of the street.
+     * @return The name of the street of the rank.
+     */
+    String streetName(int rank);
+
+    /**
+     * @return The number of streets in the catalog.
+     */
+    int getStreetCount();
+
+    Object getProperty(String propertyId);
+
+    Object getPropertiesBetween(double minUsd, double maxUsd);
+
+    Object getPropertiesOn(String streetName);
+
+    Object getPropertiesWithBedrooms(int minBedrooms, int maxBedrooms);
+
+    Object getPropertiesOfType(String propertyType);
+
+    Object getPropertiesWithPools();
+
+    Object getPropertiesWithStrata();
+
+    Object getPropertiesWithLoadingDocks();
+
+    Object getPropertiesWithHighwayAccess();
+
+    Object getPropertiesWithCustomerParking();
+
+    Object getPropertiesSquareFootage(int squareFootage);
+
+    double getTotalPropertyValues();
+
+    Object readAddressData() throws FileNotFoundException;
+
+    Object readPropertyData() throws FileNotFoundException;
+}